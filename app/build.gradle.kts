@@ -4,6 +4,8 @@ plugins {
     id("io.freefair.lombok") version "8.6"
     id("com.github.ben-manes.versions") version "0.51.0"
     id("com.github.johnrengelman.shadow") version "8.1.1"
+    id("me.champeau.jmh") version "0.7.2"
+    id("gg.jte.gradle") version "3.1.9"
     jacoco
 }
 
@@ -18,6 +20,15 @@ repositories {
     mavenCentral()
 }
 
+// The load test harness boots the app in process, see hexlet.code.loadtest.LoadTest
+val loadtest: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[loadtest.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[loadtest.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
 
 dependencies {
     implementation("com.h2database:h2:2.2.224")
@@ -38,7 +49,9 @@ dependencies {
     testImplementation ("uk.org.webcompere:system-stubs-jupiter:2.0.2")
 
     implementation ("org.jsoup:jsoup:1.17.2")
-    implementation ("com.konghq:unirest-java:3.13.0")
+    implementation ("org.apache.httpcomponents:httpclient:4.5.14")
+
+    "loadtestImplementation"("com.squareup.okhttp3:mockwebserver:4.12.0")
 
 
 }
@@ -53,6 +66,40 @@ checkstyle {
     toolVersion = "10.3.3"
 }
 
+tasks.checkstyleMain {
+    exclude("gg/jte/generated/**")
+}
+
+// Templates are turned into Java sources at build time and compiled with the app,
+// so the server never runs javac on a first request.
+jte {
+    sourceDirectory.set(file("src/main/resources/templates").toPath())
+    contentType.set(gg.jte.ContentType.Html)
+    generate()
+}
+
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+jmh {
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+    includes.addAll(providers.gradleProperty("jmhIncludes").map { listOf(it) }.orElse(emptyList()))
+}
+
+tasks.register<JavaExec>("loadTest") {
+    description = "Drives mixed traffic at the app on embedded H2 and stub sites and writes a JSON report."
+    group = "verification"
+    classpath = loadtest.runtimeClasspath
+    mainClass.set("hexlet.code.loadtest.LoadTest")
+    jvmArgs("-Xmx2g")
+    systemProperty("loadtest.report", layout.buildDirectory.file("reports/loadtest/report.json").get().asFile.path)
+    // -Ploadtest.rate=500 and the like override the defaults of LoadTestSettings
+    providers.gradlePropertiesPrefixedBy("loadtest.").get().forEach { (key, value) -> systemProperty(key, value) }
+    environment("RECHECK_ENABLED", "false")
+    environment("RETENTION_ENABLED", "false")
+    // every stub site is on localhost, which the per-host limit would throttle as a single site
+    environment("HOST_REQUESTS_PER_MINUTE", "0")
+}
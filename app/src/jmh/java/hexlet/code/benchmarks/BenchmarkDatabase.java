@@ -0,0 +1,59 @@
+package hexlet.code.benchmarks;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.repo.UrlCheckRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+/**
+ * An embedded H2 database with the application schema and {@code rows} urls, each with one check.
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+
+    private final HikariDataSource dataSource;
+
+    BenchmarkDatabase(int rows) throws IOException, SQLException {
+        var hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl("jdbc:h2:mem:bench" + rows + ";DB_CLOSE_DELAY=-1");
+        dataSource = new HikariDataSource(hikariConfig);
+        try (var connection = dataSource.getConnection();
+             var statement = connection.createStatement()) {
+            statement.execute(readResource("drop.sql"));
+            statement.execute(readResource("h2/schema.sql"));
+            statement.execute("INSERT INTO urls (name, created_at)"
+                    + " SELECT 'https://site' || X || '.io', CURRENT_TIMESTAMP FROM SYSTEM_RANGE(1, " + rows + ")");
+            statement.execute("INSERT INTO check_contents (fingerprint, title, h1, description)"
+                    + " SELECT 'seed-' || id, 'Title ' || id, 'Header ' || id, 'Description of ' || name FROM urls");
+            statement.execute("INSERT INTO url_checks (url_id, status_code, content_id, created_at)"
+                    + " SELECT u.id, 200, c.id, CURRENT_TIMESTAMP FROM urls u"
+                    + " JOIN check_contents c ON c.fingerprint = 'seed-' || u.id");
+        }
+        new UrlCheckRepository(dataSource).backfillLatestChecks();
+    }
+
+    HikariDataSource getDataSource() {
+        return dataSource;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try (var connection = dataSource.getConnection();
+             var statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        dataSource.close();
+    }
+
+    private static String readResource(String name) throws IOException {
+        try (InputStream stream = BenchmarkDatabase.class.getClassLoader().getResourceAsStream(name)) {
+            if (stream == null) {
+                throw new IOException("Resource " + name + " not found");
+            }
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package hexlet.code.benchmarks;
+
+import hexlet.code.fetch.ExtractedPage;
+import hexlet.code.fetch.HtmlExtractor;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the old "whole body into a String, then Jsoup DOM" path with the streaming extractor.
+ * Run with the gc profiler (enabled in build.gradle.kts) to see gc.alloc.rate.norm, i.e. bytes per check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @Param({"small", "large"})
+    private String size;
+
+    private byte[] body;
+    private HtmlExtractor extractor;
+
+    /**
+     * Builds the page once per trial.
+     */
+    @Setup
+    public void setUp() {
+        body = HtmlFixtures.page("large".equals(size) ? 4 * 1024 * 1024 : 0).getBytes(StandardCharsets.UTF_8);
+        extractor = new HtmlExtractor(Integer.MAX_VALUE);
+    }
+
+    /**
+     * The pre-streaming path: the whole body as a String, then a full DOM.
+     */
+    @Benchmark
+    public String[] jsoupDocument() {
+        Document doc = Jsoup.parse(new String(body, StandardCharsets.UTF_8));
+        Element h1Element = doc.selectFirst("h1");
+        Element descriptionElement = doc.selectFirst("meta[name=description]");
+        return new String[] {
+            doc.title(),
+            h1Element == null ? "" : h1Element.text(),
+            descriptionElement == null ? "" : descriptionElement.attr("content"),
+        };
+    }
+
+    /**
+     * The streaming path used by the check service.
+     */
+    @Benchmark
+    public ExtractedPage streamingExtractor() throws IOException {
+        return extractor.extract(new ByteArrayInputStream(body), "text/html; charset=utf-8");
+    }
+}
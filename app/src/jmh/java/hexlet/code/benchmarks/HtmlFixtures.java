@@ -0,0 +1,28 @@
+package hexlet.code.benchmarks;
+
+final class HtmlFixtures {
+
+    private static final String PARAGRAPH = "<p class=\"text\">Lorem ipsum dolor sit amet,"
+            + " <a href=\"/next\">consectetur</a> adipiscing elit, sed do eiusmod tempor incididunt"
+            + " ut labore et dolore magna aliqua.</p>\n";
+
+    private HtmlFixtures() {
+    }
+
+    /**
+     * A page with the usual head and roughly {@code paddingBytes} of body markup after the h1.
+     */
+    static String page(int paddingBytes) {
+        var html = new StringBuilder(paddingBytes + 1024)
+                .append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n")
+                .append("<meta charset=\"utf-8\">\n")
+                .append("<meta name=\"keywords\" content=\"test wow miracle\">\n")
+                .append("<meta name=\"description\" content=\"statements of great people\">\n")
+                .append("<title>Test page</title>\n")
+                .append("</head>\n<body>\n<div>\n<h1>Do not expect a miracle, miracles yourself!</h1>\n");
+        while (html.length() < paddingBytes) {
+            html.append(PARAGRAPH);
+        }
+        return html.append("</div>\n</body>\n</html>\n").toString();
+    }
+}
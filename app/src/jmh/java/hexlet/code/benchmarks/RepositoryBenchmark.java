@@ -0,0 +1,126 @@
+package hexlet.code.benchmarks;
+
+import hexlet.code.model.KeysetPage;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlRows;
+import hexlet.code.repo.UrlCheckRepository;
+import hexlet.code.repo.UrlRepository;
+import hexlet.code.service.UrlListSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repository hot paths against embedded H2. The cache of UrlRepository is off, so every call hits the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class RepositoryBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int rows;
+
+    private BenchmarkDatabase database;
+    private UrlRepository urlRepository;
+    private UrlCheckRepository urlCheckRepository;
+    private UrlListSnapshot urlList;
+
+    /**
+     * Creates and seeds the database once per row count.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        database = new BenchmarkDatabase(rows);
+        urlRepository = new UrlRepository(database.getDataSource());
+        urlCheckRepository = new UrlCheckRepository(database.getDataSource());
+        urlList = new UrlListSnapshot(urlRepository);
+        urlList.loadNew();
+    }
+
+    /**
+     * Drops the database.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    /**
+     * The unbounded full scan the list page used to do.
+     */
+    @Benchmark
+    public List<Url> getEntities() throws SQLException {
+        return urlRepository.getEntities();
+    }
+
+    /**
+     * One keyset page from the middle of the table.
+     */
+    @Benchmark
+    public KeysetPage<Url> findPage() throws SQLException {
+        return urlRepository.findPage((long) rows / 2, null, 20);
+    }
+
+    /**
+     * The same page cut from the in-memory url list that serves /urls.
+     */
+    @Benchmark
+    public UrlRows snapshotPage() throws SQLException {
+        return urlList.page((long) rows / 2, null, 20);
+    }
+
+    /**
+     * Point lookup by name, as done when a url is created.
+     */
+    @Benchmark
+    public Optional<Url> findByName() throws SQLException {
+        return urlRepository.findByName("https://site" + randomId() + ".io");
+    }
+
+    /**
+     * Latest check of every url.
+     */
+    @Benchmark
+    @Measurement(iterations = 3, time = 5)
+    public Map<Long, UrlCheck> findLatestChecks() throws SQLException {
+        return urlCheckRepository.findLatestChecks();
+    }
+
+    /**
+     * One check insert with its latest check update, in its own transaction.
+     */
+    @Benchmark
+    public UrlCheck save() throws SQLException {
+        var check = new UrlCheck(200, "title", "h1", "description");
+        check.setUrlId(randomId());
+        urlCheckRepository.save(check);
+        return check;
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, rows + 1);
+    }
+}
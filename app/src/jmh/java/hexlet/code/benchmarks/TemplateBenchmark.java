@@ -0,0 +1,103 @@
+package hexlet.code.benchmarks;
+
+import gg.jte.TemplateEngine;
+import gg.jte.output.StringOutput;
+import hexlet.code.App;
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.CircuitState;
+import hexlet.code.model.HostStatus;
+import hexlet.code.model.KeysetPage;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlRows;
+import hexlet.code.model.pages.UrlListPage;
+import hexlet.code.model.pages.UrlPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the list and show pages through the same TemplateEngine the application uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateBenchmark {
+
+    @Param({"20", "100"})
+    private int pageSize;
+
+    private TemplateEngine templateEngine;
+    private Map<String, Object> listModel;
+    private Map<String, Object> showModel;
+
+    /**
+     * Builds the page models and compiles the templates before measuring.
+     */
+    @Setup
+    public void setUp() {
+        templateEngine = App.createTemplateEngine();
+        var now = new Timestamp(System.currentTimeMillis());
+
+        var urls = new ArrayList<Url>();
+        var checks = new ArrayList<UrlCheck>();
+        for (long id = pageSize; id > 0; id--) {
+            var url = new Url("https://site" + id + ".io");
+            url.setId(id);
+            url.setCreatedAt(now);
+            url.setLastCheckAt(now);
+            url.setLastStatusCode(200);
+            urls.add(url);
+
+            var check = new UrlCheck(200, "Title " + id, "Header " + id, "Description of site " + id);
+            check.setId(id);
+            check.setUrlId(1);
+            check.setCreatedAt(now);
+            check.setStatus(CheckStatus.DONE);
+            checks.add(check);
+        }
+        listModel = Map.of("page", new UrlListPage(UrlRows.of(urls, null, 1L), null));
+        showModel = Map.of("page", new UrlPage(urls.get(0), new KeysetPage<>(checks, null, 1L), List.of(),
+                new HostStatus("site1.io", CircuitState.CLOSED, 0, null)));
+
+        renderList();
+        renderShow();
+    }
+
+    /**
+     * urls/index.jte.
+     */
+    @Benchmark
+    public String renderList() {
+        var output = new StringOutput();
+        templateEngine.render("urls/index.jte", listModel, output);
+        return output.toString();
+    }
+
+    /**
+     * urls/show.jte.
+     */
+    @Benchmark
+    public String renderShow() {
+        var output = new StringOutput();
+        templateEngine.render("urls/show.jte", showModel, output);
+        return output.toString();
+    }
+}
@@ -0,0 +1,128 @@
+package hexlet.code.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.App;
+import hexlet.code.model.Url;
+import hexlet.code.repo.UrlRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Boots the app on embedded H2 with {@code loadtest.urls} urls spread over local stub sites, sends it
+ * a mix of list, show, create and check requests at {@code loadtest.rate} per second and writes a JSON report.
+ * Run with {@code ./gradlew loadTest -Ploadtest.rate=500}; {@link LoadTestSettings} lists the properties.
+ */
+@Slf4j
+public final class LoadTest {
+
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        var settings = LoadTestSettings.fromSystemProperties();
+        if (settings.getUrls() < 1 || settings.getRate() < 1 || settings.getStubSites() < 1) {
+            throw new IllegalArgumentException("loadtest.urls, loadtest.rate and loadtest.stubSites must be positive");
+        }
+        var hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl("jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1");
+        hikariConfig.setMaximumPoolSize(Integer.parseInt(System.getenv().getOrDefault("DB_POOL_SIZE", "10")));
+        try (var dataSource = new HikariDataSource(hikariConfig);
+             var stubs = new StubSites(settings.getStubSites(), settings.getStubLatency(),
+                     settings.getStubBodyBytes())) {
+            var app = App.getApp(dataSource);
+            app.start(0);
+            try {
+                var urlIds = seed(new UrlRepository(dataSource), stubs, settings.getUrls());
+                log.info("Seeded {} urls, sending {} requests per second for {} s after {} s of warm-up",
+                        urlIds.length, settings.getRate(), settings.getDuration().toSeconds(),
+                        settings.getWarmup().toSeconds());
+
+                var startedAt = Instant.now();
+                var driver = new TrafficDriver(URI.create("http://localhost:" + app.port()), urlIds, settings);
+                driver.run();
+                var report = toReport(settings, startedAt, driver.report(), countChecks(dataSource),
+                        stubs.getRequestCount());
+
+                Files.createDirectories(settings.getReport().toAbsolutePath().getParent());
+                new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(settings.getReport().toFile(), report);
+                log.info("{} requests per second, error rate {}, report written to {}", report.getThroughput(),
+                        report.getErrorRate(), settings.getReport().toAbsolutePath());
+                report.getRoutes().forEach((route, result) -> log.info("{}: p50 {} ms, p99 {} ms, p999 {} ms, {}",
+                        route, result.getP50Millis(), result.getP99Millis(), result.getP999Millis(),
+                        result.getOutcomes()));
+            } finally {
+                app.stop();
+            }
+        }
+    }
+
+    /**
+     * Stores {@code count} urls, each a path on one of the stub sites, and returns their ids.
+     */
+    private static long[] seed(UrlRepository urlRepository, StubSites stubs, int count) throws SQLException {
+        var batch = new ArrayList<String>(SEED_BATCH_SIZE);
+        for (int i = 0; i < count; i++) {
+            batch.add(stubs.siteUrl(i) + "/site/" + i);
+            if (batch.size() == SEED_BATCH_SIZE || i == count - 1) {
+                urlRepository.insertMissing(batch);
+                batch.clear();
+            }
+        }
+        var ids = new long[count];
+        int loaded = 0;
+        long afterId = 0;
+        while (loaded < count) {
+            var urls = urlRepository.findAfterId(afterId, SEED_BATCH_SIZE);
+            if (urls.isEmpty()) {
+                break;
+            }
+            for (Url url : urls) {
+                if (loaded < count) {
+                    ids[loaded++] = url.getId();
+                }
+            }
+            afterId = urls.get(urls.size() - 1).getId();
+        }
+        return ids;
+    }
+
+    private static Map<String, Long> countChecks(DataSource dataSource) throws SQLException {
+        var counts = new TreeMap<String, Long>();
+        try (var connection = dataSource.getConnection();
+             var statement = connection.prepareStatement("SELECT status, COUNT(*) FROM url_checks GROUP BY status")) {
+            var resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                counts.put(resultSet.getString(1), resultSet.getLong(2));
+            }
+        }
+        return counts;
+    }
+
+    private static LoadTestReport toReport(LoadTestSettings settings, Instant startedAt,
+                                           Map<String, RouteReport> routes, Map<String, Long> checks,
+                                           long stubRequests) {
+        long requests = 0;
+        long errors = 0;
+        double throughput = 0;
+        for (var route : routes.values()) {
+            requests += route.getRequests();
+            errors += route.getErrors();
+            throughput += route.getThroughput();
+        }
+        return new LoadTestReport(startedAt.toString(), System.getProperty("java.version"), settings.describe(),
+                settings.getDuration().toSeconds(), requests, errors, requests == 0 ? 0 : (double) errors / requests,
+                throughput, routes, checks, stubRequests);
+    }
+}
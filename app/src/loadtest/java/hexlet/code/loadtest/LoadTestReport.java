@@ -0,0 +1,32 @@
+package hexlet.code.loadtest;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * What a run sustained. The settings are included under their property names, so two reports
+ * show whether they are comparable and how to repeat a run.
+ */
+@Getter
+@AllArgsConstructor
+public final class LoadTestReport {
+    private final String startedAt;
+    private final String javaVersion;
+    private final Map<String, Object> settings;
+    private final double measuredSeconds;
+    private final long requests;
+    private final long errors;
+    private final double errorRate;
+    /**
+     * Answered requests per second over all routes.
+     */
+    private final double throughput;
+    private final Map<String, RouteReport> routes;
+    /**
+     * Checks by status when the traffic stopped, warm-up included. Pending ones are the backlog left behind.
+     */
+    private final Map<String, Long> checks;
+    private final long stubRequests;
+}
@@ -0,0 +1,110 @@
+package hexlet.code.loadtest;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parameters of a load test run, read from {@code loadtest.*} system properties.
+ * The Gradle task passes {@code -Ploadtest.rate=500} and the like on as such.
+ */
+@Getter
+@Builder
+public final class LoadTestSettings {
+    private static final String PREFIX = "loadtest.";
+
+    /**
+     * Urls stored before the run, spread over the stub sites.
+     */
+    private final int urls;
+    private final int stubSites;
+    /**
+     * Time a stub site takes before it answers.
+     */
+    private final Duration stubLatency;
+    private final int stubBodyBytes;
+    /**
+     * Requests per second over all routes. Requests are sent on schedule whether or not earlier ones finished.
+     */
+    private final int rate;
+    private final Duration warmup;
+    private final Duration duration;
+    /**
+     * Requests that may be outstanding at once; a request due while the limit is reached is counted as dropped.
+     */
+    private final int maxInFlight;
+    private final Duration requestTimeout;
+    /**
+     * Relative weight of every route.
+     */
+    private final Map<Route, Integer> mix;
+    private final Path report;
+
+    public static LoadTestSettings fromSystemProperties() {
+        return LoadTestSettings.builder()
+                .urls(intProperty("urls", 1000))
+                .stubSites(intProperty("stubSites", 10))
+                .stubLatency(Duration.ofMillis(intProperty("stubLatencyMs", 50)))
+                .stubBodyBytes(intProperty("stubBodyBytes", 32 * 1024))
+                .rate(intProperty("rate", 200))
+                .warmup(Duration.ofSeconds(intProperty("warmupSeconds", 10)))
+                .duration(Duration.ofSeconds(intProperty("durationSeconds", 30)))
+                .maxInFlight(intProperty("maxInFlight", 512))
+                .requestTimeout(Duration.ofSeconds(intProperty("requestTimeoutSeconds", 10)))
+                .mix(parseMix(System.getProperty(PREFIX + "mix", "list=50,show=30,create=5,check=15")))
+                .report(Path.of(System.getProperty(PREFIX + "report", "build/reports/loadtest/report.json")))
+                .build();
+    }
+
+    /**
+     * The settings under their property names, for the report.
+     */
+    public Map<String, Object> describe() {
+        var mixDescription = new LinkedHashMap<String, Integer>();
+        mix.forEach((route, weight) -> mixDescription.put(route.key(), weight));
+        var description = new LinkedHashMap<String, Object>();
+        description.put("urls", urls);
+        description.put("stubSites", stubSites);
+        description.put("stubLatencyMs", stubLatency.toMillis());
+        description.put("stubBodyBytes", stubBodyBytes);
+        description.put("rate", rate);
+        description.put("warmupSeconds", warmup.toSeconds());
+        description.put("durationSeconds", duration.toSeconds());
+        description.put("maxInFlight", maxInFlight);
+        description.put("requestTimeoutSeconds", requestTimeout.toSeconds());
+        description.put("mix", mixDescription);
+        return description;
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        return Integer.parseInt(System.getProperty(PREFIX + name, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Parses {@code list=50,show=30}; routes that are not named get no traffic.
+     */
+    static Map<Route, Integer> parseMix(String value) {
+        var mix = new EnumMap<Route, Integer>(Route.class);
+        for (var part : value.split(",")) {
+            var pair = part.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected route=weight in " + PREFIX + "mix, got " + part);
+            }
+            int weight = Integer.parseInt(pair[1].strip());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + pair[0]);
+            }
+            mix.put(Route.valueOf(pair[0].strip().toUpperCase(Locale.ROOT)), weight);
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException(PREFIX + "mix gives no route a weight");
+        }
+        return mix;
+    }
+}
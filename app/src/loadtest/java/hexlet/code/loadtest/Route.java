@@ -0,0 +1,29 @@
+package hexlet.code.loadtest;
+
+import java.util.Locale;
+
+/**
+ * Kinds of requests the driver sends. Names in lower case are the keys of {@code loadtest.mix} and the report.
+ */
+enum Route {
+    /**
+     * GET /urls, the first page or a page before a random url.
+     */
+    LIST,
+    /**
+     * GET /urls/{id} of a random seeded url.
+     */
+    SHOW,
+    /**
+     * POST /urls with a url that is not stored yet.
+     */
+    CREATE,
+    /**
+     * POST /urls/{id}/checks of a random seeded url, asking for the JSON answer.
+     */
+    CHECK;
+
+    String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,34 @@
+package hexlet.code.loadtest;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Results of one route in the report. Latency runs from the time a request was due, not the time it was sent,
+ * so a backlog on the client side shows up as latency instead of as a lower rate. Dropped requests have none.
+ */
+@Getter
+@AllArgsConstructor
+public final class RouteReport {
+    private final long requests;
+    /**
+     * Answers with a 4xx or 5xx status, failed and dropped requests.
+     */
+    private final long errors;
+    private final double errorRate;
+    /**
+     * Answered requests per second of the measured period.
+     */
+    private final double throughput;
+    private final double p50Millis;
+    private final double p99Millis;
+    private final double p999Millis;
+    private final double maxMillis;
+    private final double meanMillis;
+    /**
+     * Count per status code, exception or "dropped".
+     */
+    private final Map<String, Long> outcomes;
+}
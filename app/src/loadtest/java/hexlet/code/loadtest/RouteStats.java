@@ -0,0 +1,82 @@
+package hexlet.code.loadtest;
+
+import java.net.http.HttpTimeoutException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcomes and latencies of one route. Every latency is kept, so percentiles are exact; a run of minutes
+ * at a few thousand requests per second is a few megabytes.
+ */
+final class RouteStats {
+
+    private static final int FIRST_ERROR_STATUS = 400;
+
+    private long[] latencies = new long[1024];
+    private int count;
+    private long errors;
+    private final Map<String, Long> outcomes = new TreeMap<>();
+
+    synchronized void record(int status, long latencyNanos) {
+        addLatency(latencyNanos);
+        outcomes.merge(String.valueOf(status), 1L, Long::sum);
+        if (status >= FIRST_ERROR_STATUS) {
+            errors++;
+        }
+    }
+
+    synchronized void recordFailure(Throwable error, long latencyNanos) {
+        addLatency(latencyNanos);
+        var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        var outcome = cause instanceof HttpTimeoutException ? "timeout" : cause.getClass().getSimpleName();
+        outcomes.merge(outcome, 1L, Long::sum);
+        errors++;
+    }
+
+    /**
+     * A request that was not sent because too many were outstanding. It has no latency.
+     */
+    synchronized void recordDropped() {
+        outcomes.merge("dropped", 1L, Long::sum);
+        errors++;
+    }
+
+    synchronized RouteReport report(double seconds) {
+        var sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        long requests = count + outcomes.getOrDefault("dropped", 0L);
+        double sum = 0;
+        for (long latency : sorted) {
+            sum += latency;
+        }
+        return new RouteReport(requests, errors, requests == 0 ? 0 : (double) errors / requests,
+                count / seconds, millis(percentile(sorted, 0.5)), millis(percentile(sorted, 0.99)),
+                millis(percentile(sorted, 0.999)), millis(count == 0 ? 0 : sorted[count - 1]),
+                count == 0 ? 0 : millis(sum / count), new TreeMap<>(outcomes));
+    }
+
+    private void addLatency(long latencyNanos) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values.
+     */
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static double millis(double nanos) {
+        return Math.round(nanos / TimeUnit.MILLISECONDS.toNanos(1) * 1000) / 1000.0;
+    }
+}
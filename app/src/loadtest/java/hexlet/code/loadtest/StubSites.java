@@ -0,0 +1,72 @@
+package hexlet.code.loadtest;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local sites for checks to fetch. Every path answers after a fixed latency with an HTML page of about
+ * the configured size, whose title and description name the path, so every url gets its own content.
+ */
+final class StubSites implements AutoCloseable {
+
+    private final List<MockWebServer> servers = new ArrayList<>();
+
+    StubSites(int count, Duration latency, int bodyBytes) throws IOException {
+        var dispatcher = new PageDispatcher(latency, "<p>" + "lorem ipsum ".repeat(Math.max(0, bodyBytes / 12))
+                + "</p>");
+        for (int i = 0; i < count; i++) {
+            var server = new MockWebServer();
+            server.setDispatcher(dispatcher);
+            server.start();
+            servers.add(server);
+        }
+    }
+
+    /**
+     * Base url of the site serving url number {@code index}, without the trailing slash.
+     */
+    String siteUrl(int index) {
+        return servers.get(index % servers.size()).url("/").toString().replaceAll("/$", "");
+    }
+
+    long getRequestCount() {
+        return servers.stream().mapToLong(MockWebServer::getRequestCount).sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (var server : servers) {
+            server.shutdown();
+        }
+    }
+
+    private static final class PageDispatcher extends Dispatcher {
+        private final Duration latency;
+        private final String padding;
+
+        PageDispatcher(Duration latency, String padding) {
+            this.latency = latency;
+            this.padding = padding;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            var path = request.getPath();
+            var body = "<html><head><title>Stub page " + path + "</title>"
+                    + "<meta name=\"description\" content=\"Load test page " + path + "\"></head>"
+                    + "<body><h1>Stub " + path + "</h1>" + padding + "</body></html>";
+            return new MockResponse()
+                    .setHeader("Content-Type", "text/html; charset=utf-8")
+                    .setHeadersDelay(latency.toMillis(), TimeUnit.MILLISECONDS)
+                    .setBody(body);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package hexlet.code.loadtest;
+
+import hexlet.code.model.web.Routes;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests on a fixed schedule, an open workload: a slow answer does not delay the next request,
+ * as it would with a fixed number of looping clients, so overload shows up as latency and errors.
+ * Requests due during the warm-up are sent but not recorded.
+ */
+final class TrafficDriver {
+
+    private static final double FIRST_PAGE_SHARE = 0.7;
+
+    private final HttpClient client;
+    private final URI base;
+    private final long[] urlIds;
+    private final LoadTestSettings settings;
+    private final Route[] routes;
+    private final int[] cumulativeWeights;
+    private final Map<Route, RouteStats> stats = new EnumMap<>(Route.class);
+    private final Semaphore inFlight;
+    private final AtomicLong created = new AtomicLong();
+    private final Random random = new Random();
+
+    TrafficDriver(URI base, long[] urlIds, LoadTestSettings settings) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(settings.getRequestTimeout())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        this.base = base;
+        this.urlIds = urlIds;
+        this.settings = settings;
+        this.inFlight = new Semaphore(settings.getMaxInFlight());
+        var weighted = settings.getMix().entrySet().stream().filter(entry -> entry.getValue() > 0).toList();
+        this.routes = new Route[weighted.size()];
+        this.cumulativeWeights = new int[weighted.size()];
+        int total = 0;
+        for (int i = 0; i < weighted.size(); i++) {
+            total += weighted.get(i).getValue();
+            routes[i] = weighted.get(i).getKey();
+            cumulativeWeights[i] = total;
+        }
+        for (var route : Route.values()) {
+            stats.put(route, new RouteStats());
+        }
+    }
+
+    /**
+     * Runs the warm-up and the measured period, then waits for the outstanding requests.
+     */
+    void run() throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / settings.getRate();
+        long start = System.nanoTime();
+        long measureFrom = start + settings.getWarmup().toNanos();
+        long end = measureFrom + settings.getDuration().toNanos();
+        for (long i = 0; start + i * interval < end; i++) {
+            long due = start + i * interval;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            send(pickRoute(), due, due >= measureFrom);
+        }
+        long drainTimeout = settings.getRequestTimeout().toMillis() * 2;
+        if (!inFlight.tryAcquire(settings.getMaxInFlight(), drainTimeout, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Requests still outstanding " + drainTimeout + " ms after the run");
+        }
+        inFlight.release(settings.getMaxInFlight());
+    }
+
+    Map<String, RouteReport> report() {
+        double seconds = settings.getDuration().toNanos() / (double) TimeUnit.SECONDS.toNanos(1);
+        var reports = new LinkedHashMap<String, RouteReport>();
+        for (var route : routes) {
+            reports.put(route.key(), stats.get(route).report(seconds));
+        }
+        return reports;
+    }
+
+    private void send(Route route, long due, boolean measured) {
+        var routeStats = stats.get(route);
+        if (!inFlight.tryAcquire()) {
+            if (measured) {
+                routeStats.recordDropped();
+            }
+            return;
+        }
+        client.sendAsync(request(route), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    inFlight.release();
+                    if (!measured) {
+                        return;
+                    }
+                    long latency = System.nanoTime() - due;
+                    if (error != null) {
+                        routeStats.recordFailure(error, latency);
+                    } else {
+                        routeStats.record(response.statusCode(), latency);
+                    }
+                });
+    }
+
+    private Route pickRoute() {
+        int ticket = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (ticket >= cumulativeWeights[i]) {
+            i++;
+        }
+        return routes[i];
+    }
+
+    private HttpRequest request(Route route) {
+        var builder = HttpRequest.newBuilder().timeout(settings.getRequestTimeout());
+        long urlId = urlIds[random.nextInt(urlIds.length)];
+        switch (route) {
+            case LIST:
+                return builder.uri(base.resolve(random.nextDouble() < FIRST_PAGE_SHARE
+                        ? Routes.urlsPath()
+                        : Routes.urlsPath() + "?before=" + urlId)).GET().build();
+            case SHOW:
+                return builder.uri(base.resolve(Routes.urlPath(urlId))).GET().build();
+            case CREATE:
+                var name = "https://new-" + created.incrementAndGet() + ".loadtest.invalid";
+                return builder.uri(base.resolve(Routes.urlsPath()))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString("url=" + name))
+                        .build();
+            case CHECK:
+                return builder.uri(base.resolve(Routes.urlChecksPath(urlId)))
+                        .header("Accept", "application/json")
+                        .POST(HttpRequest.BodyPublishers.noBody())
+                        .build();
+            default:
+                throw new IllegalArgumentException("Unknown route " + route);
+        }
+    }
+}
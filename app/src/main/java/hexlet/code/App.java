@@ -6,13 +6,42 @@ import com.zaxxer.hikari.HikariDataSource;
 import gg.jte.ContentType;
 import gg.jte.TemplateEngine;
 import gg.jte.resolve.ResourceCodeResolver;
+import hexlet.code.cache.LruCache;
+import hexlet.code.controllers.ApiController;
 import hexlet.code.controllers.CheckController;
+import hexlet.code.controllers.CheckEventBroadcaster;
+import hexlet.code.controllers.MetricsController;
+import hexlet.code.controllers.PageCache;
 import hexlet.code.controllers.RootController;
 import hexlet.code.controllers.UrlsController;
+import hexlet.code.fetch.FetchSettings;
+import hexlet.code.fetch.HostGuard;
+import hexlet.code.fetch.HostGuardSettings;
+import hexlet.code.fetch.HtmlExtractor;
+import hexlet.code.fetch.PageFetcher;
+import hexlet.code.metrics.HttpMetrics;
+import hexlet.code.metrics.MetricsRegistry;
 import hexlet.code.model.web.Routes;
+import hexlet.code.repo.BatchingCheckWriter;
+import hexlet.code.repo.ReadRouting;
 import hexlet.code.repo.UrlCheckRepository;
+import hexlet.code.repo.UrlCheckRollupRepository;
 import hexlet.code.repo.UrlRepository;
+import hexlet.code.search.UrlSearchIndex;
+import hexlet.code.service.BulkCheckService;
+import hexlet.code.service.RecheckScheduler;
+import hexlet.code.service.RecheckSettings;
+import hexlet.code.service.ReextractionJob;
+import hexlet.code.service.RetentionJob;
+import hexlet.code.service.UrlCheckService;
+import hexlet.code.service.UrlImportService;
+import hexlet.code.service.UrlListSnapshot;
+import hexlet.code.service.UrlSearchService;
+import hexlet.code.snapshot.PageSnapshotStore;
 import io.javalin.Javalin;
+import io.javalin.config.EventConfig;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
 import io.javalin.rendering.template.JavalinJte;
 import lombok.extern.slf4j.Slf4j;
 
@@ -21,18 +50,37 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HexFormat;
 import java.util.stream.Collectors;
 
 @Slf4j
 public class App {
+    private static final String LAST_WRITE_ATTRIBUTE = "last-write-at";
+    private static final String TRIGRAM_INDEX_SQL = "CREATE INDEX IF NOT EXISTS ix_urls_search_trgm ON urls"
+            + " USING gin ((name || ' ' || COALESCE(search_text, '')) gin_trgm_ops)";
+
     private static int getPort() {
         String port = System.getenv().getOrDefault("PORT", "7070");
         return Integer.parseInt(port);
     }
 
+    private static int getIntEnv(String name, int defaultValue) {
+        return Integer.parseInt(System.getenv().getOrDefault(name, String.valueOf(defaultValue)));
+    }
+
+    private static boolean getBooleanEnv(String name, boolean defaultValue) {
+        return Boolean.parseBoolean(System.getenv().getOrDefault(name, String.valueOf(defaultValue)));
+    }
+
     private static String readResourceFile(String fileName) throws IOException {
         var inputStream = App.class.getClassLoader().getResourceAsStream(fileName);
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
@@ -42,6 +90,7 @@ public class App {
 
     public static void main(String[] args) throws IOException, SQLException {
         var app = getApp();
+        Runtime.getRuntime().addShutdownHook(new Thread(app::stop, "shutdown"));
 
         app.start(getPort());
     }
@@ -50,10 +99,10 @@ public class App {
         return System.getenv().getOrDefault("JDBC_DATABASE_URL", "jdbc:postgresql://localhost:5432/urlchecker");
     }
 
-    private static String getDriverName() {
+    private static String getDriverName(String jdbcUrl) {
         Driver driver;
         try {
-            driver = DriverManager.getDriver(getDatabaseUrl());
+            driver = DriverManager.getDriver(jdbcUrl);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -64,14 +113,22 @@ public class App {
         return Boolean.parseBoolean(System.getenv().getOrDefault("IS_DROP_DB_ENABLED", "false"));
     }
 
-    private static HikariConfig getHikariConfig() {
+    /**
+     * Pool settings for {@code jdbcUrl}. Variables are read with {@code envPrefix}, e.g. DB_USER
+     * for the primary and READ_DB_USER for the replica; the replica falls back to the primary credentials.
+     */
+    private static HikariConfig getHikariConfig(String jdbcUrl, String envPrefix, String poolName) {
         var hikariConfig = new HikariConfig();
-        hikariConfig.setJdbcUrl(getDatabaseUrl());
-        String driverClassName = getDriverName();
+        hikariConfig.setJdbcUrl(jdbcUrl);
+        hikariConfig.setPoolName(poolName);
+        hikariConfig.setMaximumPoolSize(getIntEnv(envPrefix + "DB_POOL_SIZE", getIntEnv("DB_POOL_SIZE", 10)));
+        String driverClassName = getDriverName(jdbcUrl);
         switch (driverClassName) {
             case "org.postgresql.Driver":
-                hikariConfig.setUsername(System.getenv().getOrDefault("DB_USER", "admin"));
-                hikariConfig.setPassword(System.getenv().getOrDefault("DB_PASSWORD", "admin"));
+                var env = System.getenv();
+                hikariConfig.setUsername(env.getOrDefault(envPrefix + "DB_USER", env.getOrDefault("DB_USER", "admin")));
+                hikariConfig.setPassword(env.getOrDefault(envPrefix + "DB_PASSWORD",
+                        env.getOrDefault("DB_PASSWORD", "admin")));
                 hikariConfig.setDriverClassName(driverClassName);
                 break;
             default:
@@ -80,65 +137,530 @@ public class App {
         return hikariConfig;
     }
 
-    private static void executeSchemaScript(DataSource dataSource) throws IOException, SQLException {
-        String schemaSql;
-        switch (getDriverName()) {
-            case "org.postgresql.Driver":
-                schemaSql = readResourceFile("postgresql/schema.sql");
-                break;
-            default:
-                schemaSql = readResourceFile("h2/schema.sql");
-                break;
-        }
-
-        log.info(schemaSql);
+    /**
+     * Runs the schema script unless the database already has this exact script applied.
+     * Returns whether the script was run.
+     */
+    private static boolean executeSchemaScript(DataSource dataSource) throws IOException, SQLException {
         try (var connection = dataSource.getConnection();
              var statement = connection.createStatement()) {
+            String schemaSql;
+            switch (connection.getMetaData().getDatabaseProductName()) {
+                case "PostgreSQL":
+                    schemaSql = readResourceFile("postgresql/schema.sql");
+                    break;
+                default:
+                    schemaSql = readResourceFile("h2/schema.sql");
+                    break;
+            }
+            String schemaHash = sha256(schemaSql);
+
             if (isDropDbEnabled()) {
                 String dropSql = readResourceFile("drop.sql");
                 statement.execute(dropSql);
+            } else if (schemaHash.equals(readSchemaHash(connection))) {
+                log.info("Schema {} is up to date, skipping DDL", schemaHash.substring(0, 12));
+                return false;
             }
             statement.execute(schemaSql);
+            writeSchemaHash(connection, schemaHash);
+            log.info("Applied schema {}", schemaHash.substring(0, 12));
+            return true;
         }
     }
 
-    public static Javalin getApp() throws IOException, SQLException {
-        var hikariConfig = getHikariConfig();
-        var dataSource = new HikariDataSource(hikariConfig);
-        return getApp(dataSource);
+    /**
+     * Replaces the stored hash in one transaction, so a crash never leaves the table empty
+     * and the next start does not run the whole migration again.
+     */
+    private static void writeSchemaHash(Connection connection, String schemaHash) throws SQLException {
+        connection.setAutoCommit(false);
+        try (var delete = connection.createStatement();
+             var insert = connection.prepareStatement("INSERT INTO schema_version (schema_hash) VALUES (?)")) {
+            delete.executeUpdate("DELETE FROM schema_version");
+            insert.setString(1, schemaHash);
+            insert.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static String readSchemaHash(Connection connection) {
+        try (var statement = connection.createStatement();
+             var resultSet = statement.executeQuery("SELECT schema_hash FROM schema_version")) {
+            return resultSet.next() ? resultSet.getString(1) : null;
+        } catch (SQLException e) {
+            // the table does not exist before the first run
+            return null;
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static UrlRepository createUrlRepository(DataSource dataSource, DataSource readDataSource,
+                                                     MetricsRegistry metrics) {
+        if (!getBooleanEnv("URL_CACHE_ENABLED", true)) {
+            return new UrlRepository(dataSource, readDataSource, LruCache.disabled(), LruCache.disabled(), metrics);
+        }
+        int size = getIntEnv("URL_CACHE_SIZE", 10_000);
+        var ttl = Duration.ofSeconds(getIntEnv("URL_CACHE_TTL_SECONDS", 300));
+        return new UrlRepository(dataSource, readDataSource, new LruCache<>(size, ttl), new LruCache<>(size, ttl),
+                metrics);
+    }
+
+    private static UrlCheckRepository createUrlCheckRepository(DataSource dataSource, DataSource readDataSource,
+                                                               MetricsRegistry metrics) {
+        int size = getIntEnv("CHECK_CONTENT_CACHE_SIZE", 2_000);
+        if (size <= 0) {
+            return new UrlCheckRepository(dataSource, readDataSource, LruCache.disabled(), LruCache.disabled(),
+                    metrics);
+        }
+        var ttl = Duration.ofHours(1);
+        return new UrlCheckRepository(dataSource, readDataSource, new LruCache<>(size, ttl),
+                new LruCache<>(size, ttl), metrics);
+    }
+
+    /**
+     * PostgreSQL searches through its trigram index when pg_trgm is available. Other databases, and PostgreSQL
+     * without the extension, get an in-process index that follows the check saves; returns null for the former.
+     */
+    private static UrlSearchIndex createSearchIndex(DataSource dataSource) throws SQLException {
+        try (var connection = dataSource.getConnection()) {
+            if ("PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())
+                    && createTrigramIndex(connection)) {
+                return null;
+            }
+        }
+        return new UrlSearchIndex();
+    }
+
+    /**
+     * Creating pg_trgm needs the CREATE privilege on the database, which managed and least-privilege roles
+     * usually lack, so a missing extension is created only when the role may and is otherwise reported.
+     */
+    private static boolean createTrigramIndex(Connection connection) {
+        try (var statement = connection.createStatement()) {
+            try (var resultSet = statement.executeQuery("SELECT 1 FROM pg_extension WHERE extname = 'pg_trgm'")) {
+                if (!resultSet.next()) {
+                    statement.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+                }
+            }
+            statement.execute(TRIGRAM_INDEX_SQL);
+            return true;
+        } catch (SQLException e) {
+            log.warn("pg_trgm is not available, searching with the in-process index instead: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static PageCache createPageCache(TemplateEngine templateEngine, Duration replicaLag) {
+        int size = getIntEnv("PAGE_CACHE_SIZE", 1000);
+        if (size <= 0) {
+            return new PageCache(templateEngine, LruCache.disabled());
+        }
+        var ttl = Duration.ofSeconds(getIntEnv("PAGE_CACHE_TTL_SECONDS", 300));
+        return new PageCache(templateEngine, new LruCache<>(size, ttl), replicaLag);
+    }
+
+    /**
+     * Opens the page snapshot store in SNAPSHOT_DIR. Without it fetched pages are not kept.
+     */
+    private static PageSnapshotStore createSnapshotStore(MetricsRegistry metrics) throws IOException {
+        var directory = System.getenv("SNAPSHOT_DIR");
+        if (directory == null || directory.isBlank()) {
+            return null;
+        }
+        long megabyte = 1024 * 1024;
+        return PageSnapshotStore.open(Path.of(directory), getIntEnv("SNAPSHOT_SEGMENT_MB", 64) * megabyte,
+                getIntEnv("SNAPSHOT_MAX_MB", 1024) * megabyte, metrics);
+    }
+
+    private static void closeSnapshotStore(PageSnapshotStore snapshotStore) {
+        try {
+            snapshotStore.close();
+        } catch (IOException e) {
+            log.warn("Could not close the page snapshot store", e);
+        }
+    }
+
+    private static FetchSettings createFetchSettings(boolean captureBody) {
+        return FetchSettings.builder()
+                .connectTimeout(Duration.ofMillis(getIntEnv("FETCH_CONNECT_TIMEOUT_MS", 5_000)))
+                .readTimeout(Duration.ofMillis(getIntEnv("FETCH_READ_TIMEOUT_MS", 10_000)))
+                .requestTimeout(Duration.ofMillis(getIntEnv("FETCH_REQUEST_TIMEOUT_MS", 30_000)))
+                .maxConnections(getIntEnv("FETCH_MAX_CONNECTIONS", 200))
+                .maxConnectionsPerHost(getIntEnv("FETCH_MAX_CONNECTIONS_PER_HOST", 4))
+                .maxRedirects(getIntEnv("FETCH_MAX_REDIRECTS", 5))
+                .dnsCacheSize(getIntEnv("FETCH_DNS_CACHE_SIZE", 10_000))
+                .dnsCacheTtl(Duration.ofSeconds(getIntEnv("FETCH_DNS_CACHE_TTL_SECONDS", 300)))
+                .userAgent(System.getenv().getOrDefault("FETCH_USER_AGENT", "page-analyzer/1.0"))
+                .captureBody(captureBody)
+                .build();
+    }
+
+    private static HostGuardSettings createHostGuardSettings() {
+        return HostGuardSettings.builder()
+                .requestsPerMinute(getIntEnv("HOST_REQUESTS_PER_MINUTE", 120))
+                .burst(getIntEnv("HOST_BURST", 5))
+                .maxWait(Duration.ofMillis(getIntEnv("HOST_MAX_WAIT_MS", 10_000)))
+                .failureThreshold(getIntEnv("BREAKER_FAILURE_THRESHOLD", 5))
+                .coolDown(Duration.ofSeconds(getIntEnv("BREAKER_COOL_DOWN_SECONDS", 60)))
+                .build();
+    }
+
+    private static RecheckSettings createRecheckSettings() {
+        return RecheckSettings.builder()
+                .maxAge(Duration.ofMinutes(getIntEnv("RECHECK_MAX_AGE_MINUTES", 60)))
+                .jitter(Duration.ofMinutes(getIntEnv("RECHECK_JITTER_MINUTES", 15)))
+                .tickInterval(Duration.ofSeconds(getIntEnv("RECHECK_TICK_SECONDS", 30)))
+                .batchSize(getIntEnv("RECHECK_BATCH_SIZE", 500))
+                .maxPerTick(getIntEnv("RECHECK_MAX_PER_TICK", 200))
+                .maxBacklog(getIntEnv("RECHECK_MAX_BACKLOG", 500))
+                .maxWriteLatencyMillis(getIntEnv("RECHECK_MAX_WRITE_LATENCY_MS", 250))
+                .build();
+    }
+
+    private static void registerPoolGauges(MetricsRegistry metrics, DataSource dataSource, String poolName) {
+        if (dataSource instanceof HikariDataSource hikariDataSource) {
+            var pool = hikariDataSource.getHikariPoolMXBean();
+            metrics.gauge("db_pool_connections", "Connections of the database pool by state",
+                    pool::getActiveConnections, "pool", poolName, "state", "active");
+            metrics.gauge("db_pool_connections", "Connections of the database pool by state",
+                    pool::getIdleConnections, "pool", poolName, "state", "idle");
+            metrics.gauge("db_pool_pending_threads", "Threads waiting for a database connection",
+                    pool::getThreadsAwaitingConnection, "pool", poolName);
+        }
+    }
+
+    private static void registerGauges(MetricsRegistry metrics, UrlRepository urlRepository,
+                                       UrlCheckService urlCheckService, BatchingCheckWriter checkWriter,
+                                       PageFetcher pageFetcher, HostGuard hostGuard) {
+        var urlCache = urlRepository.getCache();
+        metrics.counterFunction("url_cache_requests_total", "Url cache lookups by result",
+                urlCache::getHits, "result", "hit");
+        metrics.counterFunction("url_cache_requests_total", "Url cache lookups by result",
+                urlCache::getMisses, "result", "miss");
+        metrics.gauge("check_queue_size", "Checks waiting for a worker", urlCheckService::getQueueSize);
+        metrics.gauge("check_workers_active", "Workers running a check", urlCheckService::getActiveCount);
+        metrics.gauge("check_writer_queue_size", "Check results waiting to be written", checkWriter::getQueueSize);
+        metrics.gauge("fetch_pool_connections", "Outbound connections of the check fetcher by state",
+                pageFetcher::getLeasedConnections, "state", "leased");
+        metrics.gauge("fetch_pool_pending_threads", "Checks waiting for an outbound connection",
+                pageFetcher::getPendingConnections);
+        metrics.gauge("fetch_hosts_tracked", "Hosts with rate limit or breaker state", hostGuard::getTrackedHosts);
+        metrics.gauge("fetch_hosts_circuit_open", "Hosts whose circuit is open or half-open", hostGuard::countOpen);
+    }
+
+    /**
+     * Pins writing requests, and every request of a session for {@code readYourWrites} after its last write,
+     * to the primary so that users see their own changes before the replica catches up.
+     */
+    private static void routeReads(Javalin app, Duration readYourWrites) {
+        app.before(ctx -> {
+            var session = ctx.req().getSession(false);
+            var lastWriteAt = session == null ? null : (Long) session.getAttribute(LAST_WRITE_ATTRIBUTE);
+            if (ctx.method() == HandlerType.POST
+                    || lastWriteAt != null && System.currentTimeMillis() - lastWriteAt < readYourWrites.toMillis()) {
+                ReadRouting.pinToPrimary();
+            }
+        });
+        app.after(ctx -> {
+            if (ctx.method() == HandlerType.POST) {
+                ctx.sessionAttribute(LAST_WRITE_ATTRIBUTE, System.currentTimeMillis());
+            }
+            ReadRouting.clear();
+        });
+    }
+
+    private static Handler timed(MetricsRegistry metrics, String method, String route, Handler handler) {
+        return HttpMetrics.timed(metrics, method, route, handler);
     }
 
+    public static Javalin getApp() throws IOException, SQLException {
+        var startupTimer = new StartupTimer();
+        var dataSource = new HikariDataSource(getHikariConfig(getDatabaseUrl(), "", "primary"));
+        var readUrl = System.getenv("READ_JDBC_DATABASE_URL");
+        DataSource readDataSource = readUrl == null || readUrl.isBlank()
+                ? dataSource
+                : new HikariDataSource(getHikariConfig(readUrl, "READ_", "replica"));
+        startupTimer.mark("connection pool");
+        return getApp(dataSource, readDataSource, startupTimer);
+    }
 
     public static Javalin getApp(DataSource dataSource) throws IOException, SQLException {
+        return getApp(dataSource, dataSource, new StartupTimer());
+    }
 
+    /**
+     * Builds the app with list and scan queries served by {@code readDataSource}. The schema is only applied
+     * to the primary; the replica is expected to get it through replication.
+     */
+    public static Javalin getApp(DataSource dataSource, DataSource readDataSource) throws IOException, SQLException {
+        return getApp(dataSource, readDataSource, new StartupTimer());
+    }
 
-        executeSchemaScript(dataSource);
+    private static Javalin getApp(DataSource dataSource, DataSource readDataSource, StartupTimer startupTimer)
+            throws IOException, SQLException {
+        boolean schemaApplied = executeSchemaScript(dataSource);
+        startupTimer.mark("schema");
+        boolean hasReplica = readDataSource != dataSource;
+        var readYourWrites = Duration.ofMillis(hasReplica ? getIntEnv("READ_YOUR_WRITES_MILLIS", 5000) : 0);
 
-        var app = Javalin.create(config -> config.fileRenderer(new JavalinJte(createTemplateEngine())));
+        var components = new Components();
+        // every app counts into its own registry, so apps built side by side, as the tests do, keep their
+        // numbers apart and a rebuilt app does not register its gauges a second time
+        components.metrics = new MetricsRegistry();
+        createRepositories(components, dataSource, readDataSource);
+        if (schemaApplied) {
+            migrateData(components.urlCheckRepository);
+            startupTimer.mark("data migrations");
+        }
+        failUnfinishedChecks(components.urlCheckRepository);
+        createServices(components, dataSource);
+        startupTimer.mark("services");
+        var templateEngine = createTemplateEngine();
+        startupTimer.mark("templates");
+        components.pageCache = createPageCache(templateEngine, readYourWrites);
+        components.checkEvents = new CheckEventBroadcaster(getIntEnv("SSE_SENDER_THREADS", 4),
+                getIntEnv("SSE_CLIENT_QUEUE_CAPACITY", 256),
+                Duration.ofSeconds(getIntEnv("SSE_HEARTBEAT_SECONDS", 15)),
+                Duration.ofMillis(getIntEnv("SSE_WRITE_TIMEOUT_MS", 10_000)), components.metrics);
+        addSaveListeners(components);
+        registerMetrics(components.metrics, components, dataSource, readDataSource);
 
+        var app = Javalin.create(config -> {
+            config.fileRenderer(new JavalinJte(templateEngine));
+            config.events(event -> registerLifecycle(event, components, startupTimer));
+        });
         app.before(ctx -> ctx.contentType("text/html; charset=utf-8"));
+        if (hasReplica) {
+            routeReads(app, readYourWrites);
+        }
+        registerRoutes(app, components.metrics, components);
+        startupTimer.mark("routes");
+        return app;
+    }
+
+    private static void createRepositories(Components components, DataSource dataSource,
+                                           DataSource readDataSource) {
+        var metrics = components.metrics;
+        components.urlRepository = createUrlRepository(dataSource, readDataSource, metrics);
+        components.urlCheckRepository = createUrlCheckRepository(dataSource, readDataSource, metrics);
+        components.rollupRepository = new UrlCheckRollupRepository(dataSource, readDataSource, metrics);
+    }
+
+    /**
+     * Brings rows written by an older version up to date with the denormalized columns and tables.
+     */
+    private static void migrateData(UrlCheckRepository urlCheckRepository) throws SQLException {
+        int backfilled = urlCheckRepository.backfillLatestChecks();
+        if (backfilled > 0) {
+            log.info("Backfilled latest check columns for {} urls", backfilled);
+        }
+        int migrated = urlCheckRepository.migrateContents();
+        if (migrated > 0) {
+            log.info("Moved the contents of {} checks into check_contents", migrated);
+        }
+    }
 
-        UrlRepository urlRepository = new UrlRepository(dataSource);
-        UrlCheckRepository urlCheckRepository = new UrlCheckRepository(dataSource);
+    /**
+     * Checks queued or running when an earlier run stopped or crashed are never picked up again;
+     * they are marked failed so that their pages stop waiting for them.
+     */
+    private static void failUnfinishedChecks(UrlCheckRepository urlCheckRepository) throws SQLException {
+        int failed = urlCheckRepository.failUnfinished("Interrupted by a restart");
+        if (failed > 0) {
+            log.warn("Marked {} checks left unfinished by an earlier run as failed", failed);
+        }
+    }
 
+    private static void createServices(Components components, DataSource dataSource)
+            throws IOException, SQLException {
+        var urlRepository = components.urlRepository;
+        var urlCheckRepository = components.urlCheckRepository;
+        var metrics = components.metrics;
+        var htmlExtractor = new HtmlExtractor(getIntEnv("CHECK_MAX_BODY_BYTES", 2 * 1024 * 1024));
+        components.snapshotStore = createSnapshotStore(metrics);
+        if (components.snapshotStore != null) {
+            components.reextractionJob = new ReextractionJob(components.snapshotStore, htmlExtractor,
+                    urlCheckRepository, getIntEnv("REEXTRACT_THREADS", 4), getIntEnv("REEXTRACT_BATCH_SIZE", 100),
+                    metrics);
+        }
+        components.hostGuard = new HostGuard(createHostGuardSettings());
+        components.pageFetcher = new PageFetcher(htmlExtractor, createFetchSettings(components.snapshotStore != null),
+                components.hostGuard);
+        components.urlCheckService = new UrlCheckService(urlCheckRepository, components.pageFetcher,
+                getIntEnv("CHECK_WORKERS", 8), getIntEnv("CHECK_QUEUE_CAPACITY", 1000), metrics);
+        components.checkWriter = new BatchingCheckWriter(urlCheckRepository,
+                getIntEnv("CHECK_WRITE_BATCH_SIZE", 100), getIntEnv("CHECK_WRITE_MAX_DELAY_MS", 20),
+                getIntEnv("CHECK_WRITE_QUEUE_CAPACITY", 10_000));
+        components.bulkCheckService = new BulkCheckService(urlRepository, components.checkWriter,
+                components.urlCheckService, getIntEnv("BULK_CHECK_CONCURRENCY", 32),
+                getIntEnv("BULK_CHECK_PER_HOST", 2));
+        components.recheckScheduler = new RecheckScheduler(urlRepository, components.urlCheckService,
+                Clock.systemUTC(), createRecheckSettings(), metrics);
+        components.retentionJob = new RetentionJob(components.rollupRepository, Clock.systemDefaultZone(),
+                getIntEnv("RETENTION_DAYS", 30), getIntEnv("RETENTION_BATCH_SIZE", 1000),
+                Duration.ofMinutes(getIntEnv("RETENTION_INTERVAL_MINUTES", 60)), metrics);
+        components.searchIndex = createSearchIndex(dataSource);
+        components.urlSearchService = new UrlSearchService(urlRepository, components.searchIndex, metrics);
+        components.urlList = new UrlListSnapshot(urlRepository);
+    }
 
-        UrlsController urlsController = new UrlsController(urlRepository, urlCheckRepository);
-        CheckController checkController = new CheckController(urlRepository, urlCheckRepository);
-        RootController rootController = new RootController();
+    private static void addSaveListeners(Components components) {
+        var urlRepository = components.urlRepository;
+        var urlCheckRepository = components.urlCheckRepository;
+        var pageCache = components.pageCache;
+        // listeners run in this order: evict, snapshot, search, url list, page cache, events; the caches and the
+        // list must have the change before the page cache bump, and clients are told about it last
+        urlCheckRepository.addSaveListener(check -> urlRepository.evict(check.getUrlId()));
+        if (components.snapshotStore != null) {
+            urlCheckRepository.addSaveListener(components.snapshotStore::record);
+        }
+        if (components.searchIndex != null) {
+            urlCheckRepository.addSaveListener(components.searchIndex::update);
+        }
+        urlRepository.addSaveListener(components.urlList::add);
+        urlCheckRepository.addSaveListener(components.urlList::recordCheck);
+        urlRepository.addSaveListener(url -> pageCache.bump(url.getId()));
+        urlCheckRepository.addSaveListener(check -> pageCache.bump(check.getUrlId()));
+        urlCheckRepository.addSaveListener(components.checkEvents::publish);
+        components.rollupRepository.addRollupListener(pageCache::bump);
+    }
+
+    private static void registerMetrics(MetricsRegistry metrics, Components components, DataSource dataSource,
+                                        DataSource readDataSource) {
+        registerPoolGauges(metrics, dataSource, "primary");
+        if (readDataSource != dataSource) {
+            registerPoolGauges(metrics, readDataSource, "replica");
+        }
+        registerGauges(metrics, components.urlRepository, components.urlCheckService, components.checkWriter,
+                components.pageFetcher, components.hostGuard);
+        var snapshotStore = components.snapshotStore;
+        if (snapshotStore != null) {
+            metrics.gauge("page_snapshot_pages", "Checks with a stored page snapshot", snapshotStore::size);
+            metrics.gauge("page_snapshot_bytes", "Size of the page snapshot segments",
+                    snapshotStore::getTotalBytes);
+            metrics.gauge("page_snapshot_segments", "Page snapshot segment files", snapshotStore::getSegmentCount);
+        }
+        if (components.searchIndex != null) {
+            metrics.gauge("url_search_index_documents", "Urls held by the in-process search index",
+                    components.searchIndex::size);
+        }
+        metrics.gauge("url_list_snapshot_rows", "Urls held by the in-memory url list", components.urlList::size);
+        metrics.gauge("url_list_snapshot_bytes", "Memory taken by the in-memory url list",
+                components.urlList::getMemoryBytes);
+        metrics.gauge("sse_clients", "Open check event streams", components.checkEvents::getSubscriberCount);
+    }
 
-        app.get(Routes.rootPath(), rootController::welcome);
-        app.get(Routes.urlsPath(), urlsController::listUrls);
-        app.post(Routes.urlsPath(), urlsController::createUrl);
-        app.get(Routes.urlPath("{id}"), urlsController::showUrl);
-        app.post(Routes.urlChecksPath("{id}"), checkController::checkUrl);
+    private static void registerLifecycle(EventConfig event, Components components, StartupTimer startupTimer) {
+        event.serverStarted(() -> {
+            startupTimer.mark("server start");
+            log.info(startupTimer.summary());
+        });
+        if (getBooleanEnv("RECHECK_ENABLED", true)) {
+            event.serverStarted(components.recheckScheduler::start);
+        }
+        if (getBooleanEnv("RETENTION_ENABLED", true)) {
+            event.serverStarted(components.retentionJob::start);
+        }
+        var reextractionJob = components.reextractionJob;
+        if (reextractionJob != null) {
+            if (getBooleanEnv("SNAPSHOT_REEXTRACT_ON_START", false)) {
+                event.serverStarted(reextractionJob::start);
+            }
+            event.serverStopping(reextractionJob::stop);
+        }
+        event.serverStopping(components.recheckScheduler::stop);
+        event.serverStopping(components.retentionJob::stop);
+        event.serverStopping(components.urlCheckService::shutdown);
+        event.serverStopping(components.checkWriter::close);
+        var snapshotStore = components.snapshotStore;
+        if (snapshotStore != null) {
+            event.serverStopping(() -> closeSnapshotStore(snapshotStore));
+        }
+        event.serverStopping(components.pageFetcher::close);
+        event.serverStopping(components.checkEvents::close);
+    }
 
-        return app;
+    private static void registerRoutes(Javalin app, MetricsRegistry metrics, Components components) {
+        var urlRepository = components.urlRepository;
+        var checkEvents = components.checkEvents;
+        UrlsController urlsController = new UrlsController(urlRepository, components.urlCheckRepository,
+                components.rollupRepository, components.pageCache, new UrlImportService(urlRepository),
+                components.hostGuard, components.urlSearchService, components.urlList, getIntEnv("PAGE_SIZE", 20));
+        CheckController checkController = new CheckController(urlRepository, components.urlCheckService,
+                components.bulkCheckService);
+        RootController rootController = new RootController();
+        MetricsController metricsController = new MetricsController(metrics);
+        ApiController apiController = new ApiController(urlRepository, components.urlCheckRepository);
 
+        app.get(Routes.rootPath(), timed(metrics, "GET", Routes.rootPath(), rootController::welcome));
+        app.get(Routes.urlsPath(), timed(metrics, "GET", Routes.urlsPath(), urlsController::listUrls));
+        app.post(Routes.urlsPath(), timed(metrics, "POST", Routes.urlsPath(), urlsController::createUrl));
+        app.post(Routes.urlsImportPath(),
+                timed(metrics, "POST", Routes.urlsImportPath(), urlsController::importUrls));
+        app.get(Routes.urlsChecksPath(),
+                timed(metrics, "GET", Routes.urlsChecksPath(), checkController::showBulkProgress));
+        app.post(Routes.urlsChecksPath(),
+                timed(metrics, "POST", Routes.urlsChecksPath(), checkController::checkAll));
+        // registered before /urls/{id}, which would take "events" for an id
+        app.sse(Routes.urlsEventsPath(), checkEvents::subscribeToList);
+        app.get(Routes.urlPath("{id}"), timed(metrics, "GET", Routes.urlPath("{id}"), urlsController::showUrl));
+        app.sse(Routes.urlEventsPath("{id}"), checkEvents::subscribeToUrl);
+        app.post(Routes.urlChecksPath("{id}"),
+                timed(metrics, "POST", Routes.urlChecksPath("{id}"), checkController::checkUrl));
+        app.get(Routes.apiUrlsPath(), timed(metrics, "GET", Routes.apiUrlsPath(), apiController::exportUrls));
+        app.get(Routes.apiUrlChecksPath("{id}"),
+                timed(metrics, "GET", Routes.apiUrlChecksPath("{id}"), apiController::exportChecks));
+        app.get(Routes.metricsPath(), metricsController::scrape);
+    }
+
+    /**
+     * Uses the templates compiled at build time. With JTE_DEV_MODE=true templates are compiled
+     * from the resources on first use instead, which picks up edits without a rebuild.
+     */
+    public static TemplateEngine createTemplateEngine() {
+        if (getBooleanEnv("JTE_DEV_MODE", false)) {
+            ClassLoader classLoader = App.class.getClassLoader();
+            ResourceCodeResolver codeResolver = new ResourceCodeResolver("templates", classLoader);
+            return TemplateEngine.create(codeResolver, ContentType.Html);
+        }
+        return TemplateEngine.createPrecompiled(ContentType.Html);
     }
 
-    private static TemplateEngine createTemplateEngine() {
-        ClassLoader classLoader = App.class.getClassLoader();
-        ResourceCodeResolver codeResolver = new ResourceCodeResolver("templates", classLoader);
-        return TemplateEngine.create(codeResolver, ContentType.Html);
+    /**
+     * The repositories and services one app is wired from, filled in by the setup steps of {@link #getApp}.
+     */
+    private static final class Components {
+        private MetricsRegistry metrics;
+        private UrlRepository urlRepository;
+        private UrlCheckRepository urlCheckRepository;
+        private UrlCheckRollupRepository rollupRepository;
+        private PageSnapshotStore snapshotStore;
+        private ReextractionJob reextractionJob;
+        private HostGuard hostGuard;
+        private PageFetcher pageFetcher;
+        private UrlCheckService urlCheckService;
+        private BatchingCheckWriter checkWriter;
+        private BulkCheckService bulkCheckService;
+        private RecheckScheduler recheckScheduler;
+        private RetentionJob retentionJob;
+        private UrlSearchIndex searchIndex;
+        private UrlSearchService urlSearchService;
+        private UrlListSnapshot urlList;
+        private PageCache pageCache;
+        private CheckEventBroadcaster checkEvents;
     }
 }
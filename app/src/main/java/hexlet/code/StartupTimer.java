@@ -0,0 +1,26 @@
+package hexlet.code;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects how long each boot phase took, for a single summary line in the log.
+ */
+final class StartupTimer {
+
+    private final long startedAt = System.nanoTime();
+    private final List<String> phases = new ArrayList<>();
+    private long lastMark = startedAt;
+
+    synchronized void mark(String phase) {
+        long now = System.nanoTime();
+        phases.add(phase + " " + TimeUnit.NANOSECONDS.toMillis(now - lastMark) + " ms");
+        lastMark = now;
+    }
+
+    synchronized String summary() {
+        long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        return "Startup took " + total + " ms: " + String.join(", ", phases);
+    }
+}
@@ -0,0 +1,161 @@
+package hexlet.code.controllers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repo.UrlCheckRepository;
+import hexlet.code.repo.UrlRepository;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.NotFoundResponse;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Exports urls and checks as a JSON array, or as NDJSON with {@code ?format=ndjson} or
+ * {@code Accept: application/x-ndjson}. Rows go from the JDBC cursor straight into the response,
+ * so memory use does not depend on the number of rows.
+ */
+@RequiredArgsConstructor
+public final class ApiController {
+
+    private static final String NDJSON = "application/x-ndjson";
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    private final UrlRepository urlRepository;
+    private final UrlCheckRepository urlCheckRepository;
+
+    private interface Export {
+        void run(JsonGenerator generator) throws SQLException;
+    }
+
+    public void exportUrls(Context ctx) throws SQLException, IOException {
+        var since = parseSince(ctx);
+        stream(ctx, generator -> urlRepository.streamSince(since, url -> write(generator, url)));
+    }
+
+    public void exportChecks(Context ctx) throws SQLException, IOException {
+        long id = ctx.pathParamAsClass("id", Long.class).get();
+        urlRepository.findById(id)
+                .orElseThrow(() -> new NotFoundResponse("Url with id = " + id + " not found"));
+        var since = parseSince(ctx);
+        stream(ctx, generator -> urlCheckRepository.streamByUrlId(id, since, check -> write(generator, check)));
+    }
+
+    private static void stream(Context ctx, Export export) throws SQLException, IOException {
+        boolean ndjson = "ndjson".equals(ctx.queryParam("format"))
+                || (ctx.header("Accept") != null && ctx.header("Accept").contains(NDJSON));
+        ctx.contentType((ndjson ? NDJSON : "application/json") + "; charset=utf-8");
+        try (var generator = JSON_FACTORY.createGenerator(ctx.outputStream())) {
+            if (ndjson) {
+                generator.setRootValueSeparator(null);
+            } else {
+                generator.writeStartArray();
+            }
+            export.run(generator);
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * {@code since} may be an instant ({@code 2024-05-01T10:00:00Z}), a local date-time or a date.
+     * Without it everything is exported.
+     */
+    static Timestamp parseSince(Context ctx) {
+        var since = ctx.queryParam("since");
+        if (since == null || since.isBlank()) {
+            return new Timestamp(0);
+        }
+        try {
+            return Timestamp.from(Instant.parse(since));
+        } catch (DateTimeParseException e) {
+            // not an instant, try the local forms
+        }
+        try {
+            return Timestamp.valueOf(LocalDateTime.parse(since));
+        } catch (DateTimeParseException e) {
+            // not a date-time either
+        }
+        try {
+            return Timestamp.valueOf(LocalDate.parse(since).atStartOfDay());
+        } catch (DateTimeParseException e) {
+            throw new BadRequestResponse("Parameter since must be an ISO-8601 date or date-time");
+        }
+    }
+
+    private static void write(JsonGenerator generator, Url url) {
+        try {
+            generator.writeStartObject();
+            generator.writeNumberField("id", url.getId());
+            generator.writeStringField("name", url.getName());
+            writeTimestamp(generator, "createdAt", url.getCreatedAt());
+            writeNumber(generator, "lastCheckId", url.getLastCheckId());
+            writeTimestamp(generator, "lastCheckAt", url.getLastCheckAt());
+            writeNumber(generator, "lastStatusCode", url.getLastStatusCode());
+            generator.writeEndObject();
+            endRow(generator);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void write(JsonGenerator generator, UrlCheck check) {
+        try {
+            generator.writeStartObject();
+            generator.writeNumberField("id", check.getId());
+            generator.writeNumberField("urlId", check.getUrlId());
+            generator.writeStringField("status", check.getStatus().name());
+            generator.writeNumberField("statusCode", check.getStatusCode());
+            generator.writeStringField("title", check.getTitle());
+            generator.writeStringField("h1", check.getH1());
+            generator.writeStringField("description", check.getDescription());
+            generator.writeBooleanField("notModified", check.isNotModified());
+            generator.writeStringField("error", check.getError());
+            writeNumber(generator, "fetchMillis", check.getFetchMillis());
+            writeNumber(generator, "fetchBytes", check.getFetchBytes());
+            writeTimestamp(generator, "createdAt", check.getCreatedAt());
+            generator.writeEndObject();
+            endRow(generator);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void endRow(JsonGenerator generator) throws IOException {
+        if (generator.getOutputContext().inRoot()) {
+            generator.writeRaw('\n');
+        }
+    }
+
+    private static void writeNumber(JsonGenerator generator, String name, Number value) throws IOException {
+        if (value == null) {
+            generator.writeNullField(name);
+        } else {
+            generator.writeNumberField(name, value.longValue());
+        }
+    }
+
+    private static void writeTimestamp(JsonGenerator generator, String name, Timestamp value) throws IOException {
+        if (value == null) {
+            generator.writeNullField(name);
+        } else {
+            generator.writeStringField(name, value.toInstant().toString());
+        }
+    }
+}
@@ -1,26 +1,25 @@
 package hexlet.code.controllers;
 
 import hexlet.code.model.Url;
-import hexlet.code.model.UrlCheck;
-import hexlet.code.repo.UrlCheckRepository;
+import hexlet.code.model.web.Routes;
 import hexlet.code.repo.UrlRepository;
+import hexlet.code.service.BulkCheckService;
+import hexlet.code.service.UrlCheckService;
 import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
 import io.javalin.http.NotFoundResponse;
-import kong.unirest.HttpResponse;
-import kong.unirest.Unirest;
-import kong.unirest.UnirestException;
 import lombok.RequiredArgsConstructor;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
 
 import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RequiredArgsConstructor
 public final class CheckController {
 
     private final UrlRepository urlRepository;
-    private final UrlCheckRepository urlCheckRepository;
+    private final UrlCheckService urlCheckService;
+    private final BulkCheckService bulkCheckService;
 
     public void checkUrl(Context ctx) throws SQLException {
         long id = ctx.pathParamAsClass("id", Long.class).getOrDefault(null);
@@ -28,31 +27,40 @@ public final class CheckController {
         Url url = urlRepository.findById(id)
                 .orElseThrow(() -> new NotFoundResponse("Url with id = " + id + " not found"));
 
+        // the url page posts with fetch and follows the check over its event stream instead of reloading
+        boolean wantsJson = ctx.header("Accept") != null && ctx.header("Accept").contains("application/json");
         try {
-            HttpResponse<String> response = Unirest.get(url.getName()).asString();
-            Document doc = Jsoup.parse(response.getBody());
-
-            int statusCode = response.getStatus();
-            String title = doc.title();
-            Element h1Element = doc.selectFirst("h1");
-            String h1 = h1Element == null ? "" : h1Element.text();
-            Element descriptionElement = doc.selectFirst("meta[name=description]");
-            String description = descriptionElement == null ? "" : descriptionElement.attr("content");
-
-            UrlCheck newUrlCheck = new UrlCheck(statusCode, title, h1, description);
-            newUrlCheck.setUrlId(id);
-            urlCheckRepository.save(newUrlCheck);
-
-            ctx.sessionAttribute("flash", "Страница успешно проверена");
+            var check = urlCheckService.enqueue(url);
+            ctx.header("X-Check-Id", String.valueOf(check.getId()));
+            if (wantsJson) {
+                ctx.status(HttpStatus.ACCEPTED).json(Map.of("id", check.getId()));
+                return;
+            }
+            ctx.sessionAttribute("flash", "Проверка #" + check.getId() + " поставлена в очередь");
             ctx.sessionAttribute("flash-type", "success");
-        } catch (UnirestException e) {
-            ctx.sessionAttribute("flash", "Некорректный адрес");
-            ctx.sessionAttribute("flash-type", "danger");
-        } catch (Exception e) {
-            ctx.sessionAttribute("flash", e.getMessage());
-            ctx.sessionAttribute("flash-type", "danger");
+        } catch (RejectedExecutionException e) {
+            if (wantsJson) {
+                ctx.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .json(Map.of("error", "Очередь проверок переполнена, попробуйте позже"));
+                return;
+            }
+            ctx.sessionAttribute("flash", "Очередь проверок переполнена, попробуйте позже");
+            ctx.sessionAttribute("flash-type", "warning");
         }
 
-        ctx.redirect("/urls/" + url.getId());
+        ctx.redirect(Routes.urlPath(url.getId()));
+    }
+
+    public void checkAll(Context ctx) throws SQLException {
+        var progress = bulkCheckService.checkAll();
+        ctx.sessionAttribute("flash", "Запущена проверка всех сайтов: " + progress.getTotal());
+        ctx.sessionAttribute("flash-type", "success");
+        ctx.redirect(Routes.urlsPath());
+    }
+
+    public void showBulkProgress(Context ctx) {
+        var progress = bulkCheckService.getProgress()
+                .orElseThrow(() -> new NotFoundResponse("No bulk check has been started"));
+        ctx.json(progress);
     }
 }
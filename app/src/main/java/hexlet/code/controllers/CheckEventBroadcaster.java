@@ -0,0 +1,294 @@
+package hexlet.code.controllers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import hexlet.code.metrics.Counter;
+import hexlet.code.metrics.MetricsRegistry;
+import hexlet.code.model.UrlCheck;
+import io.javalin.http.sse.SseClient;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jetty.server.Request;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Pushes check progress to browsers over Server-Sent Events: every event of a url to the subscribers of its page,
+ * finished checks to the subscribers of the url list.
+ *
+ * <p>An idle subscriber costs a queue and an async request, not a thread. Events are serialized once and handed
+ * to every subscriber's bounded queue; a small pool of sender threads drains the queues, one sender per
+ * subscriber at a time. A subscriber whose queue is full is too slow to keep up and is disconnected. A client
+ * that stops reading while its connection stays open blocks the sender in the write instead; a write that takes
+ * longer than {@code writeTimeout} aborts the connection, which frees the sender. So a stalled client never holds
+ * up the others for longer than the timeout, nor the check that published the event. A periodic comment keeps
+ * proxies from closing idle streams and finds clients that went away.
+ */
+@Slf4j
+public final class CheckEventBroadcaster implements AutoCloseable {
+
+    public static final String CHECK_STARTED = "check-started";
+    public static final String CHECK_FINISHED = "check-finished";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final long NOT_SENDING = Long.MIN_VALUE;
+
+    private final Counter dropped;
+    private final Map<Long, Set<Subscriber>> urlSubscribers = new ConcurrentHashMap<>();
+    private final Set<Subscriber> listSubscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final int queueCapacity;
+    private final long writeTimeoutNanos;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService heartbeat;
+
+    public CheckEventBroadcaster(int senderThreads, int queueCapacity, Duration heartbeatInterval,
+                                Duration writeTimeout) {
+        this(senderThreads, queueCapacity, heartbeatInterval, writeTimeout, MetricsRegistry.getDefault());
+    }
+
+    public CheckEventBroadcaster(int senderThreads, int queueCapacity, Duration heartbeatInterval,
+                                Duration writeTimeout, MetricsRegistry metrics) {
+        this.dropped = metrics.counter("sse_clients_dropped_total",
+                "Event stream clients disconnected for falling behind");
+        this.queueCapacity = queueCapacity;
+        this.writeTimeoutNanos = writeTimeout.toNanos();
+        var threadNumber = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            var thread = new Thread(runnable, "sse-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "sse-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = heartbeatInterval.toMillis();
+        heartbeat.scheduleAtFixedRate(this::sendHeartbeat, interval, interval, TimeUnit.MILLISECONDS);
+        long checkInterval = Math.max(1, writeTimeout.toMillis() / 2);
+        heartbeat.scheduleAtFixedRate(this::abortStalledWrites, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Streams the events of the url in the {@code id} path parameter.
+     */
+    public void subscribeToUrl(SseClient client) {
+        long urlId = client.ctx().pathParamAsClass("id", Long.class).get();
+        var subscriber = new Subscriber(client, urlId);
+        urlSubscribers.compute(urlId, (id, group) -> {
+            var subscribers = group == null ? ConcurrentHashMap.<Subscriber>newKeySet() : group;
+            subscribers.add(subscriber);
+            return subscribers;
+        });
+        start(subscriber);
+    }
+
+    /**
+     * Streams the finished checks of all urls.
+     */
+    public void subscribeToList(SseClient client) {
+        var subscriber = new Subscriber(client, null);
+        listSubscribers.add(subscriber);
+        start(subscriber);
+    }
+
+    private void start(Subscriber subscriber) {
+        subscriberCount.incrementAndGet();
+        subscriber.client.keepAlive();
+        subscriber.client.onClose(() -> remove(subscriber));
+        // tells proxies and the browser that the stream is open before the first event
+        subscriber.offer(Event.comment("connected"));
+    }
+
+    /**
+     * Save listener of the check repository. Runs on the thread that saved the check and only enqueues.
+     */
+    public void publish(UrlCheck check) {
+        boolean finished = !check.getStatus().isPending();
+        var subscribers = urlSubscribers.get(check.getUrlId());
+        if (subscribers == null && (!finished || listSubscribers.isEmpty())) {
+            return;
+        }
+        var event = new Event(finished ? CHECK_FINISHED : CHECK_STARTED, toJson(check));
+        if (subscribers != null) {
+            subscribers.forEach(subscriber -> subscriber.offer(event));
+        }
+        if (finished) {
+            listSubscribers.forEach(subscriber -> subscriber.offer(event));
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    private void sendHeartbeat() {
+        var event = Event.comment("ping");
+        forEachSubscriber(subscriber -> subscriber.offer(event));
+    }
+
+    private void abortStalledWrites() {
+        long now = System.nanoTime();
+        forEachSubscriber(subscriber -> {
+            long since = subscriber.sendingSince;
+            if (since != NOT_SENDING && now - since > writeTimeoutNanos) {
+                dropped.increment();
+                log.info("Dropping event stream client {} of {} that has not read an event for {} ms",
+                        subscriber.client.ctx().ip(), subscriber.client.ctx().path(),
+                        TimeUnit.NANOSECONDS.toMillis(now - since));
+                subscriber.abort();
+            }
+        });
+    }
+
+    private void forEachSubscriber(Consumer<Subscriber> action) {
+        listSubscribers.forEach(action);
+        urlSubscribers.values().forEach(group -> group.forEach(action));
+    }
+
+    /**
+     * Forgets the subscriber; a url without subscribers left is dropped from the map. Safe to call twice.
+     */
+    private void remove(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true)) {
+            return;
+        }
+        subscriberCount.decrementAndGet();
+        if (subscriber.urlId == null) {
+            listSubscribers.remove(subscriber);
+        } else {
+            urlSubscribers.computeIfPresent(subscriber.urlId, (id, group) -> {
+                group.remove(subscriber);
+                return group.isEmpty() ? null : group;
+            });
+        }
+    }
+
+    private static String toJson(UrlCheck check) {
+        var out = new StringWriter();
+        try (var generator = JSON_FACTORY.createGenerator(out)) {
+            ApiController.write(generator, check);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString().strip();
+    }
+
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+        senders.shutdownNow();
+        forEachSubscriber(subscriber -> subscriber.client.close());
+    }
+
+    private static final class Event {
+        private final String name;
+        private final String data;
+
+        Event(String name, String data) {
+            this.name = name;
+            this.data = data;
+        }
+
+        static Event comment(String text) {
+            return new Event(null, text);
+        }
+    }
+
+    private final class Subscriber implements Runnable {
+        private final SseClient client;
+        private final Long urlId;
+        private final Queue<Event> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long sendingSince = NOT_SENDING;
+
+        Subscriber(SseClient client, Long urlId) {
+            this.client = client;
+            this.urlId = urlId;
+        }
+
+        void offer(Event event) {
+            if (closed.get()) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                dropped.increment();
+                log.info("Dropping event stream client {} of {} that fell {} events behind", client.ctx().ip(),
+                        client.ctx().path(), queueCapacity);
+                disconnect();
+                return;
+            }
+            schedule();
+        }
+
+        private void disconnect() {
+            remove(this);
+            queue.clear();
+            client.close();
+        }
+
+        /**
+         * Disconnects a client whose write is stuck. Closing the stream alone would wait for the write,
+         * so the connection is failed first, which makes the blocked write throw.
+         */
+        private void abort() {
+            remove(this);
+            queue.clear();
+            var request = Request.getBaseRequest(client.ctx().req());
+            if (request != null) {
+                request.getHttpChannel().abort(new TimeoutException("Event stream write timed out"));
+            }
+            client.close();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                senders.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (!closed.get()) {
+                var event = queue.poll();
+                if (event == null) {
+                    break;
+                }
+                sendingSince = System.nanoTime();
+                try {
+                    if (event.name == null) {
+                        client.sendComment(event.data);
+                    } else {
+                        client.sendEvent(event.name, event.data);
+                    }
+                } catch (RuntimeException e) {
+                    log.debug("Could not write to event stream client {}", client.ctx().ip(), e);
+                    disconnect();
+                } finally {
+                    sendingSince = NOT_SENDING;
+                }
+            }
+            scheduled.set(false);
+            // an event offered after the last poll but before the flag was cleared would wait for the next one
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package hexlet.code.controllers;
+
+import hexlet.code.metrics.MetricsRegistry;
+import io.javalin.http.Context;
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+public final class MetricsController {
+
+    private final MetricsRegistry metricsRegistry;
+
+    public void scrape(Context ctx) {
+        ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+        ctx.result(metricsRegistry.scrape());
+    }
+}
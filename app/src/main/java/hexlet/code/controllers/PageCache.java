@@ -0,0 +1,147 @@
+package hexlet.code.controllers;
+
+import gg.jte.TemplateEngine;
+import gg.jte.output.StringOutput;
+import hexlet.code.cache.LruCache;
+import hexlet.code.model.pages.BasePage;
+import hexlet.code.repo.ReadRouting;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static io.javalin.rendering.template.TemplateUtil.model;
+
+/**
+ * Caches the rendered body of url pages. Keys carry a version that every write to a url bumps, so a stale
+ * body is never served and simply ages out of the cache. The flash message is not part of the cached body:
+ * it is composed around it by the layout on every request, and a response with a flash gets no ETag.
+ * With a read replica, a page read from it within {@code replicaLag} of a change may predate the change,
+ * so it is served but not cached. Url versions are kept in a fixed number of striped counters, so urls that
+ * share a stripe also invalidate each other's pages, but the memory does not grow with the number of urls.
+ */
+public final class PageCache {
+
+    private static final String LAYOUT_TEMPLATE = "cached.jte";
+    private static final int ETAG_BYTES = 16;
+    private static final int URL_VERSION_STRIPES = 4096;
+
+    private final TemplateEngine templateEngine;
+    private final LruCache<String, RenderedBody> bodies;
+    private final String instanceTag = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final AtomicLong listVersion = new AtomicLong();
+    private final AtomicLongArray urlVersions = new AtomicLongArray(URL_VERSION_STRIPES);
+    private final long replicaLagNanos;
+    private volatile long lastChangeNanos = System.nanoTime();
+
+    public PageCache(TemplateEngine templateEngine, LruCache<String, RenderedBody> bodies) {
+        this(templateEngine, bodies, Duration.ZERO);
+    }
+
+    public PageCache(TemplateEngine templateEngine, LruCache<String, RenderedBody> bodies, Duration replicaLag) {
+        this.templateEngine = templateEngine;
+        this.bodies = bodies;
+        this.replicaLagNanos = replicaLag.toNanos();
+    }
+
+    public interface ModelLoader {
+        Object load() throws SQLException;
+    }
+
+    /**
+     * Marks the url page and the url list as changed. Called after the change has been committed.
+     */
+    public void bump(long urlId) {
+        urlVersions.incrementAndGet(stripe(urlId));
+        listVersion.incrementAndGet();
+        lastChangeNanos = System.nanoTime();
+    }
+
+    /**
+     * Marks only the url list as changed, e.g. after a bulk import added urls.
+     */
+    public void bumpList() {
+        listVersion.incrementAndGet();
+        lastChangeNanos = System.nanoTime();
+    }
+
+    public long getListVersion() {
+        return listVersion.get();
+    }
+
+    public long getUrlVersion(long urlId) {
+        return urlVersions.get(stripe(urlId));
+    }
+
+    private static int stripe(long urlId) {
+        return (Long.hashCode(urlId) & Integer.MAX_VALUE) % URL_VERSION_STRIPES;
+    }
+
+    /**
+     * Answers with the cached body of {@code key}, or renders {@code template} with the model from
+     * {@code loader} and caches it. The key must already contain the version of the data it shows.
+     */
+    public void render(Context ctx, String key, String template, BasePage flashPage, ModelLoader loader)
+            throws SQLException {
+        var body = bodies.get(key);
+        if (body == null) {
+            boolean cacheable = replicaLagNanos == 0 || ReadRouting.isPinnedToPrimary()
+                    || System.nanoTime() - lastChangeNanos > replicaLagNanos;
+            var output = new StringOutput();
+            templateEngine.render(template, model("page", loader.load()), output);
+            body = new RenderedBody(output.toString(), etagOf(output.toString()));
+            if (cacheable) {
+                bodies.put(key, body);
+            }
+        }
+        if (flashPage.getFlash() == null) {
+            ctx.header("ETag", body.etag);
+            ctx.header("Cache-Control", "no-cache");
+            if (matches(ctx.header("If-None-Match"), body.etag)) {
+                ctx.status(HttpStatus.NOT_MODIFIED);
+                return;
+            }
+        } else {
+            ctx.header("Cache-Control", "no-store");
+        }
+        ctx.render(LAYOUT_TEMPLATE, model("page", flashPage, "body", body.html));
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (var candidate : ifNoneMatch.split(",")) {
+            if (candidate.trim().equals(etag) || candidate.trim().equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String etagOf(String html) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(html.getBytes(StandardCharsets.UTF_8));
+            return "\"" + instanceTag + "-" + HexFormat.of().formatHex(digest, 0, ETAG_BYTES) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static final class RenderedBody {
+        private final String html;
+        private final String etag;
+
+        RenderedBody(String html, String etag) {
+            this.html = html;
+            this.etag = etag;
+        }
+    }
+}
@@ -1,73 +1,92 @@
 package hexlet.code.controllers;
 
-import hexlet.code.model.UrlCheck;
+import hexlet.code.fetch.HostGuard;
+import hexlet.code.model.pages.BasePage;
 import hexlet.code.model.pages.UrlListPage;
 import hexlet.code.model.pages.UrlPage;
 import hexlet.code.model.web.Routes;
+import hexlet.code.repo.Repository;
 import hexlet.code.repo.UrlCheckRepository;
+import hexlet.code.repo.UrlCheckRollupRepository;
 import hexlet.code.repo.UrlRepository;
+import hexlet.code.service.UrlImportService;
+import hexlet.code.service.UrlListSnapshot;
+import hexlet.code.service.UrlSearchService;
 import io.javalin.http.Context;
-import java.net.URI;
-import java.net.URL;
+import java.io.IOException;
 import java.sql.SQLException;
-import java.util.List;
-import java.util.Map;
 
+import hexlet.code.model.ImportResult;
 import hexlet.code.model.Url;
+import hexlet.code.model.UrlRows;
 import io.javalin.http.HttpStatus;
 import io.javalin.http.NotFoundResponse;
 
-import static io.javalin.rendering.template.TemplateUtil.model;
-
 import lombok.RequiredArgsConstructor;
 
 @RequiredArgsConstructor
 public final class UrlsController {
 
+    private static final int ROLLUP_DAYS = 90;
+
     private final UrlRepository urlRepository;
     private final UrlCheckRepository urlCheckRepository;
-
-    public void listUrls(Context ctx) throws SQLException {
-        List<Url> urls = urlRepository.getEntities();
-        Map<Long, UrlCheck> urlChecks = urlCheckRepository.findLatestChecks();
-        var page = new UrlListPage(urls, urlChecks);
+    private final UrlCheckRollupRepository rollupRepository;
+    private final PageCache pageCache;
+    private final UrlImportService urlImportService;
+    private final HostGuard hostGuard;
+    private final UrlSearchService urlSearchService;
+    private final UrlListSnapshot urlList;
+    private final int pageSize;
+
+    private static BasePage flashPage(Context ctx) {
+        var page = new BasePage();
         page.setFlash(ctx.consumeSessionAttribute("flash"));
         page.setFlashType(ctx.consumeSessionAttribute("flash-type"));
-        ctx.render("urls/index.jte", model("page", page));
+        return page;
+    }
+
+    public void listUrls(Context ctx) throws SQLException {
+        var query = ctx.queryParam("q");
+        if (query != null && !query.isBlank()) {
+            searchUrls(ctx, query.strip());
+            return;
+        }
+        Long before = ctx.queryParamAsClass("before", Long.class).getOrDefault(null);
+        Long after = ctx.queryParamAsClass("after", Long.class).getOrDefault(null);
+        var key = "urls?before=" + before + "&after=" + after + "@" + pageCache.getListVersion();
+        pageCache.render(ctx, key, "urls/fragments/index.jte", flashPage(ctx),
+                () -> new UrlListPage(urlList.page(before, after, pageSize), null));
+    }
+
+    private void searchUrls(Context ctx, String query) throws SQLException {
+        int page = Math.max(1, ctx.queryParamAsClass("page", Integer.class).getOrDefault(1));
+        var key = "urls?q=" + query + "&page=" + page + "@" + pageCache.getListVersion();
+        pageCache.render(ctx, key, "urls/fragments/index.jte", flashPage(ctx),
+                () -> {
+                    var results = urlSearchService.search(query, page, pageSize);
+                    return new UrlListPage(UrlRows.of(results.getItems(), null, null), results);
+                });
     }
 
 
 
     public void createUrl(Context ctx) throws SQLException {
-        var inputUrl = ctx.formParam("url");
-        URL parsedUrl;
-        try {
-            var uri = new URI(inputUrl);
-            parsedUrl = uri.toURL();
-        } catch (Exception e) {
+        var normalized = UrlImportService.normalize(ctx.formParam("url"));
+        if (normalized.isEmpty()) {
             ctx.sessionAttribute("flash", "Некорректный URL");
             ctx.sessionAttribute("flash-type", "danger");
             ctx.redirect(Routes.rootPath());
             return;
         }
-
-        String normalizedUrl = String
-                .format(
-                        "%s://%s%s",
-                        parsedUrl.getProtocol(),
-                        parsedUrl.getHost(),
-                        parsedUrl.getPort() == -1 ? "" : ":" + parsedUrl.getPort()
-                )
-                .toLowerCase();
+        String normalizedUrl = normalized.get();
 
         Url url = urlRepository.findByName(normalizedUrl).orElse(null);
 
-        if (url != null) {
+        if (url != null || !saveNew(normalizedUrl)) {
             ctx.sessionAttribute("flash", "Страница уже существует");
             ctx.sessionAttribute("flash-type", "info");
         } else {
-            Url newUrl = new Url(normalizedUrl);
-            urlRepository.save(newUrl);
             ctx.sessionAttribute("flash", "Страница успешно добавлена");
             ctx.sessionAttribute("flash-type", "success");
         }
@@ -75,6 +94,51 @@ public final class UrlsController {
         ctx.redirect("/urls", HttpStatus.forStatus(302));
     }
 
+    /**
+     * Stores the url, or returns false when a concurrent submit or import stored the same name first.
+     */
+    private boolean saveNew(String name) throws SQLException {
+        try {
+            urlRepository.save(new Url(name));
+            return true;
+        } catch (SQLException e) {
+            if (Repository.isUniqueViolation(e)) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the list either as the "file" field of a form upload, answered with a flash message,
+     * or as the raw request body, answered with the counts as JSON.
+     */
+    public void importUrls(Context ctx) throws IOException, SQLException {
+        var file = ctx.isMultipartFormData() ? ctx.uploadedFile("file") : null;
+        if (file == null && ctx.isMultipartFormData()) {
+            ctx.sessionAttribute("flash", "Выберите файл со списком сайтов");
+            ctx.sessionAttribute("flash-type", "danger");
+            ctx.redirect(Routes.rootPath());
+            return;
+        }
+        ImportResult result;
+        try (var input = file != null ? file.content() : ctx.bodyInputStream()) {
+            result = urlImportService.importUrls(input);
+        }
+        if (result.getAdded() > 0) {
+            urlList.loadNew();
+            pageCache.bumpList();
+        }
+        if (file == null) {
+            ctx.json(result);
+            return;
+        }
+        ctx.sessionAttribute("flash", String.format("Добавлено: %d, уже есть: %d, некорректных: %d",
+                result.getAdded(), result.getDuplicate(), result.getInvalid()));
+        ctx.sessionAttribute("flash-type", result.getAdded() > 0 ? "success" : "info");
+        ctx.redirect(Routes.urlsPath(), HttpStatus.forStatus(302));
+    }
+
 
 
     public void showUrl(Context ctx) throws SQLException {
@@ -83,13 +147,17 @@ public final class UrlsController {
         var url = urlRepository.findById(id)
                 .orElseThrow(() -> new NotFoundResponse("Url with id = " + id + " not found"));
 
-        var urlChecks = urlCheckRepository.findByUrlId(id);
-
-        var page = new UrlPage(url, urlChecks);
-        page.setFlash(ctx.consumeSessionAttribute("flash"));
-        page.setFlashType(ctx.consumeSessionAttribute("flash-type"));
-
-        ctx.render("urls/show.jte", model("page", page));
+        Long before = ctx.queryParamAsClass("before", Long.class).getOrDefault(null);
+        Long after = ctx.queryParamAsClass("after", Long.class).getOrDefault(null);
+        // the breaker changes without a write, so its state is part of the key
+        var hostStatus = hostGuard.getStatus(HostGuard.hostOf(url.getName()));
+        var key = "urls/" + id + "?before=" + before + "&after=" + after + "@" + pageCache.getUrlVersion(id)
+                + "#" + hostStatus.getState() + hostStatus.getRetryAt();
+        pageCache.render(ctx, key, "urls/fragments/show.jte", flashPage(ctx), () -> {
+            var urlChecks = urlCheckRepository.findPageByUrlId(id, before, after, pageSize);
+            var rollups = rollupRepository.findByUrlId(id, ROLLUP_DAYS);
+            return new UrlPage(url, urlChecks, rollups, hostStatus);
+        });
     }
 
 
@@ -0,0 +1,32 @@
+package hexlet.code.fetch;
+
+import hexlet.code.cache.LruCache;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Keeps resolved addresses for a while, so rechecks of the same hosts do not wait for the resolver.
+ * Failed lookups are not cached.
+ */
+final class CachingDnsResolver implements DnsResolver {
+
+    private final LruCache<String, InetAddress[]> addresses;
+
+    CachingDnsResolver(LruCache<String, InetAddress[]> addresses) {
+        this.addresses = addresses;
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        var cached = addresses.get(host);
+        if (cached != null) {
+            return cached.clone();
+        }
+        var resolved = SystemDefaultDnsResolver.INSTANCE.resolve(host);
+        addresses.put(host, resolved.clone());
+        return resolved;
+    }
+}
@@ -0,0 +1,21 @@
+package hexlet.code.fetch;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@ToString
+@AllArgsConstructor
+public final class ExtractedPage {
+
+    private final String title;
+
+    private final String h1;
+
+    private final String description;
+
+    private final long bytesRead;
+
+    private final boolean truncated;
+}
@@ -0,0 +1,21 @@
+package hexlet.code.fetch;
+
+import hexlet.code.model.CapturedPage;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of one fetch. {@code page} is null for 304 Not Modified, {@code capturedPage} also when
+ * bodies are not captured.
+ */
+@Getter
+@AllArgsConstructor
+public final class FetchResult {
+    private final int statusCode;
+    private final ExtractedPage page;
+    private final String etag;
+    private final String lastModified;
+    private final int fetchMillis;
+    private final long bytesRead;
+    private final CapturedPage capturedPage;
+}
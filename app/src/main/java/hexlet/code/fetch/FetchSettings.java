@@ -0,0 +1,28 @@
+package hexlet.code.fetch;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+@Builder
+public final class FetchSettings {
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    /**
+     * Upper bound for the whole fetch, redirects and body included.
+     */
+    private final Duration requestTimeout;
+    private final int maxConnections;
+    private final int maxConnectionsPerHost;
+    private final int maxRedirects;
+    private final int dnsCacheSize;
+    private final Duration dnsCacheTtl;
+    private final String userAgent;
+    /**
+     * Keep the compressed body (up to {@code maxBytes}) for the page snapshot store. The whole prefix is then read
+     * instead of stopping once the extracted values are found.
+     */
+    private final boolean captureBody;
+}
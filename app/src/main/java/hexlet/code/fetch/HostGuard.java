@@ -0,0 +1,228 @@
+package hexlet.code.fetch;
+
+import hexlet.code.model.CircuitState;
+import hexlet.code.model.HostStatus;
+
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-host rate limit and circuit breaker for outbound fetches.
+ *
+ * <p>The rate limit is a token bucket kept as a single "theoretical arrival time" (GCRA): a fetch reserves the
+ * next slot with one compare-and-set and sleeps until it. The breaker opens after {@code failureThreshold}
+ * consecutive fetches without a response, fails fast for {@code coolDown}, then lets a single probe through.
+ * Host state lives in a concurrent map and is updated with CAS only, so hosts never contend with each other.
+ */
+public final class HostGuard {
+
+    private static final long CLEANUP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final Breaker CLOSED = new Breaker(CircuitState.CLOSED, 0, 0, 0);
+
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+    private final long intervalNanos;
+    private final long burstToleranceNanos;
+    private final long maxWaitNanos;
+    private final int failureThreshold;
+    private final long coolDownNanos;
+    private final AtomicLong lastCleanup;
+
+    public HostGuard(HostGuardSettings settings) {
+        this(settings, System::nanoTime);
+    }
+
+    HostGuard(HostGuardSettings settings, LongSupplier clock) {
+        this.clock = clock;
+        this.intervalNanos = settings.getRequestsPerMinute() <= 0
+                ? 0
+                : TimeUnit.MINUTES.toNanos(1) / settings.getRequestsPerMinute();
+        this.burstToleranceNanos = intervalNanos * Math.max(0, settings.getBurst() - 1);
+        this.maxWaitNanos = settings.getMaxWait().toNanos();
+        this.failureThreshold = settings.getFailureThreshold();
+        this.coolDownNanos = settings.getCoolDown().toNanos();
+        this.lastCleanup = new AtomicLong(clock.getAsLong());
+    }
+
+    public static String hostOf(String url) {
+        try {
+            var host = URI.create(url).getHost();
+            return host == null ? url : host.toLowerCase();
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    /**
+     * Waits for the host's next rate limit slot. Throws right away when the circuit is open
+     * or the wait would exceed {@code maxWait}.
+     */
+    public void acquire(String host) throws HostUnavailableException, InterruptedIOException {
+        long waitNanos = reserve(host);
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the rate limit of " + host);
+            }
+        }
+    }
+
+    /**
+     * Checks the breaker and reserves a slot. Returns how long the caller has to wait for it.
+     */
+    long reserve(String host) throws HostUnavailableException {
+        long now = clock.getAsLong();
+        cleanUpIfDue(now);
+        var state = stateOf(host, now);
+        passBreaker(host, state, now);
+        if (intervalNanos == 0) {
+            return 0;
+        }
+        while (true) {
+            long tat = state.theoreticalArrival.get();
+            long start = Math.max(tat, now);
+            long wait = start - now - burstToleranceNanos;
+            if (wait > maxWaitNanos) {
+                throw new HostUnavailableException("Rate limit of " + host + " would delay the fetch by "
+                        + TimeUnit.NANOSECONDS.toMillis(wait) + " ms");
+            }
+            if (state.theoreticalArrival.compareAndSet(tat, start + intervalNanos)) {
+                return Math.max(0, wait);
+            }
+        }
+    }
+
+    private void passBreaker(String host, HostState state, long now) throws HostUnavailableException {
+        while (true) {
+            var breaker = state.breaker.get();
+            switch (breaker.state) {
+                case CLOSED:
+                    return;
+                case OPEN:
+                case HALF_OPEN:
+                    // an open circuit lets one probe through after the cool-down; a probe that never reported
+                    // back is replaced by a new one after another cool-down
+                    if (now - breaker.untilNanos < 0) {
+                        throw new HostUnavailableException("Circuit of " + host + " is open after "
+                                + breaker.failures + " failed fetches");
+                    }
+                    var probe = new Breaker(CircuitState.HALF_OPEN, breaker.failures, now + coolDownNanos,
+                            breaker.retryAtMillis);
+                    if (state.breaker.compareAndSet(breaker, probe)) {
+                        return;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown circuit state " + breaker.state);
+            }
+        }
+    }
+
+    public void recordSuccess(String host) {
+        var state = hosts.get(host);
+        if (state != null && state.breaker.get() != CLOSED) {
+            state.breaker.set(CLOSED);
+        }
+    }
+
+    /**
+     * Counts a fetch that got no response. Opens the circuit at the threshold, or again when a probe fails.
+     */
+    public void recordFailure(String host) {
+        long now = clock.getAsLong();
+        var state = stateOf(host, now);
+        while (true) {
+            var breaker = state.breaker.get();
+            if (breaker.state == CircuitState.OPEN) {
+                return;
+            }
+            int failures = breaker.failures + 1;
+            var next = breaker.state == CircuitState.HALF_OPEN || failures >= failureThreshold
+                    ? new Breaker(CircuitState.OPEN, failures, now + coolDownNanos,
+                            System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(coolDownNanos))
+                    : new Breaker(CircuitState.CLOSED, failures, 0, 0);
+            if (state.breaker.compareAndSet(breaker, next)) {
+                return;
+            }
+        }
+    }
+
+    private HostState stateOf(String host, long now) {
+        var state = hosts.computeIfAbsent(host, key -> new HostState(now));
+        state.lastUsedNanos = now;
+        return state;
+    }
+
+    public HostStatus getStatus(String host) {
+        var state = hosts.get(host);
+        var breaker = state == null ? CLOSED : state.breaker.get();
+        var retryAt = breaker.state == CircuitState.OPEN ? Instant.ofEpochMilli(breaker.retryAtMillis) : null;
+        return new HostStatus(host, breaker.state, breaker.failures, retryAt);
+    }
+
+    public int getTrackedHosts() {
+        return hosts.size();
+    }
+
+    public long countOpen() {
+        return hosts.values().stream()
+                .filter(state -> state.breaker.get().state != CircuitState.CLOSED)
+                .count();
+    }
+
+    /**
+     * Forgets hosts that were not used for a cleanup interval, whose bucket is full again and whose circuit
+     * is closed without failures, which keeps the map at the size of the recently active hosts. Each entry is
+     * checked again under the map's lock when it is removed, and a caller that got a host's state refreshes
+     * its last use first, so only a caller stalled for a whole interval could still update a removed state.
+     */
+    private void cleanUpIfDue(long now) {
+        long last = lastCleanup.get();
+        if (now - last < CLEANUP_INTERVAL_NANOS || !lastCleanup.compareAndSet(last, now)) {
+            return;
+        }
+        for (var host : hosts.keySet()) {
+            hosts.computeIfPresent(host, (key, state) -> isIdle(state, now) ? null : state);
+        }
+    }
+
+    private boolean isIdle(HostState state, long now) {
+        return now - state.lastUsedNanos > CLEANUP_INTERVAL_NANOS
+                && state.breaker.get() == CLOSED
+                && now - state.theoreticalArrival.get() > burstToleranceNanos;
+    }
+
+    private static final class HostState {
+        private final AtomicLong theoreticalArrival;
+        private final AtomicReference<Breaker> breaker = new AtomicReference<>(CLOSED);
+        private volatile long lastUsedNanos;
+
+        HostState(long now) {
+            this.theoreticalArrival = new AtomicLong(now);
+            this.lastUsedNanos = now;
+        }
+    }
+
+    private static final class Breaker {
+        private final CircuitState state;
+        private final int failures;
+        private final long untilNanos;
+        private final long retryAtMillis;
+
+        Breaker(CircuitState state, int failures, long untilNanos, long retryAtMillis) {
+            this.state = state;
+            this.failures = failures;
+            this.untilNanos = untilNanos;
+            this.retryAtMillis = retryAtMillis;
+        }
+    }
+}
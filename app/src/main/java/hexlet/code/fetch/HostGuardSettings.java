@@ -0,0 +1,22 @@
+package hexlet.code.fetch;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+@Builder
+public final class HostGuardSettings {
+    /**
+     * Sustained request rate per host; zero or less turns rate limiting off.
+     */
+    private final int requestsPerMinute;
+    private final int burst;
+    /**
+     * Longest a fetch waits for its turn before it is rejected.
+     */
+    private final Duration maxWait;
+    private final int failureThreshold;
+    private final Duration coolDown;
+}
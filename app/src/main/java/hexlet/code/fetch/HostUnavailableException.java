@@ -0,0 +1,13 @@
+package hexlet.code.fetch;
+
+import java.io.IOException;
+
+/**
+ * The fetch was not attempted: the host's circuit is open or its rate limit would make the fetch wait too long.
+ */
+public final class HostUnavailableException extends IOException {
+
+    public HostUnavailableException(String message) {
+        super(message);
+    }
+}
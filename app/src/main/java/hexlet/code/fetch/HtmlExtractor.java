@@ -0,0 +1,461 @@
+package hexlet.code.fetch;
+
+import org.jsoup.parser.Parser;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pulls title, first h1 and meta description out of an html stream without building a DOM.
+ * Reading stops as soon as all three values are found or after {@code maxBytes} bytes.
+ */
+public final class HtmlExtractor {
+
+    private static final int SNIFF_BYTES = 1024;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_CAPTURE_CHARS = 64 * 1024;
+    private static final Pattern CHARSET_PARAM = Pattern.compile("charset\\s*=\\s*[\"']?([\\w.:-]+)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern META_CHARSET = Pattern.compile("<meta[^>]+charset\\s*=\\s*[\"']?([\\w.:-]+)",
+            Pattern.CASE_INSENSITIVE);
+
+    private final int maxBytes;
+
+    public HtmlExtractor(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    public ExtractedPage extract(InputStream body, String contentType) throws IOException {
+        var limited = new LimitedInputStream(body, maxBytes);
+        var buffered = new BufferedInputStream(limited, BUFFER_SIZE);
+        var charset = detectCharset(contentType, buffered);
+        var scan = new Scan(new InputStreamReader(buffered, charset));
+        scan.run();
+        return new ExtractedPage(valueOrEmpty(scan.title), valueOrEmpty(scan.h1), valueOrEmpty(scan.description),
+                limited.count, limited.refused);
+    }
+
+    static Charset detectCharset(String contentType, BufferedInputStream stream) throws IOException {
+        stream.mark(SNIFF_BYTES);
+        var head = stream.readNBytes(SNIFF_BYTES);
+        stream.reset();
+
+        if (head.length >= 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (head.length >= 2 && (head[0] & 0xFF) == 0xFE && (head[1] & 0xFF) == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (head.length >= 2 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        if (contentType != null) {
+            var fromHeader = charsetOf(CHARSET_PARAM.matcher(contentType));
+            if (fromHeader != null) {
+                return fromHeader;
+            }
+        }
+        var fromMeta = charsetOf(META_CHARSET.matcher(new String(head, StandardCharsets.ISO_8859_1)));
+        return fromMeta == null ? StandardCharsets.UTF_8 : fromMeta;
+    }
+
+    private static Charset charsetOf(Matcher matcher) {
+        if (!matcher.find()) {
+            return null;
+        }
+        try {
+            return Charset.forName(matcher.group(1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String valueOrEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    static String normalizeWhitespace(CharSequence text) {
+        var result = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f') {
+                pendingSpace = result.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    result.append(' ');
+                    pendingSpace = false;
+                }
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Stops at {@code limit} bytes. The first read past the limit checks for one more byte, so that {@code refused}
+     * tells a cut-off body from one that is exactly {@code limit} bytes long. That byte is not counted.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+        private boolean refused;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (count >= limit) {
+                return refuse();
+            }
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (count >= limit) {
+                return refuse();
+            }
+            int n = super.read(b, off, (int) Math.min(len, limit - count));
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        private int refuse() throws IOException {
+            if (!refused && super.read() != -1) {
+                refused = true;
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * A forgiving tokenizer that only understands what is needed to find the three values:
+     * tags, attributes, comments and raw text elements.
+     */
+    private static final class Scan {
+        private final Reader reader;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private final StringBuilder name = new StringBuilder();
+        private final StringBuilder text = new StringBuilder();
+        private final StringBuilder value = new StringBuilder();
+        private int pos;
+        private int limit;
+        private String title;
+        private String h1;
+        private String description;
+        private String metaName;
+        private String metaContent;
+
+        Scan(Reader reader) {
+            this.reader = reader;
+        }
+
+        void run() throws IOException {
+            while (!isComplete()) {
+                int c = read();
+                if (c == -1) {
+                    return;
+                }
+                if (c == '<') {
+                    readMarkup();
+                }
+            }
+        }
+
+        private boolean isComplete() {
+            return title != null && h1 != null && description != null;
+        }
+
+        private int read() throws IOException {
+            if (pos == limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[pos++];
+        }
+
+        private void unread() {
+            pos--;
+        }
+
+        private void readMarkup() throws IOException {
+            int c = read();
+            if (c == '!') {
+                skipCommentOrDeclaration();
+            } else if (c == '/' || c == '?') {
+                skipPast('>');
+            } else if (Character.isLetter(c)) {
+                unread();
+                readStartTag();
+            } else if (c != -1) {
+                unread();
+            }
+        }
+
+        private void readStartTag() throws IOException {
+            var tag = readName();
+            boolean isMeta = tag.equals("meta");
+            metaName = null;
+            metaContent = null;
+            readAttributes(isMeta);
+            switch (tag) {
+                case "title":
+                    var rawTitle = readRawText(tag, true);
+                    if (title == null) {
+                        title = normalizeWhitespace(Parser.unescapeEntities(rawTitle, false));
+                    }
+                    break;
+                case "h1":
+                    if (h1 == null) {
+                        h1 = normalizeWhitespace(Parser.unescapeEntities(readElementText(), false));
+                    }
+                    break;
+                case "meta":
+                    if (description == null && "description".equalsIgnoreCase(metaName)) {
+                        description = metaContent == null ? "" : Parser.unescapeEntities(metaContent, true);
+                    }
+                    break;
+                case "script":
+                case "style":
+                case "textarea":
+                    readRawText(tag, false);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private String readName() throws IOException {
+            name.setLength(0);
+            int c;
+            while ((c = read()) != -1) {
+                if (Character.isWhitespace(c) || c == '>' || c == '/' || c == '=') {
+                    unread();
+                    break;
+                }
+                name.append(Character.toLowerCase((char) c));
+            }
+            return name.toString();
+        }
+
+        private void readAttributes(boolean keep) throws IOException {
+            int c;
+            while ((c = read()) != -1) {
+                if (c == '>') {
+                    return;
+                }
+                if (Character.isWhitespace(c) || c == '/') {
+                    continue;
+                }
+                unread();
+                var attribute = readName();
+                if (attribute.isEmpty()) {
+                    read();
+                    continue;
+                }
+                c = skipWhitespace();
+                if (c != '=') {
+                    if (c != -1) {
+                        unread();
+                    }
+                    continue;
+                }
+                var value = readAttributeValue(skipWhitespace());
+                if (keep && attribute.equals("name")) {
+                    metaName = value;
+                } else if (keep && attribute.equals("content")) {
+                    metaContent = value;
+                }
+            }
+        }
+
+        private String readAttributeValue(int first) throws IOException {
+            value.setLength(0);
+            if (first == -1) {
+                return "";
+            }
+            if (first == '"' || first == '\'') {
+                int c = read();
+                while (c != -1 && c != first) {
+                    appendValue(c);
+                    c = read();
+                }
+            } else {
+                int c = first;
+                while (c != -1 && !Character.isWhitespace(c) && c != '>') {
+                    appendValue(c);
+                    c = read();
+                }
+                if (c == '>') {
+                    unread();
+                }
+            }
+            return value.toString();
+        }
+
+        private int skipWhitespace() throws IOException {
+            int c;
+            do {
+                c = read();
+            } while (c != -1 && Character.isWhitespace(c));
+            return c;
+        }
+
+        private String readRawText(String tag, boolean keep) throws IOException {
+            text.setLength(0);
+            int c;
+            while ((c = read()) != -1) {
+                if (c == '<' && isEndTag(tag, keep)) {
+                    break;
+                }
+                if (keep) {
+                    append(c);
+                }
+            }
+            return text.toString();
+        }
+
+        private String readElementText() throws IOException {
+            text.setLength(0);
+            int c;
+            while ((c = read()) != -1) {
+                if (c != '<') {
+                    append(c);
+                    continue;
+                }
+                c = read();
+                if (c == '/') {
+                    var tag = readName();
+                    skipPast('>');
+                    if (tag.equals("h1")) {
+                        break;
+                    }
+                } else if (c == '!') {
+                    skipCommentOrDeclaration();
+                } else if (Character.isLetter(c)) {
+                    unread();
+                    var tag = readName();
+                    readAttributes(false);
+                    if (tag.equals("br")) {
+                        append(' ');
+                    }
+                } else {
+                    append('<');
+                    if (c != -1) {
+                        unread();
+                    }
+                }
+            }
+            return text.toString();
+        }
+
+        /**
+         * Reads past {@code </tag>} after a {@code <}. When it is something else, the characters consumed
+         * are added to the text if {@code keep} is set.
+         */
+        private boolean isEndTag(String tag, boolean keep) throws IOException {
+            int c = read();
+            if (c != '/') {
+                if (c != -1) {
+                    unread();
+                }
+                if (keep) {
+                    append('<');
+                }
+                return false;
+            }
+            int matched = 0;
+            while (matched < tag.length()) {
+                c = read();
+                if (c == -1 || Character.toLowerCase(c) != tag.charAt(matched)) {
+                    if (keep) {
+                        append('<');
+                        append('/');
+                        for (int i = 0; i < matched; i++) {
+                            append(tag.charAt(i));
+                        }
+                    }
+                    if (c != -1) {
+                        unread();
+                    }
+                    return false;
+                }
+                matched++;
+            }
+            skipPast('>');
+            return true;
+        }
+
+        private void skipCommentOrDeclaration() throws IOException {
+            int c = read();
+            if (c != '-') {
+                if (c != -1) {
+                    unread();
+                }
+                skipPast('>');
+                return;
+            }
+            read();
+            int dashes = 0;
+            while ((c = read()) != -1) {
+                if (c == '-') {
+                    dashes++;
+                } else if (c == '>' && dashes >= 2) {
+                    return;
+                } else {
+                    dashes = 0;
+                }
+            }
+        }
+
+        private void skipPast(char end) throws IOException {
+            int c = read();
+            while (c != -1 && c != end) {
+                c = read();
+            }
+        }
+
+        private void append(int c) {
+            if (text.length() < MAX_CAPTURE_CHARS) {
+                text.append((char) c);
+            }
+        }
+
+        private void appendValue(int c) {
+            if (value.length() < MAX_CAPTURE_CHARS) {
+                value.append((char) c);
+            }
+        }
+    }
+}
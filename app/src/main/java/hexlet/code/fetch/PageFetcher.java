@@ -0,0 +1,195 @@
+package hexlet.code.fetch;
+
+import hexlet.code.cache.LruCache;
+import hexlet.code.model.CapturedPage;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Downloads pages for checks over a pooled HTTP client with connect, read and overall timeouts,
+ * a redirect limit, a DNS cache and the per-host limits of {@link HostGuard}. At most {@code maxBytes} of the body
+ * (see {@link HtmlExtractor}) are read: a short remainder is drained so the connection can be reused, a long one
+ * is cut off by aborting the request. With {@code captureBody} the read prefix is also kept, compressed, for
+ * the page snapshot store.
+ */
+public final class PageFetcher implements AutoCloseable {
+
+    private static final int NOT_MODIFIED = 304;
+    private static final int MAX_VALIDATOR_LENGTH = 255;
+    private static final int DRAIN_BYTES = 64 * 1024;
+    private static final long IDLE_CONNECTION_SECONDS = 30;
+
+    private final HtmlExtractor htmlExtractor;
+    private final FetchSettings settings;
+    private final HostGuard hostGuard;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ScheduledExecutorService deadlines;
+
+    public PageFetcher(HtmlExtractor htmlExtractor, FetchSettings settings, HostGuard hostGuard) {
+        this.htmlExtractor = htmlExtractor;
+        this.settings = settings;
+        this.hostGuard = hostGuard;
+        var registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                .build();
+        var dnsCache = new LruCache<String, InetAddress[]>(settings.getDnsCacheSize(), settings.getDnsCacheTtl());
+        this.connectionManager = new PoolingHttpClientConnectionManager(registry, new CachingDnsResolver(dnsCache));
+        connectionManager.setMaxTotal(settings.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerHost());
+        connectionManager.setDefaultSocketConfig(SocketConfig.custom()
+                .setSoTimeout((int) settings.getReadTimeout().toMillis())
+                .build());
+        var requestConfig = RequestConfig.custom()
+                .setConnectTimeout((int) settings.getConnectTimeout().toMillis())
+                .setSocketTimeout((int) settings.getReadTimeout().toMillis())
+                .setConnectionRequestTimeout((int) settings.getRequestTimeout().toMillis())
+                .setRedirectsEnabled(settings.getMaxRedirects() > 0)
+                .setMaxRedirects(settings.getMaxRedirects())
+                .build();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setUserAgent(settings.getUserAgent())
+                .disableCookieManagement()
+                .disableAutomaticRetries()
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_CONNECTION_SECONDS, TimeUnit.SECONDS)
+                .build();
+        this.deadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "fetch-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Fetches {@code url}, sending the validators when given. Throws {@link SocketTimeoutException}
+     * when the whole fetch takes longer than the request timeout, and {@link HostUnavailableException}
+     * without sending anything when the host guard turns the fetch down.
+     */
+    public FetchResult fetch(String url, String etag, String lastModified) throws IOException {
+        var request = new HttpGet(url);
+        if (etag != null) {
+            request.setHeader("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            request.setHeader("If-Modified-Since", lastModified);
+        }
+        var host = HostGuard.hostOf(url);
+        hostGuard.acquire(host);
+        boolean completed = false;
+        long start = System.nanoTime();
+        var timedOut = new AtomicBoolean();
+        var deadline = deadlines.schedule(() -> {
+            timedOut.set(true);
+            request.abort();
+        }, settings.getRequestTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        try (var response = httpClient.execute(request)) {
+            int status = response.getStatusLine().getStatusCode();
+            ExtractedPage page = null;
+            CapturedPage capturedPage = null;
+            long bytesRead = 0;
+            var entity = response.getEntity();
+            if (status != NOT_MODIFIED && entity != null) {
+                var contentType = entity.getContentType() == null ? null : entity.getContentType().getValue();
+                var content = entity.getContent();
+                long extracted;
+                if (settings.isCaptureBody()) {
+                    // one byte past the limit lets the extractor tell a cut-off page from one of exactly the limit
+                    var body = content.readNBytes(htmlExtractor.getMaxBytes() + 1);
+                    page = htmlExtractor.extract(new ByteArrayInputStream(body), contentType);
+                    capturedPage = CapturedPage.compress(contentType, body);
+                    extracted = body.length;
+                } else {
+                    page = htmlExtractor.extract(content, contentType);
+                    extracted = page.getBytesRead();
+                }
+                long drained = drain(content);
+                if (drained > DRAIN_BYTES) {
+                    request.abort();
+                }
+                bytesRead = extracted + drained;
+            }
+            completed = true;
+            return new FetchResult(status, page, header(response, "ETag"), header(response, "Last-Modified"),
+                    (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), bytesRead, capturedPage);
+        } catch (IOException e) {
+            if (timedOut.get()) {
+                throw new SocketTimeoutException("Fetch of " + url + " took longer than "
+                        + settings.getRequestTimeout().toMillis() + " ms");
+            }
+            throw e;
+        } finally {
+            deadline.cancel(false);
+            if (completed) {
+                hostGuard.recordSuccess(host);
+            } else {
+                hostGuard.recordFailure(host);
+            }
+        }
+    }
+
+    /**
+     * Reads what is left of the body, giving up once more than {@link #DRAIN_BYTES} have been skipped.
+     * Returns the number of bytes skipped.
+     */
+    private static long drain(InputStream content) throws IOException {
+        long skipped = 0;
+        var buffer = new byte[8192];
+        while (skipped <= DRAIN_BYTES) {
+            int n = content.read(buffer);
+            if (n == -1) {
+                break;
+            }
+            skipped += n;
+        }
+        return skipped;
+    }
+
+    private static String header(HttpResponse response, String name) {
+        var header = response.getFirstHeader(name);
+        if (header == null || header.getValue().isBlank() || header.getValue().length() > MAX_VALIDATOR_LENGTH) {
+            return null;
+        }
+        return header.getValue();
+    }
+
+    public int getLeasedConnections() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    public int getPendingConnections() {
+        return connectionManager.getTotalStats().getPending();
+    }
+
+    @Override
+    public void close() {
+        deadlines.shutdownNow();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+}
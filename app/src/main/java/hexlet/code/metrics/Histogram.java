@@ -0,0 +1,62 @@
+package hexlet.code.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-bucket latency histogram. Recording only touches preallocated adders, so it does not allocate.
+ */
+public final class Histogram {
+
+    static final double[] DEFAULT_BUCKETS_SECONDS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10,
+    };
+
+    private final double[] boundsSeconds;
+    private final long[] boundsNanos;
+    private final LongAdder[] buckets;
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAdder count = new LongAdder();
+
+    Histogram(double[] boundsSeconds) {
+        this.boundsSeconds = boundsSeconds.clone();
+        this.boundsNanos = new long[boundsSeconds.length];
+        this.buckets = new LongAdder[boundsSeconds.length + 1];
+        for (int i = 0; i < boundsSeconds.length; i++) {
+            boundsNanos[i] = (long) (boundsSeconds[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void observeNanos(long nanos) {
+        int i = 0;
+        while (i < boundsNanos.length && nanos > boundsNanos[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        sumNanos.add(nanos);
+        count.increment();
+    }
+
+    public void observeSince(long startNanos) {
+        observeNanos(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    void write(StringBuilder out, String name, String labels) {
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            var le = i < boundsSeconds.length ? Double.toString(boundsSeconds[i]) : "+Inf";
+            out.append(name).append("_bucket{").append(labels).append(labels.isEmpty() ? "" : ",")
+                    .append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+        }
+        MetricsRegistry.appendSample(out, name + "_sum", labels, sumNanos.sum() / 1e9);
+        MetricsRegistry.appendSample(out, name + "_count", labels, count.sum());
+    }
+}
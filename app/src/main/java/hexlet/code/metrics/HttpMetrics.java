@@ -0,0 +1,34 @@
+package hexlet.code.metrics;
+
+import io.javalin.http.Handler;
+import io.javalin.http.HttpResponseException;
+
+public final class HttpMetrics {
+
+    private HttpMetrics() {
+    }
+
+    /**
+     * Wraps a route handler so that its latency and response status are recorded under the route template.
+     */
+    public static Handler timed(MetricsRegistry registry, String method, String route, Handler handler) {
+        var latency = registry.histogram("http_server_request_duration_seconds",
+                "Time spent in route handlers", "method", method, "route", route);
+        var statuses = registry.statusCounter("http_server_requests_total",
+                "Handled requests by status", "method", method, "route", route);
+        return ctx -> {
+            long start = System.nanoTime();
+            int status = 500;
+            try {
+                handler.handle(ctx);
+                status = ctx.status().getCode();
+            } catch (HttpResponseException e) {
+                status = e.getStatus();
+                throw e;
+            } finally {
+                latency.observeSince(start);
+                statuses.increment(status);
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package hexlet.code.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Holds metrics by name and labels and renders them in the Prometheus text format.
+ * Metrics are looked up once, when a component is wired, and then recorded into directly.
+ */
+public final class MetricsRegistry {
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * The registry of components built on their own, outside an app; every app keeps a registry of its own.
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, "histogram").children
+                .computeIfAbsent(renderLabels(labels), key -> new Histogram(Histogram.DEFAULT_BUCKETS_SECONDS));
+    }
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter").children
+                .computeIfAbsent(renderLabels(labels), key -> new Counter());
+    }
+
+    public StatusCounter statusCounter(String name, String help, String... labels) {
+        return (StatusCounter) family(name, help, "counter").children
+                .computeIfAbsent(renderLabels(labels), key -> new StatusCounter());
+    }
+
+    /**
+     * Registers a value that is read at scrape time. Registering the same name and labels again replaces it.
+     */
+    public void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        family(name, help, "gauge").children.put(renderLabels(labels), supplier);
+    }
+
+    /**
+     * Like {@link #gauge}, for monotonic totals kept elsewhere, e.g. cache hit counters.
+     */
+    public void counterFunction(String name, String help, DoubleSupplier supplier, String... labels) {
+        family(name, help, "counter").children.put(renderLabels(labels), supplier);
+    }
+
+    public String scrape() {
+        var out = new StringBuilder(4096);
+        families.forEach((name, family) -> {
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            family.children.forEach((labels, metric) -> {
+                if (metric instanceof Histogram histogram) {
+                    histogram.write(out, name, labels);
+                } else if (metric instanceof StatusCounter statusCounter) {
+                    statusCounter.write(out, name, labels);
+                } else if (metric instanceof Counter counter) {
+                    appendSample(out, name, labels, counter.get());
+                } else if (metric instanceof DoubleSupplier supplier) {
+                    appendSample(out, name, labels, supplier.getAsDouble());
+                }
+            });
+        });
+        return out.toString();
+    }
+
+    private Family family(String name, String help, String type) {
+        var family = families.computeIfAbsent(name, key -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        }
+        return family;
+    }
+
+    static String renderLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as name, value pairs");
+        }
+        var result = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return result.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    static void appendSample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    static void appendSample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static final class Family {
+        private final String help;
+        private final String type;
+        private final Map<String, Object> children = new ConcurrentSkipListMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
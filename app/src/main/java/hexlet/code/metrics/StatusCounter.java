@@ -0,0 +1,41 @@
+package hexlet.code.metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events by http status code. An adder is created the first time a code is seen;
+ * after that recording does not allocate.
+ */
+public final class StatusCounter {
+
+    private static final int MAX_STATUS = 600;
+
+    private final AtomicReferenceArray<LongAdder> counters = new AtomicReferenceArray<>(MAX_STATUS);
+
+    public void increment(int status) {
+        int index = status > 0 && status < MAX_STATUS ? status : 0;
+        var counter = counters.get(index);
+        if (counter == null) {
+            counters.compareAndSet(index, null, new LongAdder());
+            counter = counters.get(index);
+        }
+        counter.increment();
+    }
+
+    public long get(int status) {
+        var counter = counters.get(status);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    void write(StringBuilder out, String name, String labels) {
+        for (int status = 0; status < MAX_STATUS; status++) {
+            var counter = counters.get(status);
+            if (counter != null) {
+                var statusLabel = "status=\"" + (status == 0 ? "unknown" : String.valueOf(status)) + "\"";
+                MetricsRegistry.appendSample(out, name, labels.isEmpty() ? statusLabel : labels + "," + statusLabel,
+                        counter.sum());
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package hexlet.code.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class BulkCheckProgress {
+
+    private final long total;
+    private final long startedAt;
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile long finishedAt;
+
+    public BulkCheckProgress(long total) {
+        this.total = total;
+        this.startedAt = System.currentTimeMillis();
+    }
+
+    public void recordSuccess() {
+        completed.incrementAndGet();
+    }
+
+    public void recordFailure() {
+        completed.incrementAndGet();
+        failed.incrementAndGet();
+    }
+
+    public void finish() {
+        finishedAt = System.currentTimeMillis();
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public boolean isRunning() {
+        return finishedAt == 0;
+    }
+
+    public long getElapsedMillis() {
+        return (isRunning() ? System.currentTimeMillis() : finishedAt) - startedAt;
+    }
+
+    public double getChecksPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : getCompleted() * 1000.0 / elapsed;
+    }
+}
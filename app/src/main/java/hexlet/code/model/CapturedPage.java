@@ -0,0 +1,40 @@
+package hexlet.code.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Body of a fetched page, deflated on the fetching thread so that storing it later is a plain write.
+ * {@code crc} is the CRC32 of {@code compressed}.
+ */
+@Getter
+@AllArgsConstructor
+public final class CapturedPage {
+    private final String contentType;
+    private final int rawLength;
+    private final int crc;
+    private final byte[] compressed;
+
+    public static CapturedPage compress(String contentType, byte[] body) {
+        var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            var output = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+            var buffer = new byte[8192];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            var compressed = output.toByteArray();
+            var crc = new CRC32();
+            crc.update(compressed);
+            return new CapturedPage(contentType, body.length, (int) crc.getValue(), compressed);
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package hexlet.code.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Title, h1 and description shared by every check that extracted the same values.
+ */
+@Getter
+@AllArgsConstructor
+public final class CheckContent {
+    private final long id;
+    private final String title;
+    private final String h1;
+    private final String description;
+}
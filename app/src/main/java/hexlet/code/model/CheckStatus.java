@@ -0,0 +1,12 @@
+package hexlet.code.model;
+
+public enum CheckStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED;
+
+    public boolean isPending() {
+        return this == QUEUED || this == RUNNING;
+    }
+}
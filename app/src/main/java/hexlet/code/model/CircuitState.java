@@ -0,0 +1,7 @@
+package hexlet.code.model;
+
+public enum CircuitState {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+}
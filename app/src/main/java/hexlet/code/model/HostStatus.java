@@ -0,0 +1,18 @@
+package hexlet.code.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Circuit breaker state of a host as shown on the url page. {@code retryAt} is set while the circuit is open.
+ */
+@Getter
+@AllArgsConstructor
+public final class HostStatus {
+    private final String host;
+    private final CircuitState state;
+    private final int consecutiveFailures;
+    private final Instant retryAt;
+}
@@ -0,0 +1,15 @@
+package hexlet.code.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Line counts of one bulk import. Duplicates are names repeated in the upload or already stored.
+ */
+@Getter
+@AllArgsConstructor
+public final class ImportResult {
+    private final int added;
+    private final int duplicate;
+    private final int invalid;
+}
@@ -0,0 +1,29 @@
+package hexlet.code.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of rows ordered by id descending, with cursors for the neighbouring pages.
+ * A null cursor means there is no page in that direction.
+ */
+@Getter
+@AllArgsConstructor
+public final class KeysetPage<T> {
+
+    private final List<T> items;
+
+    private final Long newerCursor;
+
+    private final Long olderCursor;
+
+    public boolean hasNewer() {
+        return newerCursor != null;
+    }
+
+    public boolean hasOlder() {
+        return olderCursor != null;
+    }
+}
@@ -0,0 +1,16 @@
+package hexlet.code.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * What the search looks at for one url: its name and the search_text of its latest check.
+ */
+@Getter
+@AllArgsConstructor
+public final class SearchDocument {
+    private final long urlId;
+    private final String name;
+    private final Long lastCheckId;
+    private final String text;
+}
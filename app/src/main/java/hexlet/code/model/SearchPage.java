@@ -0,0 +1,32 @@
+package hexlet.code.model;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of search results in rank order. Pages are numbered from 1.
+ */
+@Getter
+@AllArgsConstructor
+public final class SearchPage<T> {
+
+    private final List<T> items;
+
+    private final String query;
+
+    private final int page;
+
+    @Getter(AccessLevel.NONE)
+    private final boolean hasNext;
+
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    public boolean hasPrevious() {
+        return page > 1;
+    }
+}
@@ -18,6 +18,12 @@ public final class Url {
 
     private Timestamp createdAt;
 
+    private Long lastCheckId;
+
+    private Timestamp lastCheckAt;
+
+    private Integer lastStatusCode;
+
     public Url(String name) {
         this.name = name;
     }
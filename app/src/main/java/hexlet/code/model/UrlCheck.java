@@ -5,6 +5,9 @@ import lombok.Setter;
 import lombok.ToString;
 
 import java.sql.Timestamp;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Getter
 @Setter
@@ -22,12 +25,43 @@ public final class UrlCheck {
 
     private String description;
 
+    private Long contentId;
+
     private Timestamp createdAt;
 
+    private CheckStatus status = CheckStatus.DONE;
+
+    private String error;
+
+    private String etag;
+
+    private String lastModified;
+
+    private boolean notModified;
+
+    private Integer fetchMillis;
+
+    private Long fetchBytes;
+
+    /**
+     * Body of the fetched page when the snapshot store is on, until the store took it. Not a column.
+     */
+    @ToString.Exclude
+    private CapturedPage capturedPage;
+
     public UrlCheck(int statusCode, String title, String h1, String description) {
         this.statusCode = statusCode;
         this.title = title;
         this.h1 = h1;
         this.description = description;
     }
+
+    /**
+     * Title, h1 and description joined by spaces, as stored in urls.search_text for the latest check.
+     */
+    public String searchText() {
+        return Stream.of(title, h1, description)
+                .filter(Objects::nonNull)
+                .collect(Collectors.joining(" "));
+    }
 }
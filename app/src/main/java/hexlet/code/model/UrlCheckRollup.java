@@ -0,0 +1,53 @@
+package hexlet.code.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+
+/**
+ * Checks of one url on one day that are older than the retention period, folded into counters.
+ * {@code failedCount} also counts responses outside of 2xx-5xx.
+ */
+@Getter
+@Setter
+@ToString
+public final class UrlCheckRollup {
+
+    private long urlId;
+
+    private LocalDate checkDate;
+
+    private int checkCount;
+
+    private int status2xx;
+
+    private int status3xx;
+
+    private int status4xx;
+
+    private int status5xx;
+
+    private int failedCount;
+
+    private Timestamp firstCheckAt;
+
+    private Integer firstStatusCode;
+
+    private Long firstContentId;
+
+    private Timestamp lastCheckAt;
+
+    private Integer lastStatusCode;
+
+    private Long lastContentId;
+
+    private String lastTitle;
+
+    public UrlCheckRollup(long urlId, LocalDate checkDate) {
+        this.urlId = urlId;
+        this.checkDate = checkDate;
+    }
+}
@@ -0,0 +1,95 @@
+package hexlet.code.model;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Rows of the url list as columns: id, name, and the time and status code of the latest check.
+ * Rows are read by index; a url that was never checked has no time and no status code.
+ * Cursors are those of {@link KeysetPage}, null when the rows are not paged by id.
+ */
+public final class UrlRows {
+
+    private final long[] ids;
+    private final String[] names;
+    private final long[] lastCheckMillis;
+    private final int[] statusCodes;
+    @Getter
+    private final Long newerCursor;
+    @Getter
+    private final Long olderCursor;
+
+    /**
+     * Takes the arrays as they are; {@code lastCheckMillis} holds -1 for urls without a check.
+     */
+    public UrlRows(long[] ids, String[] names, long[] lastCheckMillis, int[] statusCodes, Long newerCursor,
+                   Long olderCursor) {
+        this.ids = ids;
+        this.names = names;
+        this.lastCheckMillis = lastCheckMillis;
+        this.statusCodes = statusCodes;
+        this.newerCursor = newerCursor;
+        this.olderCursor = olderCursor;
+    }
+
+    public static UrlRows of(List<Url> urls, Long newerCursor, Long olderCursor) {
+        int size = urls.size();
+        var ids = new long[size];
+        var names = new String[size];
+        var lastCheckMillis = new long[size];
+        var statusCodes = new int[size];
+        for (int i = 0; i < size; i++) {
+            var url = urls.get(i);
+            ids[i] = url.getId();
+            names[i] = url.getName();
+            lastCheckMillis[i] = url.getLastCheckAt() == null ? -1 : url.getLastCheckAt().getTime();
+            statusCodes[i] = url.getLastStatusCode() == null ? 0 : url.getLastStatusCode();
+        }
+        return new UrlRows(ids, names, lastCheckMillis, statusCodes, newerCursor, olderCursor);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    public long getId(int row) {
+        return ids[row];
+    }
+
+    public String getName(int row) {
+        return names[row];
+    }
+
+    public boolean hasCheck(int row) {
+        return lastCheckMillis[row] >= 0;
+    }
+
+    /**
+     * Time of the latest check in the default time zone, as {@link java.sql.Timestamp#toLocalDateTime()} gives it.
+     */
+    public LocalDateTime getLastCheckAt(int row) {
+        return hasCheck(row)
+                ? LocalDateTime.ofInstant(Instant.ofEpochMilli(lastCheckMillis[row]), ZoneId.systemDefault())
+                : null;
+    }
+
+    public int getLastStatusCode(int row) {
+        return statusCodes[row];
+    }
+
+    public boolean hasNewer() {
+        return newerCursor != null;
+    }
+
+    public boolean hasOlder() {
+        return olderCursor != null;
+    }
+}
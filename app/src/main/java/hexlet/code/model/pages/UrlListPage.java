@@ -1,16 +1,15 @@
 package hexlet.code.model.pages;
 
+import hexlet.code.model.SearchPage;
 import hexlet.code.model.Url;
-import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlRows;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
-import java.util.List;
-import java.util.Map;
-
 @AllArgsConstructor
 @Getter
 public class UrlListPage extends BasePage {
-    private List<Url> urls;
-    private Map<Long, UrlCheck> latestChecks;
+    private UrlRows rows;
+    // set when the rows are the results of a search query
+    private SearchPage<Url> search;
 }
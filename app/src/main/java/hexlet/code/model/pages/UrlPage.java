@@ -1,7 +1,10 @@
 package hexlet.code.model.pages;
 
+import hexlet.code.model.HostStatus;
+import hexlet.code.model.KeysetPage;
 import hexlet.code.model.Url;
 import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlCheckRollup;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
@@ -11,6 +14,8 @@ import java.util.List;
 @Getter
 public class UrlPage extends BasePage {
     private Url url;
-    private List<UrlCheck> checks;
+    private KeysetPage<UrlCheck> checks;
+    private List<UrlCheckRollup> rollups;
+    private HostStatus hostStatus;
 
 }
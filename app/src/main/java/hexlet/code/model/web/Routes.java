@@ -1,14 +1,22 @@
 package hexlet.code.model.web;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
 public class Routes {
 
     private static final String URLS_PATH = "/urls";
     private static final String CHECKS_PATH = "/checks";
+    private static final String API_PATH = "/api";
 
     public static String rootPath() {
         return "/";
     }
 
+    public static String metricsPath() {
+        return "/metrics";
+    }
+
     public static String urlPath(Long id) {
         return urlPath(String.valueOf(id));
     }
@@ -21,6 +29,18 @@ public class Routes {
         return URLS_PATH;
     }
 
+    public static String urlsSearchPath(String query, int page) {
+        return URLS_PATH + "?q=" + URLEncoder.encode(query, StandardCharsets.UTF_8) + "&page=" + page;
+    }
+
+    public static String urlsImportPath() {
+        return URLS_PATH + "/import";
+    }
+
+    public static String urlsChecksPath() {
+        return URLS_PATH + CHECKS_PATH;
+    }
+
     public static String urlChecksPath(Long id) {
         return urlChecksPath(String.valueOf(id));
     }
@@ -29,4 +49,28 @@ public class Routes {
         return URLS_PATH + "/" + id + CHECKS_PATH;
     }
 
+    public static String urlsEventsPath() {
+        return URLS_PATH + "/events";
+    }
+
+    public static String urlEventsPath(Long id) {
+        return urlEventsPath(String.valueOf(id));
+    }
+
+    public static String urlEventsPath(String id) {
+        return URLS_PATH + "/" + id + "/events";
+    }
+
+    public static String apiUrlsPath() {
+        return API_PATH + URLS_PATH;
+    }
+
+    public static String apiUrlChecksPath(Long id) {
+        return apiUrlChecksPath(String.valueOf(id));
+    }
+
+    public static String apiUrlChecksPath(String id) {
+        return API_PATH + urlChecksPath(id);
+    }
+
 }
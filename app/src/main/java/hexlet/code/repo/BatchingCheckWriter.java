@@ -0,0 +1,165 @@
+package hexlet.code.repo;
+
+import hexlet.code.model.UrlCheck;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Group commit for check inserts: results submitted from many threads are written by one flusher thread
+ * as JDBC batches, one transaction per batch. A batch is flushed when it is full or when its oldest
+ * check has waited {@code maxDelayMillis}.
+ */
+@Slf4j
+public final class BatchingCheckWriter implements AutoCloseable {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final UrlCheckRepository urlCheckRepository;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PendingCheck> queue;
+    private final Thread flusher;
+    /**
+     * Submitters hold the read lock while they check {@link #closed} and queue, so once close() has taken
+     * the write lock nothing can be queued behind the final flush.
+     */
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    public BatchingCheckWriter(UrlCheckRepository urlCheckRepository, int maxBatchSize, long maxDelayMillis,
+                               int queueCapacity) {
+        this.urlCheckRepository = urlCheckRepository;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.flusher = new Thread(this::runFlusher, "check-writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues the check for insertion. Blocks while the queue is full. The future completes with the same
+     * check, its id and created_at filled in, once its batch has been committed.
+     */
+    public CompletableFuture<UrlCheck> submit(UrlCheck check) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Check writer is closed"));
+            }
+            var pending = new PendingCheck(check);
+            queue.put(pending);
+            return pending.future;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting checks and writes everything that is still queued.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        var rest = new ArrayList<PendingCheck>();
+        queue.drainTo(rest);
+        for (int from = 0; from < rest.size(); from += maxBatchSize) {
+            flush(rest.subList(from, Math.min(rest.size(), from + maxBatchSize)));
+        }
+    }
+
+    private void runFlusher() {
+        var batch = new ArrayList<PendingCheck>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    var next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                flush(batch);
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingCheck> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        var checks = batch.stream().map(pending -> pending.check).toList();
+        boolean committed = false;
+        try {
+            // save listeners run after the commit and never throw, so a failure here means nothing was stored
+            urlCheckRepository.saveBatch(checks);
+            committed = true;
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Batch of {} checks failed, saving them one by one", batch.size(), e);
+        }
+        if (committed) {
+            batch.forEach(pending -> pending.future.complete(pending.check));
+            return;
+        }
+        for (var pending : batch) {
+            try {
+                urlCheckRepository.save(pending.check);
+                pending.future.complete(pending.check);
+            } catch (SQLException | RuntimeException e) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class PendingCheck {
+        private final UrlCheck check;
+        private final CompletableFuture<UrlCheck> future = new CompletableFuture<>();
+
+        PendingCheck(UrlCheck check) {
+            this.check = check;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package hexlet.code.repo;
+
+/**
+ * Per-thread switch that sends reads to the primary instead of the read replica. The web layer pins
+ * requests that write, and requests of a session that wrote recently, so a user always sees their own
+ * changes even while the replica lags behind.
+ */
+public final class ReadRouting {
+
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+    private ReadRouting() {
+    }
+
+    public static void pinToPrimary() {
+        PINNED.set(Boolean.TRUE);
+    }
+
+    public static void clear() {
+        PINNED.remove();
+    }
+
+    public static boolean isPinnedToPrimary() {
+        return PINNED.get() != null;
+    }
+}
@@ -1,11 +1,149 @@
 package hexlet.code.repo;
 
-import lombok.RequiredArgsConstructor;
+import hexlet.code.metrics.Histogram;
+import hexlet.code.metrics.MetricsRegistry;
+import hexlet.code.model.KeysetPage;
+import lombok.extern.slf4j.Slf4j;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 
-@RequiredArgsConstructor
+/**
+ * Base of the JDBC repositories. Writes and point lookups go to {@code dataSource}, the primary.
+ * List and scan queries go to {@link #readSource()}, which is the read replica when one is configured
+ * and the request is not pinned to the primary by {@link ReadRouting}.
+ */
+@Slf4j
 public class Repository {
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final String UNIQUE_VIOLATION = "23505";
+
     protected final DataSource dataSource;
+    private final DataSource readDataSource;
+    private final MetricsRegistry metrics;
+
+    public Repository(DataSource dataSource) {
+        this(dataSource, dataSource);
+    }
+
+    public Repository(DataSource dataSource, DataSource readDataSource) {
+        this(dataSource, readDataSource, MetricsRegistry.getDefault());
+    }
+
+    public Repository(DataSource dataSource, DataSource readDataSource, MetricsRegistry metrics) {
+        this.dataSource = dataSource;
+        this.readDataSource = readDataSource;
+        this.metrics = metrics;
+    }
+
+    protected final DataSource readSource() {
+        return ReadRouting.isPinnedToPrimary() ? dataSource : readDataSource;
+    }
+
+    /**
+     * Whether the write was refused by a unique index, e.g. because a concurrent request stored the same row.
+     */
+    public static boolean isUniqueViolation(SQLException e) {
+        return UNIQUE_VIOLATION.equals(e.getSQLState());
+    }
+
+    /**
+     * The latency histogram of a repository method. Subclasses keep them in fields, which are initialized
+     * after this constructor has set the registry.
+     */
+    protected final Histogram queryTimer(String repository, String method) {
+        return metrics.histogram("db_query_duration_seconds",
+                "Repository method latency, including connection checkout", "repository", repository,
+                "method", method);
+    }
+
+    /**
+     * Runs the save listeners of a committed write. A failing listener is logged and does not stop the others:
+     * the row is stored either way, so the caller must not see the write as failed.
+     */
+    protected static <T> void notifyListeners(List<Consumer<T>> listeners, T saved) {
+        for (var listener : listeners) {
+            try {
+                listener.accept(saved);
+            } catch (RuntimeException e) {
+                log.error("Save listener failed for {}", saved, e);
+            }
+        }
+    }
+
+    protected interface SqlWork<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    protected interface ParameterSetter {
+        void set(PreparedStatement statement) throws SQLException;
+    }
+
+    protected interface RowMapper<T> {
+        T map(ResultSet resultSet) throws SQLException;
+    }
+
+    /**
+     * Reads the query through a forward-only cursor and hands the rows to {@code consumer} one at a time.
+     * PostgreSQL only honours the fetch size inside a transaction, hence autocommit is turned off.
+     */
+    protected final <T> void streamQuery(String sql, ParameterSetter parameters, RowMapper<T> mapper,
+                                         Consumer<T> consumer) throws SQLException {
+        try (var conn = readSource().getConnection()) {
+            conn.setAutoCommit(false);
+            try (var statement = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(STREAM_FETCH_SIZE);
+                parameters.set(statement);
+                var resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    consumer.accept(mapper.map(resultSet));
+                }
+            } finally {
+                conn.rollback();
+            }
+        }
+    }
+
+    protected final <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        try (var conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                var result = work.run(conn);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
 
+    /**
+     * Turns up to {@code size + 1} rows fetched after a keyset cursor into a page ordered by id descending.
+     * Rows fetched for the "newer" direction come in ascending order and are reversed here.
+     */
+    protected static <T> KeysetPage<T> toKeysetPage(List<T> rows, int size, boolean newerDirection,
+                                                    boolean hasCursor, ToLongFunction<T> idOf) {
+        boolean hasMore = rows.size() > size;
+        var items = hasMore ? rows.subList(0, size) : rows;
+        if (newerDirection) {
+            Collections.reverse(items);
+        }
+        if (items.isEmpty()) {
+            return new KeysetPage<>(items, null, null);
+        }
+        long firstId = idOf.applyAsLong(items.get(0));
+        long lastId = idOf.applyAsLong(items.get(items.size() - 1));
+        boolean hasNewer = newerDirection ? hasMore : hasCursor;
+        boolean hasOlder = newerDirection || hasMore;
+        return new KeysetPage<>(items, hasNewer ? firstId : null, hasOlder ? lastId : null);
+    }
 }
@@ -1,72 +1,645 @@
 package hexlet.code.repo;
 
+import hexlet.code.cache.LruCache;
+import hexlet.code.metrics.Histogram;
+import hexlet.code.metrics.MetricsRegistry;
+import hexlet.code.model.CheckContent;
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.KeysetPage;
 import hexlet.code.model.UrlCheck;
 
 import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 public final class UrlCheckRepository extends Repository {
+
+    private final Histogram saveTimer = queryTimer("urlCheck", "save");
+    private final Histogram saveBatchTimer = queryTimer("urlCheck", "saveBatch");
+    private final Histogram updateTimer = queryTimer("urlCheck", "update");
+    private final Histogram updateContentsTimer = queryTimer("urlCheck", "updateContents");
+    private final Histogram updateStatusTimer = queryTimer("urlCheck", "updateStatus");
+    private final Histogram findByIdTimer = queryTimer("urlCheck", "findById");
+    private final Histogram findByUrlIdTimer = queryTimer("urlCheck", "findByUrlId");
+    private final Histogram findPageByUrlIdTimer = queryTimer("urlCheck", "findPageByUrlId");
+    private final Histogram streamByUrlIdTimer = queryTimer("urlCheck", "streamByUrlId");
+    private final Histogram findLatestChecksTimer = queryTimer("urlCheck", "findLatestChecks");
+
+    private static final String INSERT_SQL = "INSERT INTO url_checks (url_id, status_code, content_id, created_at,"
+            + " status, error, etag, last_modified, not_modified, fetch_millis, fetch_bytes)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int CONTENT_BATCH_SIZE = 500;
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+
+    private final List<Consumer<UrlCheck>> saveListeners = new CopyOnWriteArrayList<>();
+    private final LruCache<Long, CheckContent> contentsById;
+    private final LruCache<String, Long> contentIdsByFingerprint;
+
     public UrlCheckRepository(DataSource dataSource) {
-        super(dataSource);
+        this(dataSource, LruCache.disabled(), LruCache.disabled());
+    }
+
+    public UrlCheckRepository(DataSource dataSource, LruCache<Long, CheckContent> contentsById,
+                              LruCache<String, Long> contentIdsByFingerprint) {
+        this(dataSource, dataSource, contentsById, contentIdsByFingerprint);
+    }
+
+    public UrlCheckRepository(DataSource dataSource, DataSource readDataSource,
+                              LruCache<Long, CheckContent> contentsById,
+                              LruCache<String, Long> contentIdsByFingerprint) {
+        this(dataSource, readDataSource, contentsById, contentIdsByFingerprint, MetricsRegistry.getDefault());
+    }
+
+    public UrlCheckRepository(DataSource dataSource, DataSource readDataSource,
+                              LruCache<Long, CheckContent> contentsById,
+                              LruCache<String, Long> contentIdsByFingerprint, MetricsRegistry metrics) {
+        super(dataSource, readDataSource, metrics);
+        this.contentsById = contentsById;
+        this.contentIdsByFingerprint = contentIdsByFingerprint;
+    }
+
+    /**
+     * Registers a callback that runs after a check has been inserted or updated and committed.
+     */
+    public void addSaveListener(Consumer<UrlCheck> listener) {
+        saveListeners.add(listener);
     }
 
     public void save(UrlCheck check) throws SQLException {
-        var sql = "INSERT INTO url_checks (url_id, status_code, h1, title, description, created_at)"
-                + "VALUES (?, ?, ?, ?, ?, ?)";
-        var datetime = new Timestamp(System.currentTimeMillis());
-        try (var conn = dataSource.getConnection();
-             var preparedStatement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            preparedStatement.setLong(1, check.getUrlId());
-            preparedStatement.setInt(2, check.getStatusCode());
+        long start = System.nanoTime();
+        try {
+            assignContent(check);
+            var datetime = new Timestamp(System.currentTimeMillis());
+            inTransaction(conn -> {
+                try (var preparedStatement = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                    bindInsert(preparedStatement, check, datetime);
+                    preparedStatement.executeUpdate();
+                    var generatedKeys = preparedStatement.getGeneratedKeys();
+                    if (generatedKeys.next()) {
+                        check.setId(generatedKeys.getLong(1));
+                        check.setCreatedAt(datetime);
+                    } else {
+                        throw new SQLException("DB have not returned an id after saving an entity");
+                    }
+                }
+                updateLatestChecks(conn, List.of(check));
+                return check;
+            });
+        } finally {
+            saveTimer.observeSince(start);
+        }
+        notifyListeners(saveListeners, check);
+    }
+
+    /**
+     * Inserts all checks as one JDBC batch in a single transaction. Either every check gets its id or none does.
+     */
+    public void saveBatch(List<UrlCheck> checks) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            for (var check : checks) {
+                assignContent(check);
+            }
+            var datetime = new Timestamp(System.currentTimeMillis());
+            inTransaction(conn -> {
+                try (var preparedStatement = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                    for (var check : checks) {
+                        bindInsert(preparedStatement, check, datetime);
+                        preparedStatement.addBatch();
+                    }
+                    preparedStatement.executeBatch();
+                    var generatedKeys = preparedStatement.getGeneratedKeys();
+                    for (var check : checks) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("DB have not returned ids for the whole batch");
+                        }
+                        check.setId(generatedKeys.getLong(1));
+                        check.setCreatedAt(datetime);
+                    }
+                }
+                updateLatestChecks(conn, checks);
+                return checks;
+            });
+        } finally {
+            saveBatchTimer.observeSince(start);
+        }
+        checks.forEach(check -> notifyListeners(saveListeners, check));
+    }
+
+    public void update(UrlCheck check) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            assignContent(check);
+            // created_at stays the time the check was stored, which the export and the retention filter by
+            var sql = "UPDATE url_checks SET status_code = ?, content_id = ?, status = ?, error = ?,"
+                    + " etag = ?, last_modified = ?, not_modified = ?, fetch_millis = ?, fetch_bytes = ? WHERE id = ?";
+            inTransaction(conn -> {
+                try (var preparedStatement = conn.prepareStatement(sql)) {
+                    preparedStatement.setInt(1, check.getStatusCode());
+                    preparedStatement.setObject(2, check.getContentId(), Types.BIGINT);
+                    preparedStatement.setString(3, check.getStatus().name());
+                    preparedStatement.setString(4, check.getError());
+                    setValidators(preparedStatement, 5, check);
+                    setFetchStats(preparedStatement, 8, check);
+                    preparedStatement.setLong(10, check.getId());
+                    if (preparedStatement.executeUpdate() == 0) {
+                        throw new SQLException("Check with id = " + check.getId() + " not found");
+                    }
+                }
+                updateLatestChecks(conn, List.of(check));
+                return check;
+            });
+        } finally {
+            updateTimer.observeSince(start);
+        }
+        notifyListeners(saveListeners, check);
+    }
+
+    /**
+     * Replaces title, h1 and description of stored checks, e.g. with values extracted again from page snapshots,
+     * and keeps everything else. Urls whose latest check changed get the new search text. Returns the checks that
+     * changed, as stored; the save listeners see them as well.
+     */
+    public List<UrlCheck> updateContents(List<UrlCheck> checks) throws SQLException {
+        long start = System.nanoTime();
+        List<UrlCheck> changed;
+        try {
+            for (var check : checks) {
+                assignContent(check);
+            }
+            var updated = inTransaction(conn -> {
+                var rows = new ArrayList<UrlCheck>();
+                var sql = "UPDATE url_checks SET content_id = ? WHERE id = ? AND content_id IS DISTINCT FROM ?";
+                try (var preparedStatement = conn.prepareStatement(sql)) {
+                    for (var check : checks) {
+                        preparedStatement.setObject(1, check.getContentId(), Types.BIGINT);
+                        preparedStatement.setLong(2, check.getId());
+                        preparedStatement.setObject(3, check.getContentId(), Types.BIGINT);
+                        preparedStatement.addBatch();
+                    }
+                    var counts = preparedStatement.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] > 0) {
+                            rows.add(checks.get(i));
+                        }
+                    }
+                }
+                var searchSql = "UPDATE urls SET search_text = ? WHERE id = ? AND last_check_id = ?";
+                try (var preparedStatement = conn.prepareStatement(searchSql)) {
+                    for (var check : rows) {
+                        preparedStatement.setString(1, check.searchText());
+                        preparedStatement.setLong(2, check.getUrlId());
+                        preparedStatement.setLong(3, check.getId());
+                        preparedStatement.addBatch();
+                    }
+                    preparedStatement.executeBatch();
+                }
+                return rows;
+            });
+            changed = findByIds(updated.stream().map(UrlCheck::getId).toList());
+        } finally {
+            updateContentsTimer.observeSince(start);
+        }
+        changed.forEach(check -> notifyListeners(saveListeners, check));
+        return changed;
+    }
+
+    private List<UrlCheck> findByIds(List<Long> ids) throws SQLException {
+        var checks = new ArrayList<UrlCheck>(ids.size());
+        try (var conn = dataSource.getConnection()) {
+            for (int from = 0; from < ids.size(); from += CONTENT_BATCH_SIZE) {
+                var chunk = ids.subList(from, Math.min(ids.size(), from + CONTENT_BATCH_SIZE));
+                var sql = "SELECT * FROM url_checks WHERE id IN ("
+                        + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ") ORDER BY id";
+                try (var preparedStatement = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        preparedStatement.setLong(i + 1, chunk.get(i));
+                    }
+                    var resultSet = preparedStatement.executeQuery();
+                    while (resultSet.next()) {
+                        checks.add(fillCheckEntity(resultSet));
+                    }
+                }
+            }
+        }
+        resolveContents(checks);
+        return checks;
+    }
+
+    private static void bindInsert(PreparedStatement statement, UrlCheck check, Timestamp datetime)
+            throws SQLException {
+        statement.setLong(1, check.getUrlId());
+        statement.setInt(2, check.getStatusCode());
+        statement.setObject(3, check.getContentId(), Types.BIGINT);
+        statement.setTimestamp(4, datetime);
+        statement.setString(5, check.getStatus().name());
+        statement.setString(6, check.getError());
+        setValidators(statement, 7, check);
+        setFetchStats(statement, 10, check);
+    }
+
+    private static void setValidators(PreparedStatement statement, int from, UrlCheck check) throws SQLException {
+        statement.setString(from, check.getEtag());
+        statement.setString(from + 1, check.getLastModified());
+        statement.setBoolean(from + 2, check.isNotModified());
+    }
+
+    private static void setFetchStats(PreparedStatement statement, int from, UrlCheck check) throws SQLException {
+        statement.setObject(from, check.getFetchMillis(), Types.INTEGER);
+        statement.setObject(from + 1, check.getFetchBytes(), Types.BIGINT);
+    }
+
+    /**
+     * Points the check at the stored copy of its title, h1 and description, storing them first if no check
+     * had the same values before. Runs outside of the caller's transaction: a content row that ends up unused
+     * is harmless, and a lost race on the unique fingerprint is resolved by reading the winner's row.
+     */
+    private void assignContent(UrlCheck check) throws SQLException {
+        if (check.getTitle() == null && check.getH1() == null && check.getDescription() == null) {
+            check.setContentId(null);
+            return;
+        }
+        var fingerprint = fingerprint(check.getTitle(), check.getH1(), check.getDescription());
+        var contentId = contentIdsByFingerprint.get(fingerprint);
+        if (contentId == null) {
+            try (var conn = dataSource.getConnection()) {
+                contentId = findOrInsertContent(conn, fingerprint, check);
+            }
+            contentIdsByFingerprint.put(fingerprint, contentId);
+        }
+        check.setContentId(contentId);
+    }
+
+    private static Long findOrInsertContent(Connection conn, String fingerprint, UrlCheck check) throws SQLException {
+        var contentId = findContentId(conn, fingerprint);
+        if (contentId != null) {
+            return contentId;
+        }
+        var sql = "INSERT INTO check_contents (fingerprint, title, h1, description) VALUES (?, ?, ?, ?)";
+        try (var preparedStatement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            preparedStatement.setString(1, fingerprint);
+            preparedStatement.setString(2, check.getTitle());
             preparedStatement.setString(3, check.getH1());
-            preparedStatement.setString(4, check.getTitle());
-            preparedStatement.setString(5, check.getDescription());
-            preparedStatement.setTimestamp(6, datetime);
+            preparedStatement.setString(4, check.getDescription());
             preparedStatement.executeUpdate();
             var generatedKeys = preparedStatement.getGeneratedKeys();
             if (generatedKeys.next()) {
-                check.setId(generatedKeys.getLong(1));
-                check.setCreatedAt(datetime);
+                return generatedKeys.getLong(1);
+            }
+        } catch (SQLException e) {
+            if (!isUniqueViolation(e)) {
+                throw e;
+            }
+        }
+        contentId = findContentId(conn, fingerprint);
+        if (contentId == null) {
+            throw new SQLException("Could not store the content of a check");
+        }
+        return contentId;
+    }
+
+    private static Long findContentId(Connection conn, String fingerprint) throws SQLException {
+        var sql = "SELECT id FROM check_contents WHERE fingerprint = ?";
+        try (var preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, fingerprint);
+            var resultSet = preparedStatement.executeQuery();
+            return resultSet.next() ? resultSet.getLong(1) : null;
+        }
+    }
+
+    /**
+     * SHA-256 of the three values, each prefixed with its length so that a null, an empty string
+     * and values shifted from one field to another never collide.
+     */
+    static String fingerprint(String title, String h1, String description) {
+        var digest = newSha256();
+        for (var value : new String[] {title, h1, description}) {
+            if (value == null) {
+                digest.update("-1:".getBytes(StandardCharsets.UTF_8));
             } else {
-                throw new SQLException("DB have not returned an id after saving an entity");
+                var bytes = value.getBytes(StandardCharsets.UTF_8);
+                digest.update((bytes.length + ":").getBytes(StandardCharsets.UTF_8));
+                digest.update(bytes);
             }
         }
+        return HexFormat.of().formatHex(digest.digest());
     }
 
-    public List<UrlCheck> findByUrlId(long urlId) throws SQLException {
-        var sql = "SELECT * FROM url_checks WHERE url_id = ? ORDER BY id DESC";
-        try (var conn = dataSource.getConnection();
-             var stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, urlId);
-            var resultSet = stmt.executeQuery();
-            var result = new ArrayList<UrlCheck>();
-            while (resultSet.next()) {
-                result.add(fillCheckEntity(resultSet));
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Fills title, h1 and description of the checks from check_contents, reading only the contents
+     * that are not in the cache.
+     */
+    private void resolveContents(List<UrlCheck> checks) throws SQLException {
+        var missing = new HashMap<Long, List<UrlCheck>>();
+        for (var check : checks) {
+            if (check.getContentId() == null) {
+                continue;
+            }
+            var content = contentsById.get(check.getContentId());
+            if (content == null) {
+                missing.computeIfAbsent(check.getContentId(), id -> new ArrayList<>()).add(check);
+            } else {
+                applyContent(check, content);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        var ids = new ArrayList<>(missing.keySet());
+        try (var conn = dataSource.getConnection()) {
+            for (int from = 0; from < ids.size(); from += CONTENT_BATCH_SIZE) {
+                var chunk = ids.subList(from, Math.min(ids.size(), from + CONTENT_BATCH_SIZE));
+                var sql = "SELECT id, title, h1, description FROM check_contents WHERE id IN ("
+                        + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+                try (var preparedStatement = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        preparedStatement.setLong(i + 1, chunk.get(i));
+                    }
+                    var resultSet = preparedStatement.executeQuery();
+                    while (resultSet.next()) {
+                        var content = new CheckContent(resultSet.getLong("id"), resultSet.getString("title"),
+                                resultSet.getString("h1"), resultSet.getString("description"));
+                        contentsById.put(content.getId(), content);
+                        missing.get(content.getId()).forEach(check -> applyContent(check, content));
+                    }
+                }
             }
-            return result;
         }
     }
 
-    public Map<Long, UrlCheck> findLatestChecks() throws SQLException {
-        var sql = "SELECT DISTINCT ON (url_id) * from url_checks order by url_id DESC, id DESC";
+    private static void applyContent(UrlCheck check, CheckContent content) {
+        check.setTitle(content.getTitle());
+        check.setH1(content.getH1());
+        check.setDescription(content.getDescription());
+    }
+
+    /**
+     * Moves title, h1 and description of checks stored before check_contents existed into it,
+     * a batch at a time. Returns the number of converted checks.
+     */
+    public int migrateContents() throws SQLException {
+        var selectSql = "SELECT id, title, h1, description FROM url_checks WHERE content_id IS NULL"
+                + " AND (title IS NOT NULL OR h1 IS NOT NULL OR description IS NOT NULL) ORDER BY id LIMIT ?";
+        var updateSql = "UPDATE url_checks SET content_id = ?, title = NULL, h1 = NULL, description = NULL"
+                + " WHERE id = ?";
+        int migrated = 0;
+        while (true) {
+            var batch = new ArrayList<UrlCheck>();
+            try (var conn = dataSource.getConnection();
+                 var preparedStatement = conn.prepareStatement(selectSql)) {
+                preparedStatement.setInt(1, MIGRATION_BATCH_SIZE);
+                var resultSet = preparedStatement.executeQuery();
+                while (resultSet.next()) {
+                    var check = new UrlCheck(0, resultSet.getString("title"), resultSet.getString("h1"),
+                            resultSet.getString("description"));
+                    check.setId(resultSet.getLong("id"));
+                    batch.add(check);
+                }
+            }
+            if (batch.isEmpty()) {
+                return migrated;
+            }
+            for (var check : batch) {
+                assignContent(check);
+            }
+            inTransaction(conn -> {
+                try (var preparedStatement = conn.prepareStatement(updateSql)) {
+                    for (var check : batch) {
+                        preparedStatement.setLong(1, check.getContentId());
+                        preparedStatement.setLong(2, check.getId());
+                        preparedStatement.addBatch();
+                    }
+                    preparedStatement.executeBatch();
+                }
+                return batch;
+            });
+            migrated += batch.size();
+        }
+    }
+
+    /**
+     * Keeps the denormalized latest check columns of urls, search_text included, in step with url_checks.
+     * Checks may finish out of order, so only a check with a bigger id replaces the stored one.
+     * Rows are updated in url id order so concurrent batches lock them in the same order.
+     */
+    private void updateLatestChecks(Connection conn, List<UrlCheck> checks) throws SQLException {
+        var done = checks.stream()
+                .filter(check -> check.getStatus() == CheckStatus.DONE)
+                .sorted(Comparator.comparingLong(UrlCheck::getUrlId))
+                .toList();
+        if (done.isEmpty()) {
+            return;
+        }
+        var sql = "UPDATE urls SET last_check_id = ?, last_check_at = ?, last_status_code = ?, search_text = ?"
+                + " WHERE id = ? AND (last_check_id IS NULL OR last_check_id < ?)";
+        try (var preparedStatement = conn.prepareStatement(sql)) {
+            for (var check : done) {
+                preparedStatement.setLong(1, check.getId());
+                preparedStatement.setTimestamp(2, check.getCreatedAt());
+                preparedStatement.setInt(3, check.getStatusCode());
+                preparedStatement.setString(4, check.searchText());
+                preparedStatement.setLong(5, check.getUrlId());
+                preparedStatement.setLong(6, check.getId());
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+        }
+    }
+
+    public int backfillLatestChecks() throws SQLException {
+        var linkSql = "UPDATE urls SET last_check_id ="
+                + " (SELECT MAX(c.id) FROM url_checks c WHERE c.url_id = urls.id AND c.status = 'DONE')"
+                + " WHERE last_check_id IS NULL"
+                + " AND EXISTS (SELECT 1 FROM url_checks c WHERE c.url_id = urls.id AND c.status = 'DONE')";
+        var copySql = "UPDATE urls SET"
+                + " last_check_at = (SELECT c.created_at FROM url_checks c WHERE c.id = urls.last_check_id),"
+                + " last_status_code = (SELECT c.status_code FROM url_checks c WHERE c.id = urls.last_check_id)"
+                + " WHERE last_check_id IS NOT NULL AND last_check_at IS NULL";
+        var searchTextSql = "UPDATE urls SET search_text = COALESCE((SELECT CONCAT_WS(' ',"
+                + " COALESCE(p.title, c.title), COALESCE(p.h1, c.h1), COALESCE(p.description, c.description))"
+                + " FROM url_checks c LEFT JOIN check_contents p ON p.id = c.content_id"
+                + " WHERE c.id = urls.last_check_id), '')"
+                + " WHERE last_check_id IS NOT NULL AND search_text IS NULL";
+        return inTransaction(conn -> {
+            try (var statement = conn.createStatement()) {
+                int linked = statement.executeUpdate(linkSql);
+                statement.executeUpdate(copySql);
+                statement.executeUpdate(searchTextSql);
+                return linked;
+            }
+        });
+    }
+
+    /**
+     * Marks every check still QUEUED or RUNNING as FAILED with {@code error}. Meant for startup, when the checks
+     * of an earlier run that was stopped or crashed will never finish. Returns the number of checks marked.
+     */
+    public int failUnfinished(String error) throws SQLException {
+        var sql = "UPDATE url_checks SET status = ?, error = ? WHERE status IN (?, ?)";
         try (var conn = dataSource.getConnection();
-             var stmt = conn.prepareStatement(sql)) {
-            var resultSet = stmt.executeQuery();
-            var result = new HashMap<Long, UrlCheck>();
-            while (resultSet.next()) {
+             var preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, CheckStatus.FAILED.name());
+            preparedStatement.setString(2, error);
+            preparedStatement.setString(3, CheckStatus.QUEUED.name());
+            preparedStatement.setString(4, CheckStatus.RUNNING.name());
+            return preparedStatement.executeUpdate();
+        }
+    }
+
+    /**
+     * Moves the check to {@code status} without touching its results.
+     */
+    public void updateStatus(UrlCheck check, CheckStatus status, String error) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var sql = "UPDATE url_checks SET status = ?, error = ? WHERE id = ?";
+            try (var conn = dataSource.getConnection();
+                 var preparedStatement = conn.prepareStatement(sql)) {
+                preparedStatement.setString(1, status.name());
+                preparedStatement.setString(2, error);
+                preparedStatement.setLong(3, check.getId());
+                preparedStatement.executeUpdate();
+            }
+            check.setStatus(status);
+            check.setError(error);
+        } finally {
+            updateStatusTimer.observeSince(start);
+        }
+        notifyListeners(saveListeners, check);
+    }
+
+    public Optional<UrlCheck> findById(long id) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var sql = "SELECT * FROM url_checks WHERE id = ?";
+            try (var conn = dataSource.getConnection();
+                 var stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, id);
+                var resultSet = stmt.executeQuery();
+                if (!resultSet.next()) {
+                    return Optional.empty();
+                }
                 var check = fillCheckEntity(resultSet);
-                var urlId = resultSet.getLong("url_id");
-                check.setUrlId(urlId);
-                result.put(urlId, check);
+                resolveContents(List.of(check));
+                return Optional.of(check);
+            }
+        } finally {
+            findByIdTimer.observeSince(start);
+        }
+    }
+
+    public List<UrlCheck> findByUrlId(long urlId) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var sql = "SELECT * FROM url_checks WHERE url_id = ? ORDER BY id DESC";
+            try (var conn = readSource().getConnection();
+                 var stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, urlId);
+                var resultSet = stmt.executeQuery();
+                var result = new ArrayList<UrlCheck>();
+                while (resultSet.next()) {
+                    result.add(fillCheckEntity(resultSet));
+                }
+                resolveContents(result);
+                return result;
+            }
+        } finally {
+            findByUrlIdTimer.observeSince(start);
+        }
+    }
+
+    public KeysetPage<UrlCheck> findPageByUrlId(long urlId, Long before, Long after, int size) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            boolean newer = after != null;
+            var sql = newer
+                    ? "SELECT * FROM url_checks WHERE url_id = ? AND id > ? ORDER BY id LIMIT ?"
+                    : "SELECT * FROM url_checks WHERE url_id = ? AND id < ? ORDER BY id DESC LIMIT ?";
+            try (var conn = readSource().getConnection();
+                 var stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, urlId);
+                stmt.setLong(2, newer ? after : before == null ? Long.MAX_VALUE : before);
+                stmt.setInt(3, size + 1);
+                var resultSet = stmt.executeQuery();
+                var rows = new ArrayList<UrlCheck>();
+                while (resultSet.next()) {
+                    rows.add(fillCheckEntity(resultSet));
+                }
+                resolveContents(rows);
+                return toKeysetPage(rows, size, newer, newer || before != null, UrlCheck::getId);
+            }
+        } finally {
+            findPageByUrlIdTimer.observeSince(start);
+        }
+    }
+
+    /**
+     * Hands the checks of the url created at or after {@code since} to {@code consumer} in id order without
+     * collecting them. Contents are joined in the query rather than resolved through the cache.
+     */
+    public void streamByUrlId(long urlId, Timestamp since, Consumer<UrlCheck> consumer) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var sql = "SELECT c.id, c.url_id, c.status_code, COALESCE(p.title, c.title) AS title,"
+                    + " COALESCE(p.h1, c.h1) AS h1, COALESCE(p.description, c.description) AS description,"
+                    + " c.created_at, c.status, c.error, c.etag, c.last_modified, c.not_modified, c.content_id,"
+                    + " c.fetch_millis, c.fetch_bytes"
+                    + " FROM url_checks c LEFT JOIN check_contents p ON p.id = c.content_id"
+                    + " WHERE c.url_id = ? AND c.created_at >= ? ORDER BY c.id";
+            streamQuery(sql, stmt -> {
+                stmt.setLong(1, urlId);
+                stmt.setTimestamp(2, since);
+            }, this::fillCheckEntity, consumer);
+        } finally {
+            streamByUrlIdTimer.observeSince(start);
+        }
+    }
+
+    public Map<Long, UrlCheck> findLatestChecks() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var sql = "SELECT c.* FROM urls u JOIN url_checks c ON c.id = u.last_check_id";
+            try (var conn = readSource().getConnection();
+                 var stmt = conn.prepareStatement(sql)) {
+                var resultSet = stmt.executeQuery();
+                var result = new HashMap<Long, UrlCheck>();
+                while (resultSet.next()) {
+                    var check = fillCheckEntity(resultSet);
+                    var urlId = resultSet.getLong("url_id");
+                    check.setUrlId(urlId);
+                    result.put(urlId, check);
+                }
+                resolveContents(new ArrayList<>(result.values()));
+                return result;
             }
-            return result;
+        } finally {
+            findLatestChecksTimer.observeSince(start);
         }
     }
 
@@ -79,7 +652,16 @@ public final class UrlCheckRepository extends Repository {
         var createdAt = resultSet.getTimestamp("created_at");
         var check = new UrlCheck(statusCode, title, h1, description);
         check.setId(id);
+        check.setUrlId(resultSet.getLong("url_id"));
         check.setCreatedAt(createdAt);
+        check.setStatus(CheckStatus.valueOf(resultSet.getString("status")));
+        check.setError(resultSet.getString("error"));
+        check.setEtag(resultSet.getString("etag"));
+        check.setLastModified(resultSet.getString("last_modified"));
+        check.setNotModified(resultSet.getBoolean("not_modified"));
+        check.setContentId(resultSet.getObject("content_id", Long.class));
+        check.setFetchMillis(resultSet.getObject("fetch_millis", Integer.class));
+        check.setFetchBytes(resultSet.getObject("fetch_bytes", Long.class));
         return check;
     }
 }
@@ -0,0 +1,236 @@
+package hexlet.code.repo;
+
+import hexlet.code.metrics.Histogram;
+import hexlet.code.metrics.MetricsRegistry;
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.UrlCheckRollup;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
+public final class UrlCheckRollupRepository extends Repository {
+
+    private final Histogram rollUpTimer = queryTimer("urlCheckRollup", "rollUpBatch");
+    private final Histogram findByUrlIdTimer = queryTimer("urlCheckRollup", "findByUrlId");
+
+    private final List<LongConsumer> rollupListeners = new CopyOnWriteArrayList<>();
+
+    public UrlCheckRollupRepository(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    public UrlCheckRollupRepository(DataSource dataSource, DataSource readDataSource) {
+        super(dataSource, readDataSource);
+    }
+
+    public UrlCheckRollupRepository(DataSource dataSource, DataSource readDataSource, MetricsRegistry metrics) {
+        super(dataSource, readDataSource, metrics);
+    }
+
+    /**
+     * Registers a callback that gets the id of every url whose checks were rolled up, after the commit.
+     */
+    public void addRollupListener(LongConsumer listener) {
+        rollupListeners.add(listener);
+    }
+
+    /**
+     * Folds up to {@code limit} checks created before {@code cutoff} into daily rollups and deletes them,
+     * all in one short transaction. The latest check of every url is never removed.
+     * Returns the number of deleted checks; a result below {@code limit} means nothing is left to roll up.
+     */
+    public int rollUpBatch(Timestamp cutoff, int limit) throws SQLException {
+        long start = System.nanoTime();
+        var urlIds = new HashSet<Long>();
+        int deleted;
+        try {
+            var sql = "SELECT c.id, c.url_id, c.status, c.status_code, c.content_id, c.created_at FROM url_checks c"
+                    + " WHERE c.created_at < ? AND NOT EXISTS (SELECT 1 FROM urls u WHERE u.last_check_id = c.id)"
+                    + " ORDER BY c.id LIMIT ?";
+            deleted = inTransaction(conn -> {
+                var ids = new ArrayList<Long>();
+                var rollups = new HashMap<String, UrlCheckRollup>();
+                try (var preparedStatement = conn.prepareStatement(sql)) {
+                    preparedStatement.setTimestamp(1, cutoff);
+                    preparedStatement.setInt(2, limit);
+                    var resultSet = preparedStatement.executeQuery();
+                    while (resultSet.next()) {
+                        ids.add(resultSet.getLong("id"));
+                        accumulate(rollups, resultSet);
+                    }
+                }
+                if (ids.isEmpty()) {
+                    return 0;
+                }
+                var sorted = rollups.values().stream()
+                        .sorted(Comparator.comparingLong(UrlCheckRollup::getUrlId)
+                                .thenComparing(UrlCheckRollup::getCheckDate))
+                        .toList();
+                for (var rollup : sorted) {
+                    store(conn, rollup);
+                    urlIds.add(rollup.getUrlId());
+                }
+                try (var preparedStatement = conn.prepareStatement("DELETE FROM url_checks WHERE id = ?")) {
+                    for (var id : ids) {
+                        preparedStatement.setLong(1, id);
+                        preparedStatement.addBatch();
+                    }
+                    preparedStatement.executeBatch();
+                }
+                return ids.size();
+            });
+        } finally {
+            rollUpTimer.observeSince(start);
+        }
+        urlIds.forEach(urlId -> rollupListeners.forEach(listener -> listener.accept(urlId)));
+        return deleted;
+    }
+
+    public List<UrlCheckRollup> findByUrlId(long urlId, int limit) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var sql = "SELECT r.*, c.title AS last_title FROM url_check_rollups r"
+                    + " LEFT JOIN check_contents c ON c.id = r.last_content_id"
+                    + " WHERE r.url_id = ? ORDER BY r.check_date DESC LIMIT ?";
+            try (var conn = readSource().getConnection();
+                 var stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, urlId);
+                stmt.setInt(2, limit);
+                var resultSet = stmt.executeQuery();
+                var result = new ArrayList<UrlCheckRollup>();
+                while (resultSet.next()) {
+                    var rollup = fillRollupEntity(resultSet);
+                    rollup.setLastTitle(resultSet.getString("last_title"));
+                    result.add(rollup);
+                }
+                return result;
+            }
+        } finally {
+            findByUrlIdTimer.observeSince(start);
+        }
+    }
+
+    private static void accumulate(Map<String, UrlCheckRollup> rollups, ResultSet resultSet) throws SQLException {
+        long urlId = resultSet.getLong("url_id");
+        var createdAt = resultSet.getTimestamp("created_at");
+        var day = createdAt.toLocalDateTime().toLocalDate();
+        var rollup = rollups.computeIfAbsent(urlId + "/" + day, key -> new UrlCheckRollup(urlId, day));
+
+        var check = new UrlCheckRollup(urlId, day);
+        check.setCheckCount(1);
+        boolean done = CheckStatus.valueOf(resultSet.getString("status")) == CheckStatus.DONE;
+        int statusCode = resultSet.getInt("status_code");
+        switch (done ? statusCode / 100 : 0) {
+            case 2 -> check.setStatus2xx(1);
+            case 3 -> check.setStatus3xx(1);
+            case 4 -> check.setStatus4xx(1);
+            case 5 -> check.setStatus5xx(1);
+            default -> check.setFailedCount(1);
+        }
+        Integer code = done ? statusCode : null;
+        Long contentId = resultSet.getObject("content_id", Long.class);
+        check.setFirstCheckAt(createdAt);
+        check.setFirstStatusCode(code);
+        check.setFirstContentId(contentId);
+        check.setLastCheckAt(createdAt);
+        check.setLastStatusCode(code);
+        check.setLastContentId(contentId);
+        merge(rollup, check);
+    }
+
+    /**
+     * Adds the counters of {@code other} to {@code target} and keeps the earliest first and the latest last values.
+     */
+    private static void merge(UrlCheckRollup target, UrlCheckRollup other) {
+        target.setCheckCount(target.getCheckCount() + other.getCheckCount());
+        target.setStatus2xx(target.getStatus2xx() + other.getStatus2xx());
+        target.setStatus3xx(target.getStatus3xx() + other.getStatus3xx());
+        target.setStatus4xx(target.getStatus4xx() + other.getStatus4xx());
+        target.setStatus5xx(target.getStatus5xx() + other.getStatus5xx());
+        target.setFailedCount(target.getFailedCount() + other.getFailedCount());
+        if (target.getFirstCheckAt() == null || other.getFirstCheckAt().before(target.getFirstCheckAt())) {
+            target.setFirstCheckAt(other.getFirstCheckAt());
+            target.setFirstStatusCode(other.getFirstStatusCode());
+            target.setFirstContentId(other.getFirstContentId());
+        }
+        if (target.getLastCheckAt() == null || other.getLastCheckAt().after(target.getLastCheckAt())) {
+            target.setLastCheckAt(other.getLastCheckAt());
+            target.setLastStatusCode(other.getLastStatusCode());
+            target.setLastContentId(other.getLastContentId());
+        }
+    }
+
+    private static void store(Connection conn, UrlCheckRollup rollup) throws SQLException {
+        var selectSql = "SELECT * FROM url_check_rollups WHERE url_id = ? AND check_date = ?";
+        try (var preparedStatement = conn.prepareStatement(selectSql)) {
+            preparedStatement.setLong(1, rollup.getUrlId());
+            preparedStatement.setDate(2, Date.valueOf(rollup.getCheckDate()));
+            var resultSet = preparedStatement.executeQuery();
+            if (resultSet.next()) {
+                var stored = fillRollupEntity(resultSet);
+                merge(stored, rollup);
+                write(conn, stored, "UPDATE url_check_rollups SET check_count = ?, status_2xx = ?, status_3xx = ?,"
+                        + " status_4xx = ?, status_5xx = ?, failed_count = ?, first_check_at = ?,"
+                        + " first_status_code = ?, first_content_id = ?, last_check_at = ?, last_status_code = ?,"
+                        + " last_content_id = ? WHERE url_id = ? AND check_date = ?");
+                return;
+            }
+        }
+        write(conn, rollup, "INSERT INTO url_check_rollups (check_count, status_2xx, status_3xx, status_4xx,"
+                + " status_5xx, failed_count, first_check_at, first_status_code, first_content_id, last_check_at,"
+                + " last_status_code, last_content_id, url_id, check_date)"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+    }
+
+    private static void write(Connection conn, UrlCheckRollup rollup, String sql) throws SQLException {
+        try (var preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setInt(1, rollup.getCheckCount());
+            preparedStatement.setInt(2, rollup.getStatus2xx());
+            preparedStatement.setInt(3, rollup.getStatus3xx());
+            preparedStatement.setInt(4, rollup.getStatus4xx());
+            preparedStatement.setInt(5, rollup.getStatus5xx());
+            preparedStatement.setInt(6, rollup.getFailedCount());
+            preparedStatement.setTimestamp(7, rollup.getFirstCheckAt());
+            preparedStatement.setObject(8, rollup.getFirstStatusCode(), Types.INTEGER);
+            preparedStatement.setObject(9, rollup.getFirstContentId(), Types.BIGINT);
+            preparedStatement.setTimestamp(10, rollup.getLastCheckAt());
+            preparedStatement.setObject(11, rollup.getLastStatusCode(), Types.INTEGER);
+            preparedStatement.setObject(12, rollup.getLastContentId(), Types.BIGINT);
+            preparedStatement.setLong(13, rollup.getUrlId());
+            preparedStatement.setDate(14, Date.valueOf(rollup.getCheckDate()));
+            preparedStatement.executeUpdate();
+        }
+    }
+
+    private static UrlCheckRollup fillRollupEntity(ResultSet resultSet) throws SQLException {
+        LocalDate checkDate = resultSet.getDate("check_date").toLocalDate();
+        var rollup = new UrlCheckRollup(resultSet.getLong("url_id"), checkDate);
+        rollup.setCheckCount(resultSet.getInt("check_count"));
+        rollup.setStatus2xx(resultSet.getInt("status_2xx"));
+        rollup.setStatus3xx(resultSet.getInt("status_3xx"));
+        rollup.setStatus4xx(resultSet.getInt("status_4xx"));
+        rollup.setStatus5xx(resultSet.getInt("status_5xx"));
+        rollup.setFailedCount(resultSet.getInt("failed_count"));
+        rollup.setFirstCheckAt(resultSet.getTimestamp("first_check_at"));
+        rollup.setFirstStatusCode(resultSet.getObject("first_status_code", Integer.class));
+        rollup.setFirstContentId(resultSet.getObject("first_content_id", Long.class));
+        rollup.setLastCheckAt(resultSet.getTimestamp("last_check_at"));
+        rollup.setLastStatusCode(resultSet.getObject("last_status_code", Integer.class));
+        rollup.setLastContentId(resultSet.getObject("last_content_id", Long.class));
+        return rollup;
+    }
+}
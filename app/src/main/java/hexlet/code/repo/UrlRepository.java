@@ -1,5 +1,10 @@
 package hexlet.code.repo;
 
+import hexlet.code.cache.LruCache;
+import hexlet.code.metrics.Histogram;
+import hexlet.code.metrics.MetricsRegistry;
+import hexlet.code.model.KeysetPage;
+import hexlet.code.model.SearchDocument;
 import hexlet.code.model.Url;
 
 import javax.sql.DataSource;
@@ -8,68 +13,381 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 
 public final class UrlRepository extends Repository {
 
+    private final Histogram saveTimer = queryTimer("url", "save");
+    private final Histogram findByIdTimer = queryTimer("url", "findById");
+    private final Histogram findByNameTimer = queryTimer("url", "findByName");
+    private final Histogram getEntitiesTimer = queryTimer("url", "getEntities");
+    private final Histogram findPageTimer = queryTimer("url", "findPage");
+    private final Histogram findAfterIdTimer = queryTimer("url", "findAfterId");
+    private final Histogram findStaleTimer = queryTimer("url", "findStaleAfterId");
+    private final Histogram streamSinceTimer = queryTimer("url", "streamSince");
+    private final Histogram countTimer = queryTimer("url", "count");
+    private final Histogram insertMissingTimer = queryTimer("url", "insertMissing");
+    private final Histogram findByIdsTimer = queryTimer("url", "findByIds");
+    private final Histogram searchTimer = queryTimer("url", "search");
+    private final Histogram streamSearchDocumentsTimer = queryTimer("url", "streamSearchDocuments");
+
+    // one statement for the whole list: its update count is exact, unlike the counts of a rewritten batch
+    private static final String INSERT_MISSING_POSTGRES_SQL = "INSERT INTO urls (name, created_at)"
+            + " SELECT n.name, ? FROM unnest(CAST(? AS VARCHAR[])) AS n(name) ON CONFLICT (name) DO NOTHING";
+    private static final String INSERT_MISSING_SQL = "MERGE INTO urls u"
+            + " USING (SELECT CAST(? AS VARCHAR(255)) AS name, CAST(? AS TIMESTAMP) AS created_at) n"
+            + " ON u.name = n.name WHEN NOT MATCHED THEN INSERT (name, created_at) VALUES (n.name, n.created_at)";
+    // must match the expression of ix_urls_search_trgm for the trigram index to be used
+    private static final String SEARCH_DOCUMENT = "(name || ' ' || COALESCE(search_text, ''))";
+
+    private final LruCache<Long, Url> urlsById;
+    private final LruCache<String, Long> idsByName;
+    private final List<Consumer<Url>> saveListeners = new CopyOnWriteArrayList<>();
+
     public UrlRepository(DataSource dataSource) {
-        super(dataSource);
+        this(dataSource, LruCache.disabled(), LruCache.disabled());
+    }
+
+    public UrlRepository(DataSource dataSource, LruCache<Long, Url> urlsById, LruCache<String, Long> idsByName) {
+        this(dataSource, dataSource, urlsById, idsByName);
+    }
+
+    public UrlRepository(DataSource dataSource, DataSource readDataSource, LruCache<Long, Url> urlsById,
+                         LruCache<String, Long> idsByName) {
+        this(dataSource, readDataSource, urlsById, idsByName, MetricsRegistry.getDefault());
+    }
+
+    public UrlRepository(DataSource dataSource, DataSource readDataSource, LruCache<Long, Url> urlsById,
+                         LruCache<String, Long> idsByName, MetricsRegistry metrics) {
+        super(dataSource, readDataSource, metrics);
+        this.urlsById = urlsById;
+        this.idsByName = idsByName;
+    }
+
+    public void addSaveListener(Consumer<Url> listener) {
+        saveListeners.add(listener);
+    }
+
+    public LruCache<Long, Url> getCache() {
+        return urlsById;
+    }
+
+    /**
+     * Drops the cached entity, e.g. after its latest check columns have changed.
+     */
+    public void evict(long id) {
+        urlsById.invalidate(id);
     }
 
     public void save(Url url) throws SQLException {
-        var sql = "INSERT INTO urls (name, created_at) VALUES (?, ?)";
-        var datetime = new Timestamp(System.currentTimeMillis());
-        try (var conn = dataSource.getConnection();
-             var preparedStatement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            preparedStatement.setString(1, url.getName());
-            preparedStatement.setTimestamp(2, datetime);
-            preparedStatement.executeUpdate();
-            var generatedKeys = preparedStatement.getGeneratedKeys();
-            if (generatedKeys.next()) {
-                url.setId(generatedKeys.getLong(1));
-                url.setCreatedAt(datetime);
-            } else {
-                throw new SQLException("DB have not returned an id after saving an entity");
+        long start = System.nanoTime();
+        try {
+            var sql = "INSERT INTO urls (name, created_at) VALUES (?, ?)";
+            var datetime = new Timestamp(System.currentTimeMillis());
+            try (var conn = dataSource.getConnection();
+                 var preparedStatement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                preparedStatement.setString(1, url.getName());
+                preparedStatement.setTimestamp(2, datetime);
+                preparedStatement.executeUpdate();
+                var generatedKeys = preparedStatement.getGeneratedKeys();
+                if (generatedKeys.next()) {
+                    url.setId(generatedKeys.getLong(1));
+                    url.setCreatedAt(datetime);
+                } else {
+                    throw new SQLException("DB have not returned an id after saving an entity");
+                }
             }
+        } finally {
+            saveTimer.observeSince(start);
         }
+        urlsById.invalidate(url.getId());
+        idsByName.invalidate(url.getName());
+        notifyListeners(saveListeners, url);
     }
 
-    private Optional<Url> find(String key, Object value) throws SQLException {
-        var sql = String.format("SELECT * FROM urls WHERE %s = ?", key);
-        try (var conn = dataSource.getConnection(); var stmt = conn.prepareStatement(sql)) {
-            if (value instanceof Long) {
-                stmt.setLong(1, (Long) value);
-            }
-            if (value instanceof String) {
-                stmt.setString(1, (String) value);
-            }
-            var resultSet = stmt.executeQuery();
-            if (resultSet.next()) {
-                return Optional.of(fillUrlEntity(resultSet));
+    /**
+     * Inserts the names that are not stored yet as one JDBC batch and returns how many rows were added.
+     * Names that already exist are skipped by the unique index on urls.name, so concurrent imports are safe.
+     * Save listeners are not called; the caller decides what to invalidate.
+     */
+    public int insertMissing(List<String> names) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var datetime = new Timestamp(System.currentTimeMillis());
+            return inTransaction(conn -> {
+                if ("PostgreSQL".equals(conn.getMetaData().getDatabaseProductName())) {
+                    try (var stmt = conn.prepareStatement(INSERT_MISSING_POSTGRES_SQL)) {
+                        stmt.setTimestamp(1, datetime);
+                        stmt.setArray(2, conn.createArrayOf("varchar", names.toArray()));
+                        return stmt.executeUpdate();
+                    }
+                }
+                try (var stmt = conn.prepareStatement(INSERT_MISSING_SQL)) {
+                    for (var name : names) {
+                        stmt.setString(1, name);
+                        stmt.setTimestamp(2, datetime);
+                        stmt.addBatch();
+                    }
+                    int inserted = 0;
+                    for (int count : stmt.executeBatch()) {
+                        inserted += count;
+                    }
+                    return inserted;
+                }
+            });
+        } finally {
+            insertMissingTimer.observeSince(start);
+        }
+    }
+
+    private Optional<Url> find(String key, Object value, Histogram timer) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var sql = String.format("SELECT * FROM urls WHERE %s = ?", key);
+            try (var conn = dataSource.getConnection(); var stmt = conn.prepareStatement(sql)) {
+                if (value instanceof Long) {
+                    stmt.setLong(1, (Long) value);
+                }
+                if (value instanceof String) {
+                    stmt.setString(1, (String) value);
+                }
+                var resultSet = stmt.executeQuery();
+                if (resultSet.next()) {
+                    return Optional.of(fillUrlEntity(resultSet));
+                }
+                return Optional.empty();
             }
-            return Optional.empty();
+        } finally {
+            timer.observeSince(start);
         }
     }
 
     public Optional<Url> findByName(String urlName) throws SQLException {
-        return find("name", urlName);
+        var id = idsByName.get(urlName);
+        var cached = id == null ? null : urlsById.get(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        var url = find("name", urlName, findByNameTimer);
+        url.ifPresent(this::cache);
+        return url;
     }
 
     public Optional<Url> findById(Long id) throws SQLException {
-        return find("id", id);
+        var cached = urlsById.get(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        var url = find("id", id, findByIdTimer);
+        url.ifPresent(this::cache);
+        return url;
+    }
+
+    private void cache(Url url) {
+        urlsById.put(url.getId(), url);
+        idsByName.put(url.getName(), url.getId());
     }
 
     public List<Url> getEntities() throws SQLException {
-        var sql = "SELECT * FROM urls ORDER BY id";
-        try (var conn = dataSource.getConnection(); var stmt = conn.prepareStatement(sql)) {
-            var resultSet = stmt.executeQuery();
-            var result = new ArrayList<Url>();
-            while (resultSet.next()) {
-                result.add(fillUrlEntity(resultSet));
+        long start = System.nanoTime();
+        try {
+            var sql = "SELECT * FROM urls ORDER BY id";
+            try (var conn = readSource().getConnection(); var stmt = conn.prepareStatement(sql)) {
+                var resultSet = stmt.executeQuery();
+                var result = new ArrayList<Url>();
+                while (resultSet.next()) {
+                    result.add(fillUrlEntity(resultSet));
+                }
+                return result;
+            }
+        } finally {
+            getEntitiesTimer.observeSince(start);
+        }
+    }
+
+    public KeysetPage<Url> findPage(Long before, Long after, int size) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            boolean newer = after != null;
+            var sql = newer
+                    ? "SELECT * FROM urls WHERE id > ? ORDER BY id LIMIT ?"
+                    : "SELECT * FROM urls WHERE id < ? ORDER BY id DESC LIMIT ?";
+            try (var conn = readSource().getConnection(); var stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, newer ? after : before == null ? Long.MAX_VALUE : before);
+                stmt.setInt(2, size + 1);
+                var resultSet = stmt.executeQuery();
+                var rows = new ArrayList<Url>();
+                while (resultSet.next()) {
+                    rows.add(fillUrlEntity(resultSet));
+                }
+                return toKeysetPage(rows, size, newer, newer || before != null, Url::getId);
+            }
+        } finally {
+            findPageTimer.observeSince(start);
+        }
+    }
+
+    public List<Url> findAfterId(long afterId, int limit) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var sql = "SELECT * FROM urls WHERE id > ? ORDER BY id LIMIT ?";
+            try (var conn = readSource().getConnection(); var stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, afterId);
+                stmt.setInt(2, limit);
+                var resultSet = stmt.executeQuery();
+                var result = new ArrayList<Url>();
+                while (resultSet.next()) {
+                    result.add(fillUrlEntity(resultSet));
+                }
+                return result;
+            }
+        } finally {
+            findAfterIdTimer.observeSince(start);
+        }
+    }
+
+    /**
+     * Urls after {@code afterId} that were never checked or whose latest check is older than {@code checkedBefore}.
+     */
+    public List<Url> findStaleAfterId(long afterId, Timestamp checkedBefore, int limit) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var sql = "SELECT * FROM urls WHERE id > ? AND (last_check_at IS NULL OR last_check_at < ?)"
+                    + " ORDER BY id LIMIT ?";
+            try (var conn = readSource().getConnection(); var stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, afterId);
+                stmt.setTimestamp(2, checkedBefore);
+                stmt.setInt(3, limit);
+                var resultSet = stmt.executeQuery();
+                var result = new ArrayList<Url>();
+                while (resultSet.next()) {
+                    result.add(fillUrlEntity(resultSet));
+                }
+                return result;
+            }
+        } finally {
+            findStaleTimer.observeSince(start);
+        }
+    }
+
+    /**
+     * Hands every url created at or after {@code since} to {@code consumer} in id order without collecting them.
+     */
+    public void streamSince(Timestamp since, Consumer<Url> consumer) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var sql = "SELECT * FROM urls WHERE created_at >= ? ORDER BY id";
+            streamQuery(sql, stmt -> stmt.setTimestamp(1, since), this::fillUrlEntity, consumer);
+        } finally {
+            streamSinceTimer.observeSince(start);
+        }
+    }
+
+    /**
+     * Urls with the given ids in the order of {@code ids}; ids that do not exist are skipped.
+     */
+    public List<Url> findByIds(List<Long> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        long start = System.nanoTime();
+        try {
+            var sql = "SELECT * FROM urls WHERE id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?"))
+                    + ")";
+            try (var conn = readSource().getConnection(); var stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < ids.size(); i++) {
+                    stmt.setLong(i + 1, ids.get(i));
+                }
+                var resultSet = stmt.executeQuery();
+                var found = new HashMap<Long, Url>();
+                while (resultSet.next()) {
+                    var url = fillUrlEntity(resultSet);
+                    found.put(url.getId(), url);
+                }
+                var result = new ArrayList<Url>(found.size());
+                for (var id : ids) {
+                    var url = found.get(id);
+                    if (url != null) {
+                        result.add(url);
+                    }
+                }
+                return result;
+            }
+        } finally {
+            findByIdsTimer.observeSince(start);
+        }
+    }
+
+    /**
+     * PostgreSQL only: urls whose name or latest check contains every term, through the trigram index on
+     * name and search_text. Urls whose name resembles the query rank above those matched by content only.
+     */
+    public List<Url> search(List<String> terms, int limit, int offset) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var sql = "SELECT * FROM urls WHERE "
+                    + String.join(" AND ", Collections.nCopies(terms.size(), SEARCH_DOCUMENT + " ILIKE ?"))
+                    + " ORDER BY word_similarity(?, name) * 2 + word_similarity(?, COALESCE(search_text, '')) DESC,"
+                    + " id DESC LIMIT ? OFFSET ?";
+            var query = String.join(" ", terms);
+            try (var conn = readSource().getConnection(); var stmt = conn.prepareStatement(sql)) {
+                int index = 1;
+                for (var term : terms) {
+                    stmt.setString(index++, "%" + escapeLike(term) + "%");
+                }
+                stmt.setString(index++, query);
+                stmt.setString(index++, query);
+                stmt.setInt(index++, limit);
+                stmt.setInt(index, offset);
+                var resultSet = stmt.executeQuery();
+                var result = new ArrayList<Url>();
+                while (resultSet.next()) {
+                    result.add(fillUrlEntity(resultSet));
+                }
+                return result;
+            }
+        } finally {
+            searchTimer.observeSince(start);
+        }
+    }
+
+    private static String escapeLike(String term) {
+        return term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Hands name and search_text of every url after {@code afterId} to {@code consumer} in id order,
+     * for building a search index outside of the database.
+     */
+    public void streamSearchDocuments(long afterId, Consumer<SearchDocument> consumer) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var sql = "SELECT id, name, last_check_id, search_text FROM urls WHERE id > ? ORDER BY id";
+            streamQuery(sql, stmt -> stmt.setLong(1, afterId), resultSet -> new SearchDocument(
+                    resultSet.getLong("id"), resultSet.getString("name"),
+                    resultSet.getObject("last_check_id", Long.class), resultSet.getString("search_text")),
+                    consumer);
+        } finally {
+            streamSearchDocumentsTimer.observeSince(start);
+        }
+    }
+
+    public long count() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var sql = "SELECT COUNT(*) FROM urls";
+            try (var conn = readSource().getConnection(); var stmt = conn.prepareStatement(sql)) {
+                var resultSet = stmt.executeQuery();
+                return resultSet.next() ? resultSet.getLong(1) : 0;
             }
-            return result;
+        } finally {
+            countTimer.observeSince(start);
         }
     }
 
@@ -80,6 +398,9 @@ public final class UrlRepository extends Repository {
         var url = new Url(name);
         url.setId(id);
         url.setCreatedAt(createdAt);
+        url.setLastCheckId(resultSet.getObject("last_check_id", Long.class));
+        url.setLastCheckAt(resultSet.getTimestamp("last_check_at"));
+        url.setLastStatusCode(resultSet.getObject("last_status_code", Integer.class));
         return url;
     }
 }
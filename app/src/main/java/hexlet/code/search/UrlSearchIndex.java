@@ -0,0 +1,209 @@
+package hexlet.code.search;
+
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.UrlCheck;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * In-process inverted index over url names and the search text of their latest check, for databases without
+ * a trigram index. A query matches the urls that have every query term as the prefix of one of their words;
+ * words of the name weigh more than words of the page, exact words more than prefixes.
+ *
+ * <p>Writers are serialized, readers take no lock: a url's document is immutable and replaced whole,
+ * and postings left behind by a replaced document are filtered out against the current one when scoring.
+ */
+public final class UrlSearchIndex {
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int MAX_TERM_LENGTH = 64;
+    private static final int NAME_WEIGHT = 3;
+    private static final int TEXT_WEIGHT = 1;
+    private static final int EXACT_MATCH_FACTOR = 2;
+
+    private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<String, Set<Long>> postings = new ConcurrentSkipListMap<>();
+    private final AtomicLong loadedUpTo = new AtomicLong();
+
+    /**
+     * Lower-cased words of {@code text} in order of first appearance, without repeats.
+     */
+    public static List<String> terms(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        var terms = new LinkedHashSet<String>();
+        for (var word : SEPARATORS.split(text.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                terms.add(word.length() > MAX_TERM_LENGTH ? word.substring(0, MAX_TERM_LENGTH) : word);
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+
+    /**
+     * Id of the last url read from the database; urls after it still have to be loaded.
+     */
+    public long getLoadedUpTo() {
+        return loadedUpTo.get();
+    }
+
+    public void markLoaded(long urlId) {
+        loadedUpTo.accumulateAndGet(urlId, Math::max);
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    /**
+     * Takes the text of a finished check, unless the url already has a later one.
+     */
+    public void update(UrlCheck check) {
+        if (check.getStatus() == CheckStatus.DONE) {
+            put(check.getUrlId(), null, check.getId(), check.searchText());
+        }
+    }
+
+    /**
+     * Adds or replaces the document of a url. A null {@code name} keeps the known one; the text is only
+     * replaced by the text of the same or a later check, since checks may be reported out of order.
+     */
+    public synchronized void put(long urlId, String name, Long checkId, String text) {
+        var previous = documents.get(urlId);
+        long newCheckId = checkId == null ? -1 : checkId;
+        var documentName = name == null && previous != null ? previous.name : name;
+        var document = previous != null && previous.checkId > newCheckId
+                ? new Document(documentName, previous.checkId, previous.text)
+                : new Document(documentName, newCheckId, text);
+        documents.put(urlId, document);
+        if (previous != null) {
+            for (var term : previous.weights.keySet()) {
+                if (!document.weights.containsKey(term)) {
+                    postings.computeIfPresent(term, (key, ids) -> {
+                        ids.remove(urlId);
+                        return ids.isEmpty() ? null : ids;
+                    });
+                }
+            }
+        }
+        for (var term : document.weights.keySet()) {
+            postings.computeIfAbsent(term, key -> ConcurrentHashMap.newKeySet()).add(urlId);
+        }
+    }
+
+    /**
+     * Ids of the urls matching all {@code terms}, best first, skipping {@code offset} of them.
+     */
+    public List<Long> search(List<String> terms, int limit, int offset) {
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        var hits = new ArrayList<Hit>();
+        for (var urlId : candidates(terms)) {
+            var document = documents.get(urlId);
+            int score = document == null ? 0 : document.score(terms);
+            if (score > 0) {
+                hits.add(new Hit(urlId, score));
+            }
+        }
+        hits.sort(Comparator.comparingInt((Hit hit) -> hit.score).reversed()
+                .thenComparing(Comparator.comparingLong((Hit hit) -> hit.urlId).reversed()));
+        var ids = new ArrayList<Long>(Math.min(limit, hits.size()));
+        for (int i = offset; i < hits.size() && ids.size() < limit; i++) {
+            ids.add(hits.get(i).urlId);
+        }
+        return ids;
+    }
+
+    /**
+     * Urls having a word that starts with the most selective of the terms. Scoring checks the other terms.
+     */
+    private Set<Long> candidates(List<String> terms) {
+        Collection<Set<Long>> best = null;
+        long bestSize = Long.MAX_VALUE;
+        for (var term : terms) {
+            var matching = postings.subMap(term, true, term + Character.MAX_VALUE, true).values();
+            long size = 0;
+            for (var ids : matching) {
+                size += ids.size();
+            }
+            if (size < bestSize) {
+                best = matching;
+                bestSize = size;
+            }
+        }
+        var result = new HashSet<Long>();
+        if (bestSize > 0) {
+            best.forEach(result::addAll);
+        }
+        return result;
+    }
+
+    private static final class Hit {
+        private final long urlId;
+        private final int score;
+
+        Hit(long urlId, int score) {
+            this.urlId = urlId;
+            this.score = score;
+        }
+    }
+
+    private static final class Document {
+        private final String name;
+        private final long checkId;
+        private final String text;
+        private final NavigableMap<String, Integer> weights;
+
+        Document(String name, long checkId, String text) {
+            this.name = name;
+            this.checkId = checkId;
+            this.text = text;
+            var terms = new TreeMap<String, Integer>();
+            terms(text).forEach(term -> terms.put(term, TEXT_WEIGHT));
+            terms(name).forEach(term -> terms.put(term, NAME_WEIGHT));
+            this.weights = Collections.unmodifiableNavigableMap(terms);
+        }
+
+        /**
+         * Sum of the best weight per term, or 0 when some term matches no word.
+         */
+        int score(List<String> queryTerms) {
+            int score = 0;
+            for (var term : queryTerms) {
+                int best = 0;
+                for (var entry : weights.tailMap(term, true).entrySet()) {
+                    if (!entry.getKey().startsWith(term)) {
+                        break;
+                    }
+                    int weight = entry.getKey().length() == term.length()
+                            ? entry.getValue() * EXACT_MATCH_FACTOR
+                            : entry.getValue();
+                    best = Math.max(best, weight);
+                }
+                if (best == 0) {
+                    return 0;
+                }
+                score += best;
+            }
+            return score;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package hexlet.code.service;
+
+import hexlet.code.fetch.HostGuard;
+import hexlet.code.model.BulkCheckProgress;
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repo.BatchingCheckWriter;
+import hexlet.code.repo.UrlRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks every stored url with a global concurrency cap and a per-host cap.
+ * A single dispatcher thread owns the per-host lanes, so a busy host never blocks urls of other hosts.
+ * Urls are read in keyset batches and at most {@link #MAX_QUEUED_URLS} wait in the lanes at a time.
+ */
+@Slf4j
+public final class BulkCheckService {
+
+    private static final int BATCH_SIZE = 500;
+    /**
+     * Urls read ahead and waiting in host lanes. Reading pauses at this many, so a large table or a host
+     * with many urls does not end up in memory at once.
+     */
+    private static final int MAX_QUEUED_URLS = 10_000;
+    private static final int PROGRESS_LOG_STEP = 1000;
+
+    private final UrlRepository urlRepository;
+    private final BatchingCheckWriter checkWriter;
+    private final UrlCheckService urlCheckService;
+    private final int concurrency;
+    private final int perHostConcurrency;
+    private final AtomicReference<BulkCheckProgress> current = new AtomicReference<>();
+
+    public BulkCheckService(UrlRepository urlRepository, BatchingCheckWriter checkWriter,
+                            UrlCheckService urlCheckService, int concurrency, int perHostConcurrency) {
+        this.urlRepository = urlRepository;
+        this.checkWriter = checkWriter;
+        this.urlCheckService = urlCheckService;
+        this.concurrency = concurrency;
+        this.perHostConcurrency = perHostConcurrency;
+    }
+
+    public Optional<BulkCheckProgress> getProgress() {
+        return Optional.ofNullable(current.get());
+    }
+
+    /**
+     * Starts a sweep in the background, or returns the one that is already running.
+     */
+    public BulkCheckProgress checkAll() throws SQLException {
+        var running = current.get();
+        if (running != null && running.isRunning()) {
+            return running;
+        }
+        var progress = new BulkCheckProgress(urlRepository.count());
+        if (!current.compareAndSet(running, progress)) {
+            return current.get();
+        }
+        var dispatcher = new Thread(() -> runSweep(progress), "bulk-check-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        return progress;
+    }
+
+    void runSweep(BulkCheckProgress progress) {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency,
+                UrlCheckService.daemonThreadFactory("bulk-check-"));
+        try {
+            new Sweep(progress, workers).run();
+        } catch (Exception e) {
+            log.error("Bulk check has been aborted", e);
+        } finally {
+            workers.shutdown();
+            progress.finish();
+            log.info("Bulk check finished: {} urls, {} failed, {} ms, {} checks/s",
+                    progress.getCompleted(), progress.getFailed(), progress.getElapsedMillis(),
+                    String.format("%.1f", progress.getChecksPerSecond()));
+        }
+    }
+
+    private void checkOne(Url url, BulkCheckProgress progress) {
+        UrlCheck check;
+        try {
+            check = urlCheckService.performCheck(url);
+        } catch (Exception e) {
+            check = new UrlCheck(0, null, null, null);
+            check.setStatus(CheckStatus.FAILED);
+            check.setError(e.getMessage());
+        }
+        check.setUrlId(url.getId());
+        try {
+            checkWriter.submit(check).join();
+        } catch (CompletionException e) {
+            log.warn("Could not save bulk check of {}", url.getName(), e.getCause());
+            check.setStatus(CheckStatus.FAILED);
+        }
+        if (check.getStatus() == CheckStatus.FAILED) {
+            progress.recordFailure();
+        } else {
+            progress.recordSuccess();
+        }
+        if (progress.getCompleted() % PROGRESS_LOG_STEP == 0) {
+            log.info("Bulk check progress: {}/{}, {} checks/s", progress.getCompleted(), progress.getTotal(),
+                    String.format("%.1f", progress.getChecksPerSecond()));
+        }
+    }
+
+    private static final class HostLane {
+        private final String host;
+        private final ArrayDeque<Url> pending = new ArrayDeque<>();
+        private int running;
+
+        HostLane(String host) {
+            this.host = host;
+        }
+    }
+
+    /**
+     * State of one sweep. Lanes are touched only by the dispatcher thread; workers hand
+     * finished lanes back through the completions queue.
+     */
+    private final class Sweep {
+        private final BulkCheckProgress progress;
+        private final ExecutorService workers;
+        private final Semaphore permits = new Semaphore(concurrency);
+        private final BlockingQueue<HostLane> completions = new LinkedBlockingQueue<>();
+        private final Map<String, HostLane> lanes = new HashMap<>();
+        private int outstanding;
+        private int queued;
+
+        Sweep(BulkCheckProgress progress, ExecutorService workers) {
+            this.progress = progress;
+            this.workers = workers;
+        }
+
+        void run() throws SQLException, InterruptedException {
+            long lastId = 0;
+            while (true) {
+                var batch = urlRepository.findAfterId(lastId, BATCH_SIZE);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (var url : batch) {
+                    while (queued >= MAX_QUEUED_URLS) {
+                        complete(completions.take());
+                    }
+                    var lane = lanes.computeIfAbsent(HostGuard.hostOf(url.getName()), HostLane::new);
+                    lane.pending.add(url);
+                    queued++;
+                    outstanding++;
+                    drainCompletions();
+                    dispatch(lane);
+                }
+                lastId = batch.get(batch.size() - 1).getId();
+            }
+            while (outstanding > 0) {
+                complete(completions.take());
+            }
+        }
+
+        private void drainCompletions() throws InterruptedException {
+            HostLane lane;
+            while ((lane = completions.poll()) != null) {
+                complete(lane);
+            }
+        }
+
+        private void complete(HostLane lane) throws InterruptedException {
+            lane.running--;
+            outstanding--;
+            dispatch(lane);
+            if (lane.running == 0 && lane.pending.isEmpty()) {
+                lanes.remove(lane.host);
+            }
+        }
+
+        private void dispatch(HostLane lane) throws InterruptedException {
+            while (lane.running < perHostConcurrency && !lane.pending.isEmpty()) {
+                permits.acquire();
+                var url = lane.pending.poll();
+                queued--;
+                lane.running++;
+                workers.execute(() -> {
+                    try {
+                        checkOne(url, progress);
+                    } finally {
+                        permits.release();
+                        completions.add(lane);
+                    }
+                });
+            }
+        }
+    }
+}
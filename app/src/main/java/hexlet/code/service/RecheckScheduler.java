@@ -0,0 +1,155 @@
+package hexlet.code.service;
+
+import hexlet.code.metrics.Counter;
+import hexlet.code.metrics.MetricsRegistry;
+import hexlet.code.model.Url;
+import hexlet.code.repo.UrlRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-checks urls whose latest check is older than {@code maxAge}. Every url gets a stable jitter of up to
+ * {@code jitter} on top of that age, so urls added together do not come due together. A tick enqueues at
+ * most {@code maxPerTick} urls and stops early while the check backlog or the check write latency is over
+ * its limit; the next tick resumes from the same url.
+ */
+@Slf4j
+public final class RecheckScheduler {
+
+    private final Counter enqueuedUrls;
+    private final Counter pausedTicks;
+    private final UrlRepository urlRepository;
+    private final UrlCheckService urlCheckService;
+    private final Clock clock;
+    private final RecheckSettings settings;
+    private final Map<Long, Instant> enqueuedAt = new HashMap<>();
+    private long cursor;
+    private ScheduledExecutorService executor;
+
+    public RecheckScheduler(UrlRepository urlRepository, UrlCheckService urlCheckService, Clock clock,
+                            RecheckSettings settings) {
+        this(urlRepository, urlCheckService, clock, settings, MetricsRegistry.getDefault());
+    }
+
+    public RecheckScheduler(UrlRepository urlRepository, UrlCheckService urlCheckService, Clock clock,
+                            RecheckSettings settings, MetricsRegistry metrics) {
+        this.enqueuedUrls = metrics.counter("recheck_enqueued_total", "Urls enqueued by the recheck scheduler");
+        this.pausedTicks = metrics.counter("recheck_paused_total", "Recheck ticks cut short by backpressure");
+        this.urlRepository = urlRepository;
+        this.urlCheckService = urlCheckService;
+        this.clock = clock;
+        this.settings = settings;
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        long tickMillis = settings.getTickInterval().toMillis();
+        executor = Executors.newSingleThreadScheduledExecutor(UrlCheckService.daemonThreadFactory("recheck-"));
+        executor.scheduleWithFixedDelay(this::runTick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Runs one pass over the stale urls and returns how many of them were enqueued.
+     */
+    public synchronized int tick() throws SQLException {
+        var now = clock.instant();
+        var checkedBefore = Timestamp.from(now.minus(settings.getMaxAge()));
+        int enqueued = 0;
+        while (true) {
+            var batch = urlRepository.findStaleAfterId(cursor, checkedBefore, settings.getBatchSize());
+            for (var url : batch) {
+                if (enqueued >= settings.getMaxPerTick()) {
+                    return enqueued;
+                }
+                if (isThrottled()) {
+                    pausedTicks.increment();
+                    log.debug("Recheck paused: {} checks queued, write latency {} ms",
+                            urlCheckService.getQueueSize(), urlCheckService.getWriteLatencyMillis());
+                    return enqueued;
+                }
+                if (isDue(url, now)) {
+                    try {
+                        urlCheckService.enqueue(url);
+                    } catch (RejectedExecutionException e) {
+                        pausedTicks.increment();
+                        return enqueued;
+                    }
+                    enqueuedAt.put(url.getId(), now);
+                    enqueuedUrls.increment();
+                    enqueued++;
+                }
+                cursor = url.getId();
+            }
+            if (batch.size() < settings.getBatchSize()) {
+                cursor = 0;
+                return enqueued;
+            }
+        }
+    }
+
+    private void runTick() {
+        try {
+            int enqueued = tick();
+            if (enqueued > 0) {
+                log.info("Recheck enqueued {} urls", enqueued);
+            }
+        } catch (Exception e) {
+            log.error("Recheck tick failed", e);
+        }
+    }
+
+    private boolean isThrottled() {
+        return urlCheckService.getQueueSize() >= settings.getMaxBacklog()
+                || urlCheckService.getWriteLatencyMillis() > settings.getMaxWriteLatencyMillis();
+    }
+
+    private boolean isDue(Url url, Instant now) {
+        var previous = enqueuedAt.get(url.getId());
+        if (previous != null) {
+            // still queued, or failed: a failed check does not move last_check_at, so retry after maxAge
+            if (previous.plus(settings.getMaxAge()).isAfter(now)) {
+                return false;
+            }
+            enqueuedAt.remove(url.getId());
+        }
+        if (url.getLastCheckAt() == null) {
+            return true;
+        }
+        var dueAt = url.getLastCheckAt().toInstant()
+                .plus(settings.getMaxAge())
+                .plus(jitterOf(url.getId(), settings.getJitter()));
+        return !dueAt.isAfter(now);
+    }
+
+    /**
+     * A stable offset in {@code [0, jitter]} derived from the url id.
+     */
+    static Duration jitterOf(long id, Duration jitter) {
+        long jitterMillis = jitter.toMillis();
+        if (jitterMillis <= 0) {
+            return Duration.ZERO;
+        }
+        long mixed = id * 0x9E3779B97F4A7C15L;
+        return Duration.ofMillis(Math.floorMod(mixed ^ (mixed >>> 32), jitterMillis + 1));
+    }
+}
@@ -0,0 +1,18 @@
+package hexlet.code.service;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+@Builder
+public final class RecheckSettings {
+    private final Duration maxAge;
+    private final Duration jitter;
+    private final Duration tickInterval;
+    private final int batchSize;
+    private final int maxPerTick;
+    private final int maxBacklog;
+    private final long maxWriteLatencyMillis;
+}
@@ -0,0 +1,179 @@
+package hexlet.code.service;
+
+import hexlet.code.fetch.HtmlExtractor;
+import hexlet.code.metrics.Counter;
+import hexlet.code.metrics.MetricsRegistry;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repo.UrlCheckRepository;
+import hexlet.code.snapshot.PageSnapshot;
+import hexlet.code.snapshot.PageSnapshotStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the extractor again over the stored page snapshots, e.g. after a fix in {@link HtmlExtractor},
+ * and stores the title, h1 and description that changed. Snapshots are read in log order and extracted
+ * on {@code threads} workers; results are written in batches of {@code batchSize}.
+ */
+@Slf4j
+public final class ReextractionJob {
+
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private final Counter extracted;
+    private final Counter changedChecks;
+    private final Counter errors;
+    private final PageSnapshotStore snapshotStore;
+    private final HtmlExtractor htmlExtractor;
+    private final UrlCheckRepository urlCheckRepository;
+    private final int threads;
+    private final int batchSize;
+    private final List<UrlCheck> pending = new ArrayList<>();
+    private final AtomicInteger changed = new AtomicInteger();
+    private Thread thread;
+
+    public ReextractionJob(PageSnapshotStore snapshotStore, HtmlExtractor htmlExtractor,
+                           UrlCheckRepository urlCheckRepository, int threads, int batchSize) {
+        this(snapshotStore, htmlExtractor, urlCheckRepository, threads, batchSize, MetricsRegistry.getDefault());
+    }
+
+    public ReextractionJob(PageSnapshotStore snapshotStore, HtmlExtractor htmlExtractor,
+                           UrlCheckRepository urlCheckRepository, int threads, int batchSize,
+                           MetricsRegistry metrics) {
+        this.extracted = metrics.counter("reextraction_snapshots_total", "Page snapshots extracted again");
+        this.changedChecks = metrics.counter("reextraction_changed_checks_total",
+                "Checks whose values changed when extracted again");
+        this.errors = metrics.counter("reextraction_errors_total",
+                "Page snapshots that could not be extracted again or stored");
+        this.snapshotStore = snapshotStore;
+        this.htmlExtractor = htmlExtractor;
+        this.urlCheckRepository = urlCheckRepository;
+        this.threads = threads;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Runs the job once in the background.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = UrlCheckService.daemonThreadFactory("reextraction-").newThread(this::runSafely);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Extracts every stored snapshot again and returns the number of checks whose values changed.
+     */
+    public int run() throws IOException, InterruptedException {
+        changed.set(0);
+        var executor = Executors.newFixedThreadPool(threads, UrlCheckService.daemonThreadFactory("reextract-"));
+        var permits = new Semaphore(threads * IN_FLIGHT_PER_THREAD);
+        try {
+            snapshotStore.forEach(snapshot -> {
+                permits.acquireUninterruptibly();
+                executor.execute(() -> {
+                    try {
+                        extract(snapshot);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            });
+        } finally {
+            shutdown(executor);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("Re-extraction stopped");
+        }
+        flush(takePending(true));
+        return changed.get();
+    }
+
+    private void extract(PageSnapshot snapshot) {
+        try {
+            var page = htmlExtractor.extract(new ByteArrayInputStream(snapshot.body()), snapshot.getContentType());
+            var check = new UrlCheck(0, page.getTitle(), page.getH1(), page.getDescription());
+            check.setId(snapshot.getCheckId());
+            check.setUrlId(snapshot.getUrlId());
+            extracted.increment();
+            synchronized (pending) {
+                pending.add(check);
+            }
+            flush(takePending(false));
+        } catch (IOException | RuntimeException e) {
+            errors.increment();
+            log.warn("Could not extract the snapshot of check {} again", snapshot.getCheckId(), e);
+        }
+    }
+
+    /**
+     * Takes the pending checks when a batch is full, or whatever is left with {@code all}.
+     */
+    private List<UrlCheck> takePending(boolean all) {
+        synchronized (pending) {
+            if (pending.isEmpty() || (!all && pending.size() < batchSize)) {
+                return List.of();
+            }
+            var batch = List.copyOf(pending);
+            pending.clear();
+            return batch;
+        }
+    }
+
+    private void flush(List<UrlCheck> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            int count = urlCheckRepository.updateContents(batch).size();
+            changed.addAndGet(count);
+            changedChecks.add(count);
+        } catch (SQLException e) {
+            errors.add(batch.size());
+            log.error("Could not store {} re-extracted checks", batch.size(), e);
+        }
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runSafely() {
+        long start = System.nanoTime();
+        try {
+            log.info("Extracting {} page snapshots again", snapshotStore.size());
+            int count = run();
+            log.info("Re-extraction changed {} checks in {} s", count,
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+        } catch (InterruptedException e) {
+            log.info("Re-extraction stopped");
+        } catch (Exception e) {
+            log.error("Re-extraction failed", e);
+        }
+    }
+}
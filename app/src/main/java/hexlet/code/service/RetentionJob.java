@@ -0,0 +1,90 @@
+package hexlet.code.service;
+
+import hexlet.code.metrics.Counter;
+import hexlet.code.metrics.MetricsRegistry;
+import hexlet.code.repo.UrlCheckRollupRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps raw checks for {@code retentionDays} whole days and rolls older ones up into daily rows.
+ * Every batch is its own transaction, so locks are held for one batch at most.
+ */
+@Slf4j
+public final class RetentionJob {
+
+    private final Counter rolledUp;
+    private final UrlCheckRollupRepository rollupRepository;
+    private final Clock clock;
+    private final int retentionDays;
+    private final int batchSize;
+    private final Duration interval;
+    private ScheduledExecutorService executor;
+
+    public RetentionJob(UrlCheckRollupRepository rollupRepository, Clock clock, int retentionDays, int batchSize,
+                        Duration interval) {
+        this(rollupRepository, clock, retentionDays, batchSize, interval, MetricsRegistry.getDefault());
+    }
+
+    public RetentionJob(UrlCheckRollupRepository rollupRepository, Clock clock, int retentionDays, int batchSize,
+                        Duration interval, MetricsRegistry metrics) {
+        this.rolledUp = metrics.counter("retention_rolled_up_checks_total",
+                "Raw checks folded into daily rollups and deleted");
+        this.rollupRepository = rollupRepository;
+        this.clock = clock;
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+        this.interval = interval;
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(UrlCheckService.daemonThreadFactory("retention-"));
+        executor.scheduleWithFixedDelay(this::runSafely, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Rolls up every check created before the retention period started. Returns the number of removed checks.
+     */
+    public int run() throws SQLException {
+        var cutoff = Timestamp.valueOf(LocalDate.now(clock).minusDays(retentionDays).atStartOfDay());
+        int total = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            int rolled = rollupRepository.rollUpBatch(cutoff, batchSize);
+            total += rolled;
+            rolledUp.add(rolled);
+            if (rolled < batchSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private void runSafely() {
+        try {
+            int rolled = run();
+            if (rolled > 0) {
+                log.info("Rolled up {} checks older than {} days", rolled, retentionDays);
+            }
+        } catch (Exception e) {
+            log.error("Retention job failed", e);
+        }
+    }
+}
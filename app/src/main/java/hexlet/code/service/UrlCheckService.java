@@ -0,0 +1,215 @@
+package hexlet.code.service;
+
+import hexlet.code.fetch.ExtractedPage;
+import hexlet.code.fetch.PageFetcher;
+import hexlet.code.metrics.Counter;
+import hexlet.code.metrics.Histogram;
+import hexlet.code.metrics.MetricsRegistry;
+import hexlet.code.metrics.StatusCounter;
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repo.UrlCheckRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs url checks on a bounded pool of background workers. The check row is stored as QUEUED
+ * before submitting, so callers get its id right away.
+ */
+@Slf4j
+public final class UrlCheckService {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+    private static final int WRITE_LATENCY_SMOOTHING = 8;
+    private static final int NOT_MODIFIED = 304;
+
+    private final Histogram fetchTimer;
+    private final Counter fetchBytes;
+    private final StatusCounter fetchResponses;
+    private final Counter fetchErrors;
+    private final UrlCheckRepository urlCheckRepository;
+    private final PageFetcher pageFetcher;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong writeLatencyNanos = new AtomicLong();
+
+    public UrlCheckService(UrlCheckRepository urlCheckRepository, PageFetcher pageFetcher,
+                           int workers, int queueCapacity) {
+        this(urlCheckRepository, pageFetcher, workers, queueCapacity, MetricsRegistry.getDefault());
+    }
+
+    public UrlCheckService(UrlCheckRepository urlCheckRepository, PageFetcher pageFetcher,
+                           int workers, int queueCapacity, MetricsRegistry metrics) {
+        this.fetchTimer = metrics.histogram("check_fetch_duration_seconds",
+                "Outbound fetch and extraction time of checks");
+        this.fetchBytes = metrics.counter("check_fetch_bytes_total", "Response body bytes read by checks");
+        this.fetchResponses = metrics.statusCounter("check_fetch_responses_total",
+                "Responses of checked sites by status");
+        this.fetchErrors = metrics.counter("check_fetch_errors_total",
+                "Checks that failed without a usable response");
+        this.urlCheckRepository = urlCheckRepository;
+        this.pageFetcher = pageFetcher;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), daemonThreadFactory("url-check-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public UrlCheck enqueue(Url url) throws SQLException {
+        var check = new UrlCheck(0, null, null, null);
+        check.setUrlId(url.getId());
+        check.setStatus(CheckStatus.QUEUED);
+        long start = System.nanoTime();
+        urlCheckRepository.save(check);
+        recordWrite(start);
+        try {
+            executor.execute(() -> run(check, url));
+        } catch (RejectedExecutionException e) {
+            urlCheckRepository.updateStatus(check, CheckStatus.FAILED, "Check queue is full");
+            throw e;
+        }
+        return check;
+    }
+
+    /**
+     * Checks the url, sending the validators of its latest check so that an unchanged page is not downloaded.
+     */
+    public UrlCheck performCheck(Url url) throws SQLException, IOException {
+        UrlCheck previous = null;
+        if (url.getLastCheckId() != null) {
+            previous = urlCheckRepository.findById(url.getLastCheckId()).orElse(null);
+        }
+        return performCheck(url.getName(), previous);
+    }
+
+    /**
+     * On 304 Not Modified the values of {@code previous} are reused and no body is read.
+     */
+    public UrlCheck performCheck(String urlName, UrlCheck previous) throws IOException {
+        long start = System.nanoTime();
+        try {
+            var result = previous == null
+                    ? pageFetcher.fetch(urlName, null, null)
+                    : pageFetcher.fetch(urlName, previous.getEtag(), previous.getLastModified());
+            fetchResponses.increment(result.getStatusCode());
+            fetchBytes.add(result.getBytesRead());
+            UrlCheck check;
+            if (result.getStatusCode() == NOT_MODIFIED && previous != null) {
+                check = new UrlCheck(previous.getStatusCode(), previous.getTitle(), previous.getH1(),
+                        previous.getDescription());
+                check.setNotModified(true);
+                check.setEtag(result.getEtag() == null ? previous.getEtag() : result.getEtag());
+                check.setLastModified(result.getLastModified() == null
+                        ? previous.getLastModified()
+                        : result.getLastModified());
+            } else {
+                ExtractedPage page = result.getPage();
+                if (page == null) {
+                    throw new IllegalStateException("Could not read the response of " + urlName);
+                }
+                check = new UrlCheck(result.getStatusCode(), page.getTitle(), page.getH1(), page.getDescription());
+                check.setEtag(result.getEtag());
+                check.setLastModified(result.getLastModified());
+                check.setCapturedPage(result.getCapturedPage());
+            }
+            check.setFetchMillis(result.getFetchMillis());
+            check.setFetchBytes(result.getBytesRead());
+            return check;
+        } catch (IOException | RuntimeException e) {
+            fetchErrors.increment();
+            throw e;
+        } finally {
+            fetchTimer.observeSince(start);
+        }
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Moving average of the time it takes to store a check, in milliseconds.
+     */
+    public long getWriteLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(writeLatencyNanos.get());
+    }
+
+    private void recordWrite(long start) {
+        long sample = System.nanoTime() - start;
+        writeLatencyNanos.accumulateAndGet(sample,
+                (average, next) -> average == 0 ? next : average + (next - average) / WRITE_LATENCY_SMOOTHING);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(UrlCheck check, Url url) {
+        UrlCheck result;
+        try {
+            urlCheckRepository.updateStatus(check, CheckStatus.RUNNING, null);
+            result = performCheck(url);
+        } catch (Exception e) {
+            markFailed(check, url, e);
+            return;
+        }
+        check.setStatusCode(result.getStatusCode());
+        check.setTitle(result.getTitle());
+        check.setH1(result.getH1());
+        check.setDescription(result.getDescription());
+        check.setEtag(result.getEtag());
+        check.setLastModified(result.getLastModified());
+        check.setNotModified(result.isNotModified());
+        check.setFetchMillis(result.getFetchMillis());
+        check.setFetchBytes(result.getFetchBytes());
+        check.setCapturedPage(result.getCapturedPage());
+        check.setStatus(CheckStatus.DONE);
+        long start = System.nanoTime();
+        try {
+            // save listeners run after the commit and never throw, so a failure here means the result was not stored
+            urlCheckRepository.update(check);
+        } catch (SQLException | RuntimeException e) {
+            markFailed(check, url, e);
+            return;
+        }
+        recordWrite(start);
+    }
+
+    private void markFailed(UrlCheck check, Url url, Exception e) {
+        log.warn("Check {} of {} failed", check.getId(), url.getName(), e);
+        try {
+            urlCheckRepository.updateStatus(check, CheckStatus.FAILED, e.getMessage());
+        } catch (SQLException sqlException) {
+            log.error("Could not mark check {} as failed", check.getId(), sqlException);
+        }
+    }
+
+    static ThreadFactory daemonThreadFactory(String prefix) {
+        var counter = new AtomicInteger();
+        return runnable -> {
+            var thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
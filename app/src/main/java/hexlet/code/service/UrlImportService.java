@@ -0,0 +1,112 @@
+package hexlet.code.service;
+
+import hexlet.code.model.ImportResult;
+import hexlet.code.repo.UrlRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Imports a list of urls, one per line or as the first column of a CSV file. The upload is read line by line
+ * and new names are inserted in batches, so only the set of seen names is kept in memory.
+ */
+@Slf4j
+public final class UrlImportService {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final UrlRepository urlRepository;
+
+    public UrlImportService(UrlRepository urlRepository) {
+        this.urlRepository = urlRepository;
+    }
+
+    /**
+     * Scheme, host and port of {@code input} in lower case, the form urls are stored in.
+     */
+    public static Optional<String> normalize(String input) {
+        URL parsedUrl;
+        try {
+            var uri = new URI(input);
+            parsedUrl = uri.toURL();
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+        return Optional.of(String
+                .format(
+                        "%s://%s%s",
+                        parsedUrl.getProtocol(),
+                        parsedUrl.getHost(),
+                        parsedUrl.getPort() == -1 ? "" : ":" + parsedUrl.getPort()
+                )
+                .toLowerCase());
+    }
+
+    public ImportResult importUrls(InputStream input) throws IOException, SQLException {
+        var reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        Set<String> seen = new HashSet<>();
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        int added = 0;
+        int duplicate = 0;
+        int invalid = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            var value = firstColumn(line);
+            if (value.isEmpty()) {
+                continue;
+            }
+            var name = normalize(value);
+            if (name.isEmpty()) {
+                invalid++;
+            } else if (!seen.add(name.get())) {
+                duplicate++;
+            } else {
+                batch.add(name.get());
+                if (batch.size() == BATCH_SIZE) {
+                    int inserted = urlRepository.insertMissing(batch);
+                    added += inserted;
+                    duplicate += batch.size() - inserted;
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            int inserted = urlRepository.insertMissing(batch);
+            added += inserted;
+            duplicate += batch.size() - inserted;
+        }
+        log.info("Imported urls: {} added, {} duplicate, {} invalid", added, duplicate, invalid);
+        return new ImportResult(added, duplicate, invalid);
+    }
+
+    /**
+     * The first CSV field of the line, unquoted and trimmed. A plain list is a CSV file with one column.
+     */
+    static String firstColumn(String line) {
+        var value = line.strip();
+        if (value.startsWith("\uFEFF")) {
+            value = value.substring(1).strip();
+        }
+        if (value.startsWith("\"")) {
+            int end = value.indexOf('"', 1);
+            return (end == -1 ? value.substring(1) : value.substring(1, end)).strip();
+        }
+        int end = 0;
+        while (end < value.length() && ",;\t".indexOf(value.charAt(end)) == -1) {
+            end++;
+        }
+        return value.substring(0, end).strip();
+    }
+}
@@ -0,0 +1,283 @@
+package hexlet.code.service;
+
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlRows;
+import hexlet.code.repo.UrlRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The columns of the url list held in memory, so that pages of /urls are cut from arrays instead of queried.
+ * Rows are kept in id order in parallel primitive arrays; names are UTF-8 bytes appended to one array,
+ * so a url costs a few dozen bytes and no object.
+ *
+ * <p>The snapshot is read from the database on the first page and from then on follows the saves of urls
+ * and checks through the repositories' listeners. Bulk imports have no listeners, so their caller runs
+ * {@link #loadNew()}, which reads the urls after the last one read before.
+ */
+public final class UrlListSnapshot {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int INITIAL_NAME_BYTES = 8192;
+    private static final int LOAD_BATCH_SIZE = 1000;
+    private static final long NO_CHECK = -1;
+
+    private final UrlRepository urlRepository;
+    private final StampedLock lock = new StampedLock();
+    private final Object loadLock = new Object();
+    private volatile boolean loaded;
+    private long loadedUpTo;
+    // both guarded by the write lock: checks of urls not stored yet, kept while a load runs
+    private boolean loading;
+    private final Map<Long, UrlCheck> pendingChecks = new HashMap<>();
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] lastCheckIds = new long[INITIAL_CAPACITY];
+    private long[] lastCheckMillis = new long[INITIAL_CAPACITY];
+    private int[] statusCodes = new int[INITIAL_CAPACITY];
+    private int[] nameOffsets = new int[INITIAL_CAPACITY];
+    private int[] nameLengths = new int[INITIAL_CAPACITY];
+    private byte[] names = new byte[INITIAL_NAME_BYTES];
+    private int size;
+    private int nameBytes;
+
+    public UrlListSnapshot(UrlRepository urlRepository) {
+        this.urlRepository = urlRepository;
+    }
+
+    /**
+     * Reads the urls added after the last one read from the database, in batches.
+     */
+    public void loadNew() throws SQLException {
+        synchronized (loadLock) {
+            setLoading(true);
+            try {
+                readNew();
+            } finally {
+                setLoading(false);
+            }
+            loaded = true;
+        }
+    }
+
+    /**
+     * Save listener of the url repository.
+     */
+    public void add(Url url) {
+        long stamp = lock.writeLock();
+        try {
+            put(url);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Save listener of the check repository: takes the time and status code of a finished check,
+     * unless the url already has a later one. While a load runs the url may have been read but not stored yet;
+     * then the check waits for it.
+     */
+    public void recordCheck(UrlCheck check) {
+        if (check.getStatus() != CheckStatus.DONE) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            int index = Arrays.binarySearch(ids, 0, size, check.getUrlId());
+            if (index >= 0) {
+                applyCheck(index, check);
+            } else if (loading) {
+                pendingChecks.merge(check.getUrlId(), check,
+                        (held, arrived) -> arrived.getId() > held.getId() ? arrived : held);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Up to {@code limit} rows newest first: those before the id {@code before}, or those right after
+     * the id {@code after}, or the newest ones when neither is given. Reads the database only the first time.
+     */
+    public UrlRows page(Long before, Long after, int limit) throws SQLException {
+        if (!loaded) {
+            loadNew();
+        }
+        long stamp = lock.readLock();
+        try {
+            int start;
+            int end;
+            if (after != null) {
+                start = upperBound(after);
+                end = Math.min(start + limit, size);
+            } else {
+                end = before == null ? size : lowerBound(before);
+                start = Math.max(0, end - limit);
+            }
+            int count = end - start;
+            var pageIds = new long[count];
+            var pageNames = new String[count];
+            var pageCheckMillis = new long[count];
+            var pageStatusCodes = new int[count];
+            for (int row = 0; row < count; row++) {
+                int index = end - 1 - row;
+                pageIds[row] = ids[index];
+                pageNames[row] = new String(names, nameOffsets[index], nameLengths[index], StandardCharsets.UTF_8);
+                pageCheckMillis[row] = lastCheckMillis[index];
+                pageStatusCodes[row] = statusCodes[index];
+            }
+            // an empty page still links to its neighbours, by the ids just past its bounds
+            Long newerCursor = null;
+            if (end < size) {
+                newerCursor = end > 0 ? ids[end - 1] : ids[0] - 1;
+            }
+            Long olderCursor = null;
+            if (start > 0) {
+                olderCursor = start < size ? ids[start] : ids[size - 1] + 1;
+            }
+            return new UrlRows(pageIds, pageNames, pageCheckMillis, pageStatusCodes, newerCursor, olderCursor);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Bytes taken by the arrays, spare capacity included.
+     */
+    public long getMemoryBytes() {
+        long stamp = lock.readLock();
+        try {
+            return (long) ids.length * (Long.BYTES * 3 + Integer.BYTES * 3) + names.length;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void readNew() throws SQLException {
+        while (true) {
+            var batch = urlRepository.findAfterId(loadedUpTo, LOAD_BATCH_SIZE);
+            long stamp = lock.writeLock();
+            try {
+                for (var url : batch) {
+                    put(url);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            if (!batch.isEmpty()) {
+                loadedUpTo = batch.get(batch.size() - 1).getId();
+            }
+            if (batch.size() < LOAD_BATCH_SIZE) {
+                return;
+            }
+        }
+    }
+
+    private void setLoading(boolean value) {
+        long stamp = lock.writeLock();
+        try {
+            loading = value;
+            pendingChecks.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Index of the first id greater than {@code id}.
+     */
+    private int upperBound(long id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * Index of the first id not less than {@code id}.
+     */
+    private int lowerBound(long id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Inserts the url or updates its latest check, taking a check held back for it. Called under the write lock.
+     */
+    private void put(Url url) {
+        int index = Arrays.binarySearch(ids, 0, size, url.getId());
+        if (index < 0) {
+            index = -index - 1;
+            insert(index, url.getId(), url.getName());
+        }
+        if (url.getLastCheckId() != null && url.getLastCheckId() > lastCheckIds[index]) {
+            lastCheckIds[index] = url.getLastCheckId();
+            lastCheckMillis[index] = url.getLastCheckAt().getTime();
+            statusCodes[index] = url.getLastStatusCode();
+        }
+        var pending = pendingChecks.remove(url.getId());
+        if (pending != null) {
+            applyCheck(index, pending);
+        }
+    }
+
+    private void applyCheck(int index, UrlCheck check) {
+        if (check.getId() > lastCheckIds[index]) {
+            lastCheckIds[index] = check.getId();
+            lastCheckMillis[index] = check.getCreatedAt().getTime();
+            statusCodes[index] = check.getStatusCode();
+        }
+    }
+
+    /**
+     * Urls almost always arrive in id order and are appended; the copies only move rows of concurrent inserts
+     * that committed out of order.
+     */
+    private void insert(int index, long id, String name) {
+        if (size == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            lastCheckIds = Arrays.copyOf(lastCheckIds, capacity);
+            lastCheckMillis = Arrays.copyOf(lastCheckMillis, capacity);
+            statusCodes = Arrays.copyOf(statusCodes, capacity);
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+            nameLengths = Arrays.copyOf(nameLengths, capacity);
+        }
+        int moved = size - index;
+        System.arraycopy(ids, index, ids, index + 1, moved);
+        System.arraycopy(lastCheckIds, index, lastCheckIds, index + 1, moved);
+        System.arraycopy(lastCheckMillis, index, lastCheckMillis, index + 1, moved);
+        System.arraycopy(statusCodes, index, statusCodes, index + 1, moved);
+        System.arraycopy(nameOffsets, index, nameOffsets, index + 1, moved);
+        System.arraycopy(nameLengths, index, nameLengths, index + 1, moved);
+
+        var bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes + bytes.length > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, nameBytes + bytes.length));
+        }
+        System.arraycopy(bytes, 0, names, nameBytes, bytes.length);
+
+        ids[index] = id;
+        lastCheckIds[index] = NO_CHECK;
+        lastCheckMillis[index] = NO_CHECK;
+        statusCodes[index] = 0;
+        nameOffsets[index] = nameBytes;
+        nameLengths[index] = bytes.length;
+        nameBytes += bytes.length;
+        size++;
+    }
+}
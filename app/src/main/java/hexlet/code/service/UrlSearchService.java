@@ -0,0 +1,82 @@
+package hexlet.code.service;
+
+import hexlet.code.metrics.Histogram;
+import hexlet.code.metrics.MetricsRegistry;
+import hexlet.code.model.SearchPage;
+import hexlet.code.model.Url;
+import hexlet.code.repo.UrlRepository;
+import hexlet.code.search.UrlSearchIndex;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Ranked search over url names and the title, h1 and description of their latest check.
+ * PostgreSQL with pg_trgm answers from its trigram index; other databases go through an in-process
+ * {@link UrlSearchIndex} that is fed by check saves and reads urls it has not seen yet before every search.
+ */
+public final class UrlSearchService {
+
+    private static final int MAX_QUERY_TERMS = 8;
+
+    private final UrlRepository urlRepository;
+    private final UrlSearchIndex index;
+    private final Histogram searchTimer;
+
+    /**
+     * Searches with the database's own index.
+     */
+    public UrlSearchService(UrlRepository urlRepository) {
+        this(urlRepository, null);
+    }
+
+    public UrlSearchService(UrlRepository urlRepository, UrlSearchIndex index) {
+        this(urlRepository, index, MetricsRegistry.getDefault());
+    }
+
+    /**
+     * Searches through {@code index}, or with the database's own index when it is null.
+     */
+    public UrlSearchService(UrlRepository urlRepository, UrlSearchIndex index, MetricsRegistry metrics) {
+        this.urlRepository = urlRepository;
+        this.index = index;
+        this.searchTimer = metrics.histogram("url_search_duration_seconds",
+                "Latency of url searches, loading the result rows included",
+                "engine", index == null ? "database" : "memory");
+    }
+
+    public SearchPage<Url> search(String query, int page, int size) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            var terms = UrlSearchIndex.terms(query);
+            if (terms.size() > MAX_QUERY_TERMS) {
+                terms = terms.subList(0, MAX_QUERY_TERMS);
+            }
+            int offset = (page - 1) * size;
+            List<Url> rows;
+            if (terms.isEmpty()) {
+                rows = List.of();
+            } else if (index == null) {
+                rows = urlRepository.search(terms, size + 1, offset);
+            } else {
+                loadNewUrls();
+                rows = urlRepository.findByIds(index.search(terms, size + 1, offset));
+            }
+            boolean hasNext = rows.size() > size;
+            return new SearchPage<>(hasNext ? rows.subList(0, size) : rows, query, page, hasNext);
+        } finally {
+            searchTimer.observeSince(start);
+        }
+    }
+
+    /**
+     * Urls come in through saves and bulk imports, and only the former have listeners,
+     * so the index reads whatever was added after the last url it has seen. Usually this finds nothing.
+     */
+    private void loadNewUrls() throws SQLException {
+        urlRepository.streamSearchDocuments(index.getLoadedUpTo(), document -> {
+            index.put(document.getUrlId(), document.getName(), document.getLastCheckId(), document.getText());
+            index.markLoaded(document.getUrlId());
+        });
+    }
+}
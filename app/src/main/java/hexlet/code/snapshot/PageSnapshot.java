@@ -0,0 +1,61 @@
+package hexlet.code.snapshot;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A stored page body. The payload is still deflated and points into the mapped segment, or into a copy
+ * of the record for the segment still being written; {@link #body()} checks and inflates it.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public final class PageSnapshot {
+    private final long checkId;
+    private final long urlId;
+    private final String contentType;
+    private final int rawLength;
+    @Getter(AccessLevel.NONE)
+    private final int crc;
+    @Getter(AccessLevel.NONE)
+    private final ByteBuffer payload;
+
+    /**
+     * Inflates the body. Throws {@link IOException} when the record does not match its checksum.
+     */
+    public byte[] body() throws IOException {
+        var checksum = new CRC32();
+        checksum.update(payload.duplicate());
+        if ((int) checksum.getValue() != crc) {
+            throw new IOException("Snapshot of check " + checkId + " does not match its checksum");
+        }
+        var inflater = new Inflater(true);
+        try {
+            inflater.setInput(payload.duplicate());
+            var body = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength) {
+                int n = inflater.inflate(body, length, rawLength - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != rawLength) {
+                throw new IOException("Snapshot of check " + checkId + " inflates to " + length
+                        + " bytes instead of " + rawLength);
+            }
+            return body;
+        } catch (DataFormatException e) {
+            throw new IOException("Snapshot of check " + checkId + " is not valid deflate data", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
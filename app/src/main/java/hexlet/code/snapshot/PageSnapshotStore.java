@@ -0,0 +1,424 @@
+package hexlet.code.snapshot;
+
+import hexlet.code.metrics.Counter;
+import hexlet.code.metrics.MetricsRegistry;
+import hexlet.code.model.CapturedPage;
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.UrlCheck;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of compressed page bodies, indexed by check id, so that checks can be extracted again
+ * without fetching the sites. Records go to numbered segment files of about {@code segmentBytes}; once all
+ * segments together take more than {@code maxBytes} (0 for no limit) the oldest ones are deleted. Full segments
+ * are read through a memory map made once; the segment still being written is read with positional reads.
+ *
+ * <p>The index is kept in memory and rebuilt from the record headers on open. Appends are not synced one by one,
+ * a segment is synced when it is full: after a crash the records cut short at the end of a segment are truncated
+ * and those pages are simply missing, like pages fetched before the store was turned on.
+ *
+ * <p>Record layout, big-endian: magic, length of the rest, check id, url id, inflated length, CRC32 of the
+ * payload, content type length, content type, payload.
+ */
+@Slf4j
+public final class PageSnapshotStore implements AutoCloseable {
+
+    private static final int MAGIC = 0x50534e31;
+    private static final int PREFIX_BYTES = 8;
+    private static final int HEADER_BYTES = 34;
+    private static final int CHECK_ID_OFFSET = 8;
+    private static final int URL_ID_OFFSET = 16;
+    private static final int RAW_LENGTH_OFFSET = 24;
+    private static final int CRC_OFFSET = 28;
+    private static final int CONTENT_TYPE_OFFSET = 32;
+    private static final int MAX_CONTENT_TYPE_BYTES = 255;
+    private static final String SUFFIX = ".seg";
+
+    private final Counter appendErrors;
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    /**
+     * Check id to segment number (high half) and offset (low half) of its record.
+     */
+    private final ConcurrentHashMap<Long, Long> index = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private Segment active;
+    private boolean closed;
+
+    private PageSnapshotStore(Path directory, long segmentBytes, long maxBytes, MetricsRegistry metrics) {
+        this.appendErrors = metrics.counter("page_snapshot_write_errors_total",
+                "Fetched pages that could not be stored as snapshots");
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Opens the store in {@code directory}, creating it when missing, and indexes the existing segments.
+     */
+    public static PageSnapshotStore open(Path directory, long segmentBytes, long maxBytes) throws IOException {
+        return open(directory, segmentBytes, maxBytes, MetricsRegistry.getDefault());
+    }
+
+    public static PageSnapshotStore open(Path directory, long segmentBytes, long maxBytes, MetricsRegistry metrics)
+            throws IOException {
+        if (segmentBytes <= 0 || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be between 1 byte and 2 GB, got " + segmentBytes);
+        }
+        Files.createDirectories(directory);
+        var store = new PageSnapshotStore(directory, segmentBytes, maxBytes, metrics);
+        try {
+            store.load();
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private synchronized void load() throws IOException {
+        var numbers = new ArrayList<Integer>();
+        try (var files = Files.list(directory)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                var name = file.getFileName().toString();
+                if (name.endsWith(SUFFIX)) {
+                    try {
+                        numbers.add(Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        log.warn("Skipping {}, not a snapshot segment", file);
+                    }
+                }
+            }
+        }
+        Collections.sort(numbers);
+        for (int number : numbers) {
+            var segment = Segment.open(segmentPath(number), number);
+            segments.put(number, segment);
+            boolean last = number == numbers.get(numbers.size() - 1);
+            if (!last) {
+                segment.seal();
+            }
+            long valid = indexSegment(segment, last);
+            if (valid < segment.size) {
+                log.warn("Truncating {} bytes of incomplete snapshot records at the end of {}",
+                        segment.size - valid, segment.path);
+                segment.truncate(valid);
+            }
+            totalBytes.addAndGet(segment.size);
+        }
+        active = segments.isEmpty() ? createSegment(0) : segments.lastEntry().getValue();
+        enforceRetention();
+    }
+
+    /**
+     * Adds the records of a segment to the index and returns the length of its readable part. Payload checksums
+     * are verified for the last segment only, the one a crash may have left half-written.
+     */
+    private long indexSegment(Segment segment, boolean verifyPayloads) throws IOException {
+        int offset = 0;
+        while (offset + HEADER_BYTES <= segment.size) {
+            var header = segment.bytes(offset, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC) {
+                break;
+            }
+            int length = header.getInt(4);
+            int contentTypeLength = header.getShort(CONTENT_TYPE_OFFSET) & 0xFFFF;
+            long end = (long) offset + PREFIX_BYTES + length;
+            if (length < HEADER_BYTES - PREFIX_BYTES + contentTypeLength || end > segment.size) {
+                break;
+            }
+            if (verifyPayloads) {
+                int payloadStart = HEADER_BYTES + contentTypeLength;
+                var record = segment.bytes(offset, (int) (end - offset));
+                var checksum = new CRC32();
+                checksum.update(record.slice(payloadStart, record.limit() - payloadStart));
+                if ((int) checksum.getValue() != header.getInt(CRC_OFFSET)) {
+                    break;
+                }
+            }
+            index.put(header.getLong(CHECK_ID_OFFSET), location(segment.number, offset));
+            offset = (int) end;
+        }
+        return offset;
+    }
+
+    /**
+     * Save listener: stores the captured body of a finished check and drops it from the check.
+     * Failures are logged, the check itself is already stored.
+     */
+    public void record(UrlCheck check) {
+        var page = check.getCapturedPage();
+        if (page == null || check.getStatus() != CheckStatus.DONE) {
+            return;
+        }
+        check.setCapturedPage(null);
+        try {
+            append(check.getId(), check.getUrlId(), page);
+        } catch (IOException | RuntimeException e) {
+            appendErrors.increment();
+            log.warn("Could not store the page of check {}", check.getId(), e);
+        }
+    }
+
+    public void append(long checkId, long urlId, CapturedPage page) throws IOException {
+        var contentType = page.getContentType() == null
+                ? new byte[0]
+                : page.getContentType().getBytes(StandardCharsets.UTF_8);
+        if (contentType.length > MAX_CONTENT_TYPE_BYTES) {
+            contentType = Arrays.copyOf(contentType, MAX_CONTENT_TYPE_BYTES);
+        }
+        int recordBytes = HEADER_BYTES + contentType.length + page.getCompressed().length;
+        var header = ByteBuffer.allocate(HEADER_BYTES + contentType.length)
+                .putInt(MAGIC)
+                .putInt(recordBytes - PREFIX_BYTES)
+                .putLong(checkId)
+                .putLong(urlId)
+                .putInt(page.getRawLength())
+                .putInt(page.getCrc())
+                .putShort((short) contentType.length)
+                .put(contentType)
+                .flip();
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Page snapshot store is closed");
+            }
+            if (active.size > 0 && active.size + recordBytes > segmentBytes) {
+                active.channel.force(false);
+                active.seal();
+                active = createSegment(active.number + 1);
+            }
+            long offset = active.append(header, ByteBuffer.wrap(page.getCompressed()));
+            index.put(checkId, location(active.number, offset));
+            totalBytes.addAndGet(recordBytes);
+            enforceRetention();
+        }
+    }
+
+    public Optional<PageSnapshot> find(long checkId) throws IOException {
+        var location = index.get(checkId);
+        if (location == null) {
+            return Optional.empty();
+        }
+        var segment = segments.get(segmentOf(location));
+        return segment == null ? Optional.empty() : Optional.ofNullable(read(segment, offsetOf(location)));
+    }
+
+    /**
+     * Hands every stored snapshot to {@code consumer}, oldest segment first, one record per check.
+     * Pages stored meanwhile may be left out. Stops early when the calling thread is interrupted.
+     */
+    public void forEach(Consumer<PageSnapshot> consumer) throws IOException {
+        for (var segment : segments.values()) {
+            long end = segment.size;
+            int offset = 0;
+            while (offset + HEADER_BYTES <= end && !Thread.currentThread().isInterrupted()) {
+                var header = segment.bytes(offset, HEADER_BYTES);
+                if (header == null) {
+                    break;
+                }
+                int length = header.getInt(4);
+                var stored = index.get(header.getLong(CHECK_ID_OFFSET));
+                if (stored != null && stored == location(segment.number, offset)) {
+                    var snapshot = read(segment, offset);
+                    if (snapshot != null) {
+                        consumer.accept(snapshot);
+                    }
+                }
+                offset += PREFIX_BYTES + length;
+            }
+        }
+    }
+
+    private PageSnapshot read(Segment segment, int offset) throws IOException {
+        var header = segment.bytes(offset, HEADER_BYTES);
+        var record = header == null ? null : segment.bytes(offset, PREFIX_BYTES + header.getInt(4));
+        if (record == null) {
+            return null;
+        }
+        int contentTypeLength = record.getShort(CONTENT_TYPE_OFFSET) & 0xFFFF;
+        String contentType = null;
+        if (contentTypeLength > 0) {
+            var bytes = new byte[contentTypeLength];
+            record.get(HEADER_BYTES, bytes);
+            contentType = new String(bytes, StandardCharsets.UTF_8);
+        }
+        int payloadStart = HEADER_BYTES + contentTypeLength;
+        return new PageSnapshot(record.getLong(CHECK_ID_OFFSET), record.getLong(URL_ID_OFFSET),
+                contentType, record.getInt(RAW_LENGTH_OFFSET), record.getInt(CRC_OFFSET),
+                record.slice(payloadStart, record.limit() - payloadStart));
+    }
+
+    private Segment createSegment(int number) throws IOException {
+        var segment = Segment.open(segmentPath(number), number);
+        segments.put(number, segment);
+        return segment;
+    }
+
+    private void enforceRetention() throws IOException {
+        while (maxBytes > 0 && totalBytes.get() > maxBytes && segments.size() > 1) {
+            var oldest = segments.pollFirstEntry().getValue();
+            index.values().removeIf(location -> segmentOf(location) == oldest.number);
+            totalBytes.addAndGet(-oldest.size);
+            oldest.delete();
+            log.info("Deleted snapshot segment {} to stay under {} bytes", oldest.path, maxBytes);
+        }
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("%010d%s", number, SUFFIX));
+    }
+
+    private static long location(int segment, long offset) {
+        return (long) segment << 32 | offset;
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    /**
+     * Number of checks with a stored page.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (active != null) {
+            active.channel.force(false);
+        }
+        for (var segment : segments.values()) {
+            segment.close();
+        }
+    }
+
+    /**
+     * One segment file. Appends are serialized by the store. Once sealed the segment no longer changes
+     * and is mapped on the first read.
+     */
+    private static final class Segment {
+        private final Path path;
+        private final int number;
+        private final FileChannel channel;
+        private volatile long size;
+        private volatile boolean sealed;
+        private MappedByteBuffer map;
+
+        private Segment(Path path, int number, FileChannel channel, long size) {
+            this.path = path;
+            this.number = number;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        static Segment open(Path path, int number) throws IOException {
+            var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return new Segment(path, number, channel, channel.size());
+        }
+
+        long append(ByteBuffer header, ByteBuffer payload) throws IOException {
+            long offset = size;
+            long position = offset;
+            for (var buffer : List.of(header, payload)) {
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+            size = position;
+            return offset;
+        }
+
+        void truncate(long length) throws IOException {
+            channel.truncate(length);
+            size = length;
+            synchronized (this) {
+                map = null;
+            }
+        }
+
+        void seal() {
+            sealed = true;
+        }
+
+        /**
+         * The {@code length} bytes at {@code offset}, or null once the segment is closed or deleted.
+         */
+        ByteBuffer bytes(long offset, int length) throws IOException {
+            if (sealed) {
+                var mapped = mapped();
+                return mapped == null ? null : mapped.slice((int) offset, length);
+            }
+            var buffer = ByteBuffer.allocate(length);
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new IOException("Snapshot record at " + offset + " runs past the end of " + path);
+                    }
+                }
+            } catch (ClosedChannelException e) {
+                return null;
+            }
+            return buffer.flip();
+        }
+
+        private synchronized MappedByteBuffer mapped() throws IOException {
+            if (map == null) {
+                if (!channel.isOpen()) {
+                    return null;
+                }
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            return map;
+        }
+
+        synchronized void close() throws IOException {
+            channel.close();
+        }
+
+        synchronized void delete() throws IOException {
+            channel.close();
+            map = null;
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -1,2 +1,5 @@
+DROP TABLE IF EXISTS url_check_rollups;
 DROP TABLE IF EXISTS url_checks;
 DROP TABLE IF EXISTS urls;
+DROP TABLE IF EXISTS check_contents;
+DROP TABLE IF EXISTS schema_version;
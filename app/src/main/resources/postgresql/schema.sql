@@ -2,6 +2,9 @@ CREATE TABLE IF NOT EXISTS urls (
                                     id         BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
                                     name       VARCHAR(255),
     created_at TIMESTAMP NOT NULL,
+    last_check_id    BIGINT,
+    last_check_at    TIMESTAMP,
+    last_status_code INTEGER,
     CONSTRAINT pk_url PRIMARY KEY (id)
     );
 
@@ -13,6 +16,14 @@ CREATE TABLE IF NOT EXISTS url_checks (
     description  TEXT,
     url_id       BIGINT NOT NULL,
     created_at   TIMESTAMP NOT NULL,
+    status       VARCHAR(16) DEFAULT 'DONE' NOT NULL,
+    error        TEXT,
+    etag         VARCHAR(255),
+    last_modified VARCHAR(64),
+    not_modified BOOLEAN DEFAULT FALSE NOT NULL,
+    content_id   BIGINT,
+    fetch_millis INTEGER,
+    fetch_bytes  BIGINT,
     CONSTRAINT pk_url_checks PRIMARY KEY (id),
     CONSTRAINT fk_url_checks_url_id FOREIGN KEY (url_id) REFERENCES urls (id)
     ON DELETE RESTRICT
@@ -21,3 +32,86 @@ CREATE TABLE IF NOT EXISTS url_checks (
 
 CREATE INDEX IF NOT EXISTS ix_url_check_url_id ON url_checks (url_id);
 
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS status VARCHAR(16) DEFAULT 'DONE' NOT NULL;
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS error TEXT;
+
+CREATE INDEX IF NOT EXISTS ix_url_checks_url_id_id ON url_checks (url_id, id);
+
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS last_check_id BIGINT;
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS last_check_at TIMESTAMP;
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS last_status_code INTEGER;
+
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS etag VARCHAR(255);
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS last_modified VARCHAR(64);
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS not_modified BOOLEAN DEFAULT FALSE NOT NULL;
+
+CREATE TABLE IF NOT EXISTS check_contents (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    fingerprint VARCHAR(64) NOT NULL,
+    title       VARCHAR(255),
+    h1          VARCHAR(255),
+    description TEXT,
+    CONSTRAINT pk_check_contents PRIMARY KEY (id),
+    CONSTRAINT uq_check_contents_fingerprint UNIQUE (fingerprint)
+    );
+
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS content_id BIGINT;
+
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS fetch_millis INTEGER;
+ALTER TABLE url_checks ADD COLUMN IF NOT EXISTS fetch_bytes BIGINT;
+
+CREATE TABLE IF NOT EXISTS url_check_rollups (
+    url_id            BIGINT NOT NULL,
+    check_date        DATE NOT NULL,
+    check_count       INTEGER NOT NULL,
+    status_2xx        INTEGER NOT NULL,
+    status_3xx        INTEGER NOT NULL,
+    status_4xx        INTEGER NOT NULL,
+    status_5xx        INTEGER NOT NULL,
+    failed_count      INTEGER NOT NULL,
+    first_check_at    TIMESTAMP NOT NULL,
+    first_status_code INTEGER,
+    first_content_id  BIGINT,
+    last_check_at     TIMESTAMP NOT NULL,
+    last_status_code  INTEGER,
+    last_content_id   BIGINT,
+    CONSTRAINT pk_url_check_rollups PRIMARY KEY (url_id, check_date),
+    CONSTRAINT fk_url_check_rollups_url_id FOREIGN KEY (url_id) REFERENCES urls (id)
+    ON DELETE RESTRICT
+    ON UPDATE RESTRICT
+    );
+
+CREATE INDEX IF NOT EXISTS ix_url_checks_created_at ON url_checks (created_at);
+CREATE INDEX IF NOT EXISTS ix_urls_last_check_id ON urls (last_check_id);
+
+ALTER TABLE urls ADD COLUMN IF NOT EXISTS search_text TEXT;
+
+-- urls added twice by concurrent requests before uq_urls_name existed are merged into the oldest row;
+-- a day both rows have a rollup for keeps the rollup of the oldest row
+DROP TABLE IF EXISTS url_duplicates;
+CREATE TABLE url_duplicates AS
+SELECT u.id, d.kept_id
+FROM urls u
+         JOIN (SELECT name, MIN(id) AS kept_id FROM urls GROUP BY name HAVING COUNT(*) > 1) d ON d.name = u.name
+WHERE u.id <> d.kept_id;
+UPDATE urls SET last_check_id = NULL, last_check_at = NULL, last_status_code = NULL, search_text = NULL
+WHERE id IN (SELECT kept_id FROM url_duplicates);
+UPDATE url_checks SET url_id = (SELECT d.kept_id FROM url_duplicates d WHERE d.id = url_checks.url_id)
+WHERE url_id IN (SELECT id FROM url_duplicates);
+UPDATE url_check_rollups SET url_id = (SELECT d.kept_id FROM url_duplicates d WHERE d.id = url_check_rollups.url_id)
+WHERE url_id IN (SELECT id FROM url_duplicates)
+  AND NOT EXISTS (SELECT 1
+                  FROM url_check_rollups o
+                           JOIN url_duplicates od ON od.id = o.url_id OR od.kept_id = o.url_id
+                           JOIN url_duplicates rd ON rd.id = url_check_rollups.url_id
+                  WHERE od.kept_id = rd.kept_id
+                    AND o.check_date = url_check_rollups.check_date
+                    AND o.url_id < url_check_rollups.url_id);
+DELETE FROM url_check_rollups WHERE url_id IN (SELECT id FROM url_duplicates);
+DELETE FROM urls WHERE id IN (SELECT id FROM url_duplicates);
+DROP TABLE url_duplicates;
+CREATE UNIQUE INDEX IF NOT EXISTS uq_urls_name ON urls (name);
+
+CREATE TABLE IF NOT EXISTS schema_version (
+    schema_hash VARCHAR(64) NOT NULL
+    );
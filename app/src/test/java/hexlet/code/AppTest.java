@@ -2,11 +2,27 @@ package hexlet.code;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.fetch.FetchSettings;
+import hexlet.code.fetch.HostGuard;
+import hexlet.code.fetch.HostGuardSettings;
+import hexlet.code.fetch.HostUnavailableException;
+import hexlet.code.fetch.HtmlExtractor;
+import hexlet.code.fetch.PageFetcher;
+import hexlet.code.model.CheckStatus;
 import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.model.web.Routes;
+import hexlet.code.repo.BatchingCheckWriter;
 import hexlet.code.repo.UrlCheckRepository;
+import hexlet.code.repo.UrlCheckRollupRepository;
 import hexlet.code.repo.UrlRepository;
+import hexlet.code.service.RecheckScheduler;
+import hexlet.code.service.RecheckSettings;
+import hexlet.code.service.RetentionJob;
+import hexlet.code.service.UrlCheckService;
 import io.javalin.Javalin;
 import io.javalin.testtools.JavalinTest;
+import okhttp3.Request;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.jupiter.api.AfterAll;
@@ -17,13 +33,28 @@ import org.junit.jupiter.api.Test;
 
 import javax.sql.DataSource;
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import org.junit.jupiter.api.extension.ExtendWith;
 import uk.org.webcompere.systemstubs.environment.EnvironmentVariables;
@@ -55,10 +86,73 @@ class AppTest {
         return Files.readString(filePath).trim();
     }
 
+    private static UrlCheck awaitCheck(long urlId) throws SQLException, InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            List<UrlCheck> checks = urlCheckRepository.findByUrlId(urlId);
+            if (!checks.isEmpty() && !checks.get(0).getStatus().isPending()) {
+                return checks.get(0);
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Check of url " + urlId + " has not finished in time");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static PageFetcher createFetcher(Duration requestTimeout) {
+        return new PageFetcher(new HtmlExtractor(1024 * 1024), FetchSettings.builder()
+                .connectTimeout(Duration.ofSeconds(2))
+                .readTimeout(Duration.ofSeconds(2))
+                .requestTimeout(requestTimeout)
+                .maxConnections(10)
+                .maxConnectionsPerHost(2)
+                .maxRedirects(2)
+                .dnsCacheSize(100)
+                .dnsCacheTtl(Duration.ofMinutes(1))
+                .userAgent("page-analyzer-test")
+                .build(), new HostGuard(HostGuardSettings.builder()
+                .requestsPerMinute(0)
+                .burst(1)
+                .maxWait(Duration.ZERO)
+                .failureThreshold(2)
+                .coolDown(Duration.ofMinutes(1))
+                .build()));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
     @BeforeAll
     public static void beforeAll(EnvironmentVariables env) throws IOException {
         env.set("IS_DROP_DB_ENABLED", "true");
         env.set("JDBC_DATABASE_URL", JDBC_URL);
+        env.set("RECHECK_ENABLED", "false");
+        env.set("RETENTION_ENABLED", "false");
         mockServer = new MockWebServer();
         MockResponse mockedResponse = new MockResponse()
                 .setBody(readFixture("index.html"));
@@ -91,9 +185,66 @@ class AppTest {
         }
     }
 
+    @Nested
+    class MetricsTest {
+
+        @Test
+        void testScrape() {
+            JavalinTest.test(app, (server, client) -> {
+                assertThat(client.get("/urls").code()).isEqualTo(200);
+
+                var response = client.get("/metrics");
+                assertThat(response.code()).isEqualTo(200);
+                assertThat(response.header("Content-Type")).startsWith("text/plain");
+                assertThat(response.body().string())
+                        .contains("http_server_request_duration_seconds_bucket{method=\"GET\",route=\"/urls\"")
+                        .contains("db_query_duration_seconds_count")
+                        .contains("check_queue_size");
+            });
+        }
+
+        @Test
+        void testCountsOnlyTheRequestsOfItsOwnApp() throws Exception {
+            var otherApp = App.getApp(dataSource);
+            JavalinTest.test(otherApp, (server, client) -> assertThat(client.get("/urls").code()).isEqualTo(200));
+
+            JavalinTest.test(app, (server, client) -> {
+                assertThat(client.get("/urls").code()).isEqualTo(200);
+
+                assertThat(client.get("/metrics").body().string())
+                        .contains("http_server_request_duration_seconds_count{method=\"GET\",route=\"/urls\"} 1\n");
+            });
+        }
+    }
+
     @Nested
     class UrlTest {
 
+        @Test
+        void testMergesDuplicateUrlsWhenTheSchemaIsApplied(EnvironmentVariables env) throws Exception {
+            // a database from before the unique index, with a url added twice
+            try (var connection = dataSource.getConnection(); var statement = connection.createStatement()) {
+                statement.execute("DROP INDEX uq_urls_name");
+                statement.execute("DELETE FROM schema_version");
+            }
+            var kept = new Url("https://twice.io");
+            urlRepository.save(kept);
+            var duplicate = new Url("https://twice.io");
+            urlRepository.save(duplicate);
+            var check = new UrlCheck(200, "Twice", null, null);
+            check.setUrlId(duplicate.getId());
+            urlCheckRepository.save(check);
+
+            env.set("IS_DROP_DB_ENABLED", "false");
+            App.getApp(dataSource);
+
+            assertThat(urlRepository.findById(duplicate.getId())).isEmpty();
+            assertThat(urlCheckRepository.findByUrlId(kept.getId())).extracting(UrlCheck::getId)
+                    .containsExactly(check.getId());
+            assertThat(urlRepository.findById(kept.getId()).orElseThrow().getLastCheckId()).isEqualTo(check.getId());
+            assertThatThrownBy(() -> urlRepository.save(new Url("https://twice.io"))).isInstanceOf(SQLException.class);
+        }
+
         @Test
         void testIndex() {
             JavalinTest.test(app, (server, client) -> {
@@ -101,6 +252,45 @@ class AppTest {
             });
         }
 
+        @Test
+        void testIndexPagination() throws SQLException {
+            for (int i = 1; i <= 25; i++) {
+                urlRepository.save(new Url("https://site" + i + ".io"));
+            }
+            JavalinTest.test(app, (server, client) -> {
+                var firstPage = client.get("/urls").body().string();
+                assertThat(firstPage).contains("https://site25.io", "https://site6.io");
+                assertThat(firstPage).doesNotContain("https://site5.io<");
+
+                var olderCursor = urlRepository.findByName("https://site6.io").orElseThrow().getId();
+                assertThat(firstPage).contains("/urls?before=" + olderCursor);
+
+                var secondPage = client.get("/urls?before=" + olderCursor).body().string();
+                assertThat(secondPage).contains("https://site5.io", "https://site1.io<");
+                assertThat(secondPage).doesNotContain("https://site6.io");
+            });
+        }
+
+        @Test
+        void testIndexFollowsSavesAndChecks() throws Exception {
+            try (var site = new MockWebServer()) {
+                site.enqueue(new MockResponse().setResponseCode(404).setBody("<html></html>"));
+                site.start();
+                var name = site.url("/").toString().replaceAll("/$", "");
+                JavalinTest.test(app, (server, client) -> {
+                    assertThat(client.get("/urls").body().string()).doesNotContain(name);
+
+                    client.post("/urls", "url=" + name);
+                    var id = urlRepository.findByName(name).orElseThrow().getId();
+                    assertThat(client.get("/urls").body().string()).contains(name);
+
+                    client.post(Routes.urlChecksPath(id));
+                    assertThat(awaitCheck(id).getStatus()).isEqualTo(CheckStatus.DONE);
+                    assertThat(client.get("/urls").body().string()).containsPattern("<td>\\s*404\\s*</td>");
+                });
+            }
+        }
+
         @Test
         void testShow() throws SQLException {
             var url = new Url("http://test.io");
@@ -128,6 +318,214 @@ class AppTest {
         }
     }
 
+    @Nested
+    class ImportTest {
+
+        @Test
+        void testImportCountsAddedDuplicateAndInvalid() throws SQLException {
+            urlRepository.save(new Url("https://stored.io"));
+            var upload = String.join("\n",
+                    "https://first.io",
+                    "HTTPS://First.io/about",
+                    "\"https://second.io\",Second Inc",
+                    "not a url",
+                    "",
+                    "https://stored.io");
+            JavalinTest.test(app, (server, client) -> {
+                var response = client.post("/urls/import", upload);
+                assertThat(response.code()).isEqualTo(200);
+                assertThat(response.body().string())
+                        .contains("\"added\":2", "\"duplicate\":2", "\"invalid\":1");
+            });
+            assertThat(urlRepository.findByName("https://first.io")).isPresent();
+            assertThat(urlRepository.findByName("https://second.io")).isPresent();
+        }
+
+        @Test
+        void testImportShowsOnList() {
+            JavalinTest.test(app, (server, client) -> {
+                var etag = client.get("/urls").header("ETag");
+                client.post("/urls/import", "https://imported.io");
+                var list = client.get("/urls", request -> request.header("If-None-Match", etag));
+                assertThat(list.code()).isEqualTo(200);
+                assertThat(list.body().string()).contains("https://imported.io");
+            });
+        }
+    }
+
+    @Nested
+    class SearchTest {
+
+        private Url saveChecked(String name, String title, String description) throws SQLException {
+            var url = new Url(name);
+            urlRepository.save(url);
+            var check = new UrlCheck(200, title, null, description);
+            check.setUrlId(url.getId());
+            urlCheckRepository.save(check);
+            return url;
+        }
+
+        @Test
+        void testFindsByNameAndLatestContent() throws SQLException {
+            saveChecked("https://bakery.io", "Fresh bread daily", "Sourdough and rye");
+            saveChecked("https://garage.io", "Car repair", "Brakes, tyres and bakery deliveries");
+            saveChecked("https://florist.io", "Flowers", "Roses");
+            JavalinTest.test(app, (server, client) -> {
+                var body = client.get("/urls?q=bakery").body().string();
+                assertThat(body).contains("https://bakery.io", "https://garage.io");
+                assertThat(body).doesNotContain("https://florist.io");
+                assertThat(body.indexOf("https://bakery.io")).isLessThan(body.indexOf("https://garage.io"));
+
+                assertThat(client.get("/urls?q=sourd").body().string()).contains("https://bakery.io");
+                assertThat(client.get("/urls?q=roses+bread").body().string()).contains("Ничего не найдено");
+            });
+        }
+
+        @Test
+        void testFollowsNewChecks() throws Exception {
+            try (var site = new MockWebServer()) {
+                site.enqueue(new MockResponse().setBody(readFixture("index.html")));
+                site.start();
+                var url = saveChecked(site.url("/").toString().replaceAll("/$", ""), "Old catalogue", null);
+                JavalinTest.test(app, (server, client) -> {
+                    assertThat(client.get("/urls?q=catalogue").body().string()).contains(url.getName());
+                    client.post(Routes.urlChecksPath(url.getId()));
+                    assertThat(awaitCheck(url.getId()).getStatus()).isEqualTo(CheckStatus.DONE);
+                    assertThat(client.get("/urls?q=catalogue").body().string()).doesNotContain(url.getName());
+                    assertThat(client.get("/urls?q=miracle").body().string()).contains(url.getName());
+                });
+            }
+        }
+
+        @Test
+        void testPaginatesResults() throws SQLException {
+            for (int i = 1; i <= 25; i++) {
+                urlRepository.save(new Url("https://paged" + i + ".io"));
+            }
+            JavalinTest.test(app, (server, client) -> {
+                var firstPage = client.get("/urls?q=paged").body().string();
+                assertThat(firstPage).contains("https://paged25.io", "/urls?q=paged&amp;page=2");
+                var secondPage = client.get("/urls?q=paged&page=2").body().string();
+                assertThat(secondPage).contains("https://paged1.io<").doesNotContain("https://paged25.io");
+            });
+        }
+    }
+
+    @Nested
+    class PageCacheTest {
+
+        @Test
+        void testNotModifiedUntilDataChanges() {
+            JavalinTest.test(app, (server, client) -> {
+                var first = client.get("/urls");
+                var etag = first.header("ETag");
+                assertThat(etag).isNotBlank();
+
+                var cached = client.get("/urls", request -> request.header("If-None-Match", etag));
+                assertThat(cached.code()).isEqualTo(304);
+
+                client.post("/urls", "url=https://cached.io");
+
+                var changed = client.get("/urls", request -> request.header("If-None-Match", etag));
+                assertThat(changed.code()).isEqualTo(200);
+                assertThat(changed.header("ETag")).isNotEqualTo(etag);
+                assertThat(changed.body().string()).contains("https://cached.io");
+            });
+        }
+
+        @Test
+        void testShowPageChangesWithChecks() throws SQLException {
+            var url = new Url("https://versioned.io");
+            urlRepository.save(url);
+            JavalinTest.test(app, (server, client) -> {
+                var etag = client.get("/urls/" + url.getId()).header("ETag");
+                assertThat(client.get("/urls/" + url.getId(), request -> request.header("If-None-Match", etag))
+                        .code()).isEqualTo(304);
+            });
+        }
+    }
+
+    @Nested
+    class ApiTest {
+
+        @Test
+        void testExportUrlsAsJsonArray() throws SQLException {
+            urlRepository.save(new Url("https://export.io"));
+            JavalinTest.test(app, (server, client) -> {
+                var response = client.get("/api/urls");
+                assertThat(response.code()).isEqualTo(200);
+                assertThat(response.header("Content-Type")).startsWith("application/json");
+                var body = response.body().string();
+                assertThat(body).startsWith("[").endsWith("]").contains("\"name\":\"https://export.io\"");
+            });
+        }
+
+        @Test
+        void testExportChecksAsNdjson() throws SQLException {
+            var url = new Url("https://ndjson.io");
+            urlRepository.save(url);
+            for (int i = 0; i < 3; i++) {
+                var check = new UrlCheck(200, "title " + i, "h1", "description");
+                check.setUrlId(url.getId());
+                urlCheckRepository.save(check);
+            }
+            JavalinTest.test(app, (server, client) -> {
+                var response = client.get("/api/urls/" + url.getId() + "/checks?format=ndjson");
+                assertThat(response.code()).isEqualTo(200);
+                assertThat(response.header("Content-Type")).startsWith("application/x-ndjson");
+                var lines = response.body().string().lines().toList();
+                assertThat(lines).hasSize(3);
+                assertThat(lines.get(0)).startsWith("{").contains("\"title\":\"title 0\"");
+            });
+        }
+
+        @Test
+        void testSinceFilter() throws SQLException {
+            urlRepository.save(new Url("https://old-export.io"));
+            JavalinTest.test(app, (server, client) -> {
+                var future = client.get("/api/urls?since=2999-01-01").body().string();
+                assertThat(future).isEqualTo("[]");
+
+                assertThat(client.get("/api/urls?since=yesterday").code()).isEqualTo(400);
+                assertThat(client.get("/api/urls/999999/checks").code()).isEqualTo(404);
+            });
+        }
+    }
+
+    @Nested
+    class ReadReplicaTest {
+
+        private String readResource(String name) throws IOException {
+            try (var input = App.class.getClassLoader().getResourceAsStream(name)) {
+                return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+
+        @Test
+        void testListsComeFromReplicaUntilTheSessionWrites() throws Exception {
+            var replicaConfig = new HikariConfig();
+            replicaConfig.setJdbcUrl("jdbc:h2:mem:replica");
+            try (var replica = new HikariDataSource(replicaConfig)) {
+                try (var connection = replica.getConnection(); var statement = connection.createStatement()) {
+                    statement.execute(readResource("drop.sql"));
+                    statement.execute(readResource("h2/schema.sql"));
+                }
+                new UrlRepository(replica).save(new Url("https://replica-only.io"));
+                var routedApp = App.getApp(dataSource, replica);
+
+                // the /urls page is served from memory, so the routing is checked on the export
+                JavalinTest.test(routedApp, (server, client) -> {
+                    assertThat(client.get("/api/urls").body().string()).contains("https://replica-only.io");
+
+                    client.post("/urls", "url=https://primary-only.io");
+                    assertThat(client.get("/api/urls").body().string())
+                            .contains("https://primary-only.io")
+                            .doesNotContain("https://replica-only.io");
+                });
+            }
+        }
+    }
+
     @Nested
     class UrlCheckTest {
 
@@ -147,6 +545,9 @@ class AppTest {
 
                 client.post("/urls/" + actualUrl.getId() + "/checks");
 
+                var finishedCheck = awaitCheck(actualUrl.getId());
+                assertThat(finishedCheck.getStatus()).isEqualTo(CheckStatus.DONE);
+
                 var responce = client.get("/urls/" + actualUrl.getId());
                 assertThat(responce.code()).isEqualTo(200);
                 assertThat(responce.body().string()).contains(url);
@@ -159,7 +560,458 @@ class AppTest {
                 assertThat(actualCheckUrl.getTitle()).isEqualTo("Test page");
                 assertThat(actualCheckUrl.getH1()).isEqualTo("Do not expect a miracle, miracles yourself!");
                 assertThat(actualCheckUrl.getDescription()).contains("statements of great people");
+
+                var checkedUrl = urlRepository.findById(actualUrl.getId()).orElseThrow();
+                assertThat(checkedUrl.getLastCheckId()).isEqualTo(actualCheckUrl.getId());
+                assertThat(checkedUrl.getLastStatusCode()).isEqualTo(200);
+            });
+        }
+
+        @Test
+        void testFailsChecksLeftUnfinishedOnStartup(EnvironmentVariables env) throws Exception {
+            var url = new Url("https://unfinished.io");
+            urlRepository.save(url);
+            var ids = new ArrayList<Long>();
+            for (var status : List.of(CheckStatus.QUEUED, CheckStatus.RUNNING, CheckStatus.DONE)) {
+                var check = new UrlCheck(200, null, null, null);
+                check.setUrlId(url.getId());
+                check.setStatus(status);
+                urlCheckRepository.save(check);
+                ids.add(check.getId());
+            }
+
+            env.set("IS_DROP_DB_ENABLED", "false");
+            App.getApp(dataSource);
+
+            var stored = new ArrayList<UrlCheck>();
+            for (var id : ids) {
+                stored.add(urlCheckRepository.findById(id).orElseThrow());
+            }
+            assertThat(stored).extracting(UrlCheck::getStatus)
+                    .containsExactly(CheckStatus.FAILED, CheckStatus.FAILED, CheckStatus.DONE);
+            assertThat(stored.get(0).getError()).isEqualTo("Interrupted by a restart");
+        }
+
+        @Test
+        void testUpdateKeepsTheCreationTime() throws Exception {
+            var url = new Url("https://updated.io");
+            urlRepository.save(url);
+            var check = new UrlCheck(0, null, null, null);
+            check.setUrlId(url.getId());
+            check.setStatus(CheckStatus.QUEUED);
+            urlCheckRepository.save(check);
+            var createdAt = urlCheckRepository.findById(check.getId()).orElseThrow().getCreatedAt();
+
+            Thread.sleep(5);
+            check.setStatus(CheckStatus.DONE);
+            check.setStatusCode(200);
+            urlCheckRepository.update(check);
+
+            assertThat(urlCheckRepository.findById(check.getId()).orElseThrow().getCreatedAt()).isEqualTo(createdAt);
+            assertThat(urlRepository.findById(url.getId()).orElseThrow().getLastCheckAt()).isEqualTo(createdAt);
+        }
+    }
+
+    @Nested
+    class CheckEventsTest {
+
+        @Test
+        void testStreamsProgressOfStartedCheck() throws Exception {
+            try (var site = new MockWebServer()) {
+                site.enqueue(new MockResponse().setBody(readFixture("index.html")));
+                site.start();
+                var url = new Url(site.url("/").toString().replaceAll("/$", ""));
+                urlRepository.save(url);
+                JavalinTest.test(app, (server, client) -> {
+                    var request = new Request.Builder()
+                            .url(client.getOrigin() + Routes.urlEventsPath(url.getId()))
+                            .header("Accept", "text/event-stream")
+                            .build();
+                    try (var events = client.getOkHttp().newCall(request).execute()) {
+                        assertThat(events.header("Content-Type")).startsWith("text/event-stream");
+                        var stream = events.body().source();
+                        // the comment sent on subscribe tells that the stream is registered
+                        var line = stream.readUtf8LineStrict();
+                        while (!line.startsWith(":")) {
+                            line = stream.readUtf8LineStrict();
+                        }
+
+                        var response = client.post(Routes.urlChecksPath(url.getId()), null,
+                                builder -> builder.header("Accept", "application/json"));
+                        assertThat(response.code()).isEqualTo(202);
+                        assertThat(response.body().string()).contains("\"id\":");
+
+                        var received = new ArrayList<String>();
+                        do {
+                            line = stream.readUtf8LineStrict();
+                            received.add(line);
+                        } while (!line.contains("\"status\":\"DONE\""));
+                        assertThat(received).contains("event: check-started", "event: check-finished");
+                        assertThat(line).contains("\"title\":\"Test page\"", "\"urlId\":" + url.getId());
+                    }
+                });
+            }
+        }
+    }
+
+    @Nested
+    class BulkCheckTest {
+
+        @Test
+        void testCheckAll() throws Exception {
+            mockServer.enqueue(new MockResponse().setBody(readFixture("index.html")));
+            var url = new Url(mockServer.url("/").toString().replaceAll("/$", ""));
+            urlRepository.save(url);
+
+            JavalinTest.test(app, (server, client) -> {
+                assertThat(client.post("/urls/checks").code()).isEqualTo(200);
+
+                var finishedCheck = awaitCheck(url.getId());
+                assertThat(finishedCheck.getStatus()).isEqualTo(CheckStatus.DONE);
+                assertThat(finishedCheck.getTitle()).isEqualTo("Test page");
+
+                var progress = client.get("/urls/checks");
+                assertThat(progress.code()).isEqualTo(200);
+                assertThat(progress.body().string()).contains("\"total\":1");
+            });
+        }
+    }
+
+    @Nested
+    class RecheckTest {
+
+        private RecheckSettings.RecheckSettingsBuilder settings() {
+            return RecheckSettings.builder()
+                    .maxAge(Duration.ofHours(1))
+                    .jitter(Duration.ofMinutes(10))
+                    .tickInterval(Duration.ofSeconds(30))
+                    .batchSize(2)
+                    .maxPerTick(10)
+                    .maxBacklog(100)
+                    .maxWriteLatencyMillis(Long.MAX_VALUE);
+        }
+
+        @Test
+        void testRechecksStaleUrls() throws Exception {
+            var url = new Url(mockServer.url("/").toString().replaceAll("/$", ""));
+            urlRepository.save(url);
+            var clock = new MutableClock(Instant.now());
+            var checkService = new UrlCheckService(urlCheckRepository, createFetcher(Duration.ofSeconds(5)), 1, 10);
+            var scheduler = new RecheckScheduler(urlRepository, checkService, clock, settings().build());
+            try {
+                mockServer.enqueue(new MockResponse().setBody(readFixture("index.html")));
+                assertThat(scheduler.tick()).isEqualTo(1);
+                assertThat(awaitCheck(url.getId()).getStatus()).isEqualTo(CheckStatus.DONE);
+                assertThat(scheduler.tick()).isZero();
+
+                clock.advance(Duration.ofHours(1).minusSeconds(1));
+                assertThat(scheduler.tick()).isZero();
+
+                clock.advance(Duration.ofMinutes(11));
+                mockServer.enqueue(new MockResponse().setBody(readFixture("index.html")));
+                assertThat(scheduler.tick()).isEqualTo(1);
+                assertThat(awaitCheck(url.getId()).getStatus()).isEqualTo(CheckStatus.DONE);
+                assertThat(urlCheckRepository.findByUrlId(url.getId())).hasSize(2);
+            } finally {
+                checkService.shutdown();
+            }
+        }
+
+        @Test
+        void testPausesUnderBacklog() throws Exception {
+            var url = new Url("https://backlogged.io");
+            urlRepository.save(url);
+            var checkService = new UrlCheckService(urlCheckRepository, createFetcher(Duration.ofSeconds(5)), 1, 10);
+            var scheduler = new RecheckScheduler(urlRepository, checkService, Clock.systemUTC(),
+                    settings().maxBacklog(0).build());
+            try {
+                assertThat(scheduler.tick()).isZero();
+                assertThat(urlCheckRepository.findByUrlId(url.getId())).isEmpty();
+            } finally {
+                checkService.shutdown();
+            }
+        }
+    }
+
+    @Nested
+    class FetchTest {
+
+        @Test
+        void testRecordsTimeAndBytes() throws Exception {
+            var server = new MockWebServer();
+            var body = readFixture("index.html");
+            server.enqueue(new MockResponse().setBody(body));
+            server.start();
+            try (var fetcher = createFetcher(Duration.ofSeconds(5))) {
+                var result = fetcher.fetch(server.url("/").toString(), null, null);
+                assertThat(result.getStatusCode()).isEqualTo(200);
+                assertThat(result.getPage().getTitle()).isEqualTo("Test page");
+                assertThat(result.getBytesRead()).isEqualTo(body.getBytes(StandardCharsets.UTF_8).length);
+                assertThat(result.getFetchMillis()).isNotNegative();
+            } finally {
+                server.shutdown();
+            }
+        }
+
+        @Test
+        void testGivesUpOnSlowBody() throws Exception {
+            var server = new MockWebServer();
+            server.enqueue(new MockResponse().setBody("<html><body>" + "x".repeat(10_000) + "</body></html>")
+                    .throttleBody(100, 1, TimeUnit.SECONDS));
+            server.start();
+            try (var fetcher = createFetcher(Duration.ofMillis(500))) {
+                long start = System.nanoTime();
+                assertThatThrownBy(() -> fetcher.fetch(server.url("/").toString(), null, null))
+                        .isInstanceOf(SocketTimeoutException.class);
+                assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+            } finally {
+                server.shutdown();
+            }
+        }
+
+        @Test
+        void testFailsFastWhileCircuitIsOpen() throws Exception {
+            var server = new MockWebServer();
+            server.start();
+            var url = server.url("/").toString();
+            server.shutdown();
+            try (var fetcher = createFetcher(Duration.ofSeconds(5))) {
+                for (int i = 0; i < 2; i++) {
+                    assertThatThrownBy(() -> fetcher.fetch(url, null, null))
+                            .isInstanceOf(IOException.class)
+                            .isNotInstanceOf(HostUnavailableException.class);
+                }
+                assertThatThrownBy(() -> fetcher.fetch(url, null, null))
+                        .isInstanceOf(HostUnavailableException.class);
+            }
+        }
+
+        @Test
+        void testStopsAfterRedirectLimit() throws Exception {
+            var server = new MockWebServer();
+            for (int i = 0; i < 3; i++) {
+                server.enqueue(new MockResponse().setResponseCode(302).setHeader("Location", "/next" + i));
+            }
+            server.start();
+            try (var fetcher = createFetcher(Duration.ofSeconds(5))) {
+                assertThatThrownBy(() -> fetcher.fetch(server.url("/").toString(), null, null))
+                        .isInstanceOf(IOException.class);
+            } finally {
+                server.shutdown();
+            }
+        }
+    }
+
+    @Nested
+    class ConditionalFetchTest {
+
+        @Test
+        void testNotModifiedReusesPreviousCheck() throws Exception {
+            var lastModified = "Wed, 21 Oct 2015 07:28:00 GMT";
+            var server = new MockWebServer();
+            server.enqueue(new MockResponse().setBody(readFixture("index.html"))
+                    .setHeader("ETag", "\"v1\"")
+                    .setHeader("Last-Modified", lastModified));
+            server.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""));
+            server.start();
+            var checkService = new UrlCheckService(urlCheckRepository, createFetcher(Duration.ofSeconds(5)), 1, 10);
+            try {
+                var url = new Url(server.url("/").toString().replaceAll("/$", ""));
+                urlRepository.save(url);
+
+                var first = checkService.performCheck(url);
+                first.setUrlId(url.getId());
+                urlCheckRepository.save(first);
+                assertThat(server.takeRequest().getHeader("If-None-Match")).isNull();
+                assertThat(first.getEtag()).isEqualTo("\"v1\"");
+
+                var second = checkService.performCheck(urlRepository.findById(url.getId()).orElseThrow());
+                var request = server.takeRequest();
+                assertThat(request.getHeader("If-None-Match")).isEqualTo("\"v1\"");
+                assertThat(request.getHeader("If-Modified-Since")).isEqualTo(lastModified);
+                assertThat(second.isNotModified()).isTrue();
+                assertThat(second.getStatusCode()).isEqualTo(200);
+                assertThat(second.getTitle()).isEqualTo("Test page");
+                assertThat(second.getLastModified()).isEqualTo(lastModified);
+            } finally {
+                checkService.shutdown();
+                server.shutdown();
+            }
+        }
+    }
+
+    @Nested
+    class CheckContentTest {
+
+        @Test
+        void testSameContentIsStoredOnce() throws Exception {
+            var url = new Url("https://static.io");
+            urlRepository.save(url);
+            for (int i = 0; i < 3; i++) {
+                var check = new UrlCheck(200, "Same title", "Same h1", "Same description");
+                check.setUrlId(url.getId());
+                urlCheckRepository.save(check);
+            }
+            var changed = new UrlCheck(200, "New title", "Same h1", "Same description");
+            changed.setUrlId(url.getId());
+            urlCheckRepository.save(changed);
+
+            var checks = urlCheckRepository.findByUrlId(url.getId());
+            assertThat(checks).hasSize(4);
+            assertThat(checks).extracting(UrlCheck::getTitle)
+                    .containsExactly("New title", "Same title", "Same title", "Same title");
+            assertThat(checks).extracting(UrlCheck::getContentId).doesNotContainNull();
+            assertThat(checks.stream().map(UrlCheck::getContentId).distinct()).hasSize(2);
+        }
+
+        @Test
+        void testMigratesLegacyRows() throws Exception {
+            var url = new Url("https://legacy.io");
+            urlRepository.save(url);
+            try (var conn = dataSource.getConnection(); var statement = conn.createStatement()) {
+                statement.executeUpdate("INSERT INTO url_checks (url_id, status_code, title, h1, description,"
+                        + " created_at) VALUES (" + url.getId() + ", 200, 'Old', 'Old h1', 'Old description',"
+                        + " CURRENT_TIMESTAMP)");
+            }
+
+            assertThat(urlCheckRepository.migrateContents()).isEqualTo(1);
+            assertThat(urlCheckRepository.migrateContents()).isZero();
+
+            var check = urlCheckRepository.findByUrlId(url.getId()).get(0);
+            assertThat(check.getContentId()).isNotNull();
+            assertThat(check.getTitle()).isEqualTo("Old");
+            assertThat(check.getDescription()).isEqualTo("Old description");
+        }
+    }
+
+    @Nested
+    class RetentionTest {
+
+        private UrlCheck saveCheck(Url url, int statusCode, String title) throws SQLException {
+            var check = new UrlCheck(statusCode, title, "h1", "description");
+            check.setUrlId(url.getId());
+            urlCheckRepository.save(check);
+            return check;
+        }
+
+        private void moveTo(UrlCheck check, Timestamp createdAt) throws SQLException {
+            try (var conn = dataSource.getConnection();
+                 var statement = conn.prepareStatement("UPDATE url_checks SET created_at = ? WHERE id = ?")) {
+                statement.setTimestamp(1, createdAt);
+                statement.setLong(2, check.getId());
+                statement.executeUpdate();
+            }
+        }
+
+        @Test
+        void testRollsUpOldChecks() throws Exception {
+            var url = new Url("https://old.io");
+            urlRepository.save(url);
+            var oldDay = LocalDate.now().minusDays(40);
+            moveTo(saveCheck(url, 200, "Old title"), Timestamp.valueOf(oldDay.atTime(10, 0)));
+            moveTo(saveCheck(url, 500, "Error page"), Timestamp.valueOf(oldDay.atTime(11, 0)));
+            var latest = saveCheck(url, 200, "Fresh title");
+            moveTo(latest, Timestamp.valueOf(oldDay.atTime(12, 0)));
+
+            var rollupRepository = new UrlCheckRollupRepository(dataSource);
+            var job = new RetentionJob(rollupRepository, Clock.systemDefaultZone(), 30, 1, Duration.ofHours(1));
+            assertThat(job.run()).isEqualTo(2);
+            assertThat(job.run()).isZero();
+
+            assertThat(urlCheckRepository.findByUrlId(url.getId()))
+                    .extracting(UrlCheck::getId)
+                    .containsExactly(latest.getId());
+            var rollups = rollupRepository.findByUrlId(url.getId(), 10);
+            assertThat(rollups).hasSize(1);
+            var rollup = rollups.get(0);
+            assertThat(rollup.getCheckDate()).isEqualTo(oldDay);
+            assertThat(rollup.getCheckCount()).isEqualTo(2);
+            assertThat(rollup.getStatus2xx()).isEqualTo(1);
+            assertThat(rollup.getStatus5xx()).isEqualTo(1);
+            assertThat(rollup.getFirstStatusCode()).isEqualTo(200);
+            assertThat(rollup.getLastStatusCode()).isEqualTo(500);
+            assertThat(rollup.getLastTitle()).isEqualTo("Error page");
+
+            JavalinTest.test(app, (server, client) -> {
+                var body = client.get("/urls/" + url.getId()).body().string();
+                assertThat(body).contains("История по дням").contains("Error page").contains("Fresh title");
+            });
+        }
+    }
+
+    @Nested
+    class CheckWriterTest {
+
+        @Test
+        void testBatchedSave() throws Exception {
+            var url = new Url("https://batched.io");
+            urlRepository.save(url);
+
+            var futures = new ArrayList<CompletableFuture<UrlCheck>>();
+            try (var writer = new BatchingCheckWriter(urlCheckRepository, 10, 50, 100)) {
+                for (int i = 0; i < 25; i++) {
+                    var check = new UrlCheck(200 + i, "title " + i, "h1", "description");
+                    check.setUrlId(url.getId());
+                    futures.add(CompletableFuture.supplyAsync(() -> check).thenCompose(writer::submit));
+                }
+                CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+            }
+
+            assertThat(futures).allSatisfy(future -> assertThat(future.join().getId()).isPositive());
+            assertThat(urlCheckRepository.findByUrlId(url.getId())).hasSize(25);
+
+            var latestId = futures.stream().mapToLong(future -> future.join().getId()).max().orElseThrow();
+            assertThat(urlRepository.findById(url.getId()).orElseThrow().getLastCheckId()).isEqualTo(latestId);
+        }
+
+        @Test
+        void testFailingListenerDoesNotSaveTwice() throws Exception {
+            var url = new Url("https://listener.io");
+            urlRepository.save(url);
+            var repository = new UrlCheckRepository(dataSource);
+            repository.addSaveListener(check -> {
+                throw new IllegalStateException("listener failed");
             });
+
+            var futures = new ArrayList<CompletableFuture<UrlCheck>>();
+            try (var writer = new BatchingCheckWriter(repository, 10, 50, 100)) {
+                for (int i = 0; i < 3; i++) {
+                    var check = new UrlCheck(200, "title " + i, "h1", "description");
+                    check.setUrlId(url.getId());
+                    futures.add(writer.submit(check));
+                }
+                CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+            }
+
+            assertThat(futures).allSatisfy(future -> assertThat(future.join().getId()).isPositive());
+            assertThat(urlCheckRepository.findByUrlId(url.getId())).hasSize(3);
+        }
+
+        @Test
+        void testSubmitAfterCloseFails() {
+            var writer = new BatchingCheckWriter(urlCheckRepository, 10, 50, 100);
+            writer.close();
+            var check = new UrlCheck(200, "late", "h1", "description");
+            assertThatThrownBy(writer.submit(check)::join).isInstanceOf(CompletionException.class);
+        }
+
+        @Test
+        void testRowErrorsAreReportedPerCheck() throws Exception {
+            var url = new Url("https://partial.io");
+            urlRepository.save(url);
+
+            try (var writer = new BatchingCheckWriter(urlCheckRepository, 10, 200, 100)) {
+                var good = new UrlCheck(200, "ok", "h1", "description");
+                good.setUrlId(url.getId());
+                var orphan = new UrlCheck(200, "orphan", "h1", "description");
+                orphan.setUrlId(-1);
+
+                var goodFuture = writer.submit(good);
+                var orphanFuture = writer.submit(orphan);
+
+                assertThat(goodFuture.join().getId()).isPositive();
+                assertThatThrownBy(orphanFuture::join).isInstanceOf(CompletionException.class);
+            }
         }
     }
 }
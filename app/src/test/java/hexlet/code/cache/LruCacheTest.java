@@ -0,0 +1,65 @@
+package hexlet.code.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LruCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void testHitsAndMisses() {
+        var cache = new LruCache<Long, String>(10, Duration.ofMinutes(1), now::get);
+
+        assertThat(cache.get(1L)).isNull();
+        cache.put(1L, "one");
+        assertThat(cache.get(1L)).isEqualTo("one");
+
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        var cache = new LruCache<Long, String>(2, Duration.ofMinutes(1), now::get);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.get(1L);
+        cache.put(3L, "three");
+
+        assertThat(cache.get(2L)).isNull();
+        assertThat(cache.get(1L)).isEqualTo("one");
+        assertThat(cache.get(3L)).isEqualTo("three");
+        assertThat(cache.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    void testExpiresAfterTtl() {
+        var cache = new LruCache<Long, String>(10, Duration.ofSeconds(5), now::get);
+        cache.put(1L, "one");
+
+        now.addAndGet(Duration.ofSeconds(4).toNanos());
+        assertThat(cache.get(1L)).isEqualTo("one");
+
+        now.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertThat(cache.get(1L)).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void testInvalidateAndDisabled() {
+        var cache = new LruCache<Long, String>(10, Duration.ofMinutes(1), now::get);
+        cache.put(1L, "one");
+        cache.invalidate(1L);
+        assertThat(cache.get(1L)).isNull();
+
+        var disabled = LruCache.<Long, String>disabled();
+        disabled.put(1L, "one");
+        assertThat(disabled.get(1L)).isNull();
+        assertThat(disabled.getMisses()).isEqualTo(1);
+    }
+}
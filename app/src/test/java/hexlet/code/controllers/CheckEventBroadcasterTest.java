@@ -0,0 +1,76 @@
+package hexlet.code.controllers;
+
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.UrlCheck;
+import io.javalin.Javalin;
+import io.javalin.testtools.JavalinTest;
+import okhttp3.Request;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CheckEventBroadcasterTest {
+
+    private static UrlCheck check(long urlId, String title) {
+        var check = new UrlCheck(200, title, null, null);
+        check.setId(urlId);
+        check.setUrlId(urlId);
+        check.setStatus(CheckStatus.DONE);
+        return check;
+    }
+
+    private static void awaitSubscribers(CheckEventBroadcaster broadcaster, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (broadcaster.getSubscriberCount() != count) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Expected " + count + " event stream clients, got "
+                        + broadcaster.getSubscriberCount());
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void testDropsAClientThatStopsReading() {
+        // one sender and a queue that never fills, so only the write timeout can free the sender
+        var broadcaster = new CheckEventBroadcaster(1, 100_000, Duration.ofMinutes(1), Duration.ofMillis(500));
+        var app = Javalin.create().sse("/events", broadcaster::subscribeToList);
+        JavalinTest.test(app, (server, client) -> {
+            try (var stalled = new Socket()) {
+                stalled.setReceiveBufferSize(1024);
+                stalled.connect(new InetSocketAddress("localhost", server.port()));
+                stalled.getOutputStream().write(("GET /events HTTP/1.1\r\nHost: localhost\r\n"
+                        + "Accept: text/event-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                awaitSubscribers(broadcaster, 1);
+                var title = "x".repeat(100_000);
+                for (int i = 0; i < 200; i++) {
+                    broadcaster.publish(check(1, title));
+                }
+
+                var request = new Request.Builder()
+                        .url(client.getOrigin() + "/events")
+                        .header("Accept", "text/event-stream")
+                        .build();
+                try (var events = client.getOkHttp().newCall(request).execute()) {
+                    var stream = events.body().source();
+                    var line = stream.readUtf8LineStrict();
+                    while (!line.startsWith(":")) {
+                        line = stream.readUtf8LineStrict();
+                    }
+                    broadcaster.publish(check(2, "Fresh page"));
+                    while (!line.contains("Fresh page")) {
+                        line = stream.readUtf8LineStrict();
+                    }
+                    assertThat(line).contains("\"urlId\":2");
+                    awaitSubscribers(broadcaster, 1);
+                }
+            }
+        });
+        broadcaster.close();
+    }
+}
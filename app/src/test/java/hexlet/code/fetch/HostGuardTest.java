@@ -0,0 +1,109 @@
+package hexlet.code.fetch;
+
+import hexlet.code.model.CircuitState;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HostGuardTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    private HostGuard guard(int requestsPerMinute, int burst, Duration maxWait) {
+        return new HostGuard(HostGuardSettings.builder()
+                .requestsPerMinute(requestsPerMinute)
+                .burst(burst)
+                .maxWait(maxWait)
+                .failureThreshold(3)
+                .coolDown(Duration.ofSeconds(30))
+                .build(), now::get);
+    }
+
+    private void advance(Duration duration) {
+        now.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    void testBurstThenPacedSlots() throws HostUnavailableException {
+        var guard = guard(60, 3, Duration.ofSeconds(10));
+        for (int i = 0; i < 3; i++) {
+            assertThat(guard.reserve("a.io")).isZero();
+        }
+        assertThat(guard.reserve("a.io")).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+        assertThat(guard.reserve("a.io")).isEqualTo(TimeUnit.SECONDS.toNanos(2));
+        assertThat(guard.reserve("b.io")).isZero();
+
+        advance(Duration.ofSeconds(10));
+        assertThat(guard.reserve("a.io")).isZero();
+    }
+
+    @Test
+    void testRejectsWaitsLongerThanMax() throws HostUnavailableException {
+        var guard = guard(60, 1, Duration.ofMillis(1500));
+        assertThat(guard.reserve("a.io")).isZero();
+        assertThat(guard.reserve("a.io")).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+        assertThatThrownBy(() -> guard.reserve("a.io")).isInstanceOf(HostUnavailableException.class);
+    }
+
+    @Test
+    void testCircuitOpensThenProbes() throws HostUnavailableException {
+        var guard = guard(0, 1, Duration.ZERO);
+        for (int i = 0; i < 3; i++) {
+            assertThat(guard.reserve("down.io")).isZero();
+            guard.recordFailure("down.io");
+        }
+        assertThat(guard.getStatus("down.io").getState()).isEqualTo(CircuitState.OPEN);
+        assertThat(guard.getStatus("down.io").getRetryAt()).isNotNull();
+        assertThatThrownBy(() -> guard.reserve("down.io")).isInstanceOf(HostUnavailableException.class);
+        assertThat(guard.reserve("up.io")).isZero();
+
+        advance(Duration.ofSeconds(31));
+        assertThat(guard.reserve("down.io")).isZero();
+        assertThat(guard.getStatus("down.io").getState()).isEqualTo(CircuitState.HALF_OPEN);
+        assertThatThrownBy(() -> guard.reserve("down.io")).isInstanceOf(HostUnavailableException.class);
+
+        guard.recordFailure("down.io");
+        assertThat(guard.getStatus("down.io").getState()).isEqualTo(CircuitState.OPEN);
+
+        advance(Duration.ofSeconds(31));
+        assertThat(guard.reserve("down.io")).isZero();
+        guard.recordSuccess("down.io");
+        assertThat(guard.getStatus("down.io").getState()).isEqualTo(CircuitState.CLOSED);
+        assertThat(guard.getStatus("down.io").getConsecutiveFailures()).isZero();
+    }
+
+    @Test
+    void testSuccessResetsFailureCount() throws HostUnavailableException {
+        var guard = guard(0, 1, Duration.ZERO);
+        guard.recordFailure("flaky.io");
+        guard.recordFailure("flaky.io");
+        guard.recordSuccess("flaky.io");
+        guard.recordFailure("flaky.io");
+        assertThat(guard.getStatus("flaky.io").getState()).isEqualTo(CircuitState.CLOSED);
+        assertThat(guard.getStatus("flaky.io").getConsecutiveFailures()).isEqualTo(1);
+    }
+
+    @Test
+    void testForgetsOnlyHostsIdleForACleanupInterval() throws HostUnavailableException {
+        var guard = guard(60, 1, Duration.ofSeconds(10));
+        guard.reserve("idle.io");
+        advance(Duration.ofSeconds(30));
+        guard.reserve("recent.io");
+        advance(Duration.ofSeconds(40));
+        guard.reserve("new.io");
+
+        assertThat(guard.getTrackedHosts()).isEqualTo(2);
+        assertThat(guard.reserve("recent.io")).isZero();
+    }
+
+    @Test
+    void testHostOf() {
+        assertThat(HostGuard.hostOf("https://Example.com:8080/path")).isEqualTo("example.com");
+        assertThat(HostGuard.hostOf("not a url")).isEqualTo("not a url");
+    }
+}
@@ -0,0 +1,108 @@
+package hexlet.code.fetch;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HtmlExtractorTest {
+
+    private static ExtractedPage extract(String html, Charset charset, String contentType, int maxBytes)
+            throws IOException {
+        var extractor = new HtmlExtractor(maxBytes);
+        return extractor.extract(new ByteArrayInputStream(html.getBytes(charset)), contentType);
+    }
+
+    private static ExtractedPage extract(String html) throws IOException {
+        return extract(html, StandardCharsets.UTF_8, "text/html", 1024 * 1024);
+    }
+
+    @Test
+    void testFixture() throws IOException {
+        var html = Files.readString(Paths.get("src", "test", "resources", "fixtures", "index.html"));
+        var page = extract(html);
+
+        assertThat(page.getTitle()).isEqualTo("Test page");
+        assertThat(page.getH1()).isEqualTo("Do not expect a miracle, miracles yourself!");
+        assertThat(page.getDescription()).isEqualTo("statements of great people");
+        assertThat(page.isTruncated()).isFalse();
+    }
+
+    @Test
+    void testMarkupInsideValues() throws IOException {
+        var html = "<html><head><!-- <title>commented</title> -->"
+                + "<script>var s = '<h1>script</h1>';</script>"
+                + "<TITLE>  Tom &amp;\n Jerry </TITLE>"
+                + "<meta content='a &quot;quoted&quot; > text' name=\"Description\"></head>"
+                + "<body><h1 class=\"x\">Hello <b id='y'>big</b><br>world</h1><h1>second</h1></body></html>";
+        var page = extract(html);
+
+        assertThat(page.getTitle()).isEqualTo("Tom & Jerry");
+        assertThat(page.getH1()).isEqualTo("Hello big world");
+        assertThat(page.getDescription()).isEqualTo("a \"quoted\" > text");
+    }
+
+    @Test
+    void testMissingValues() throws IOException {
+        var page = extract("<html><body><p>nothing here</p></body></html>");
+
+        assertThat(page.getTitle()).isEmpty();
+        assertThat(page.getH1()).isEmpty();
+        assertThat(page.getDescription()).isEmpty();
+    }
+
+    @Test
+    void testStopsAtByteLimit() throws IOException {
+        var html = "<html><head><title>Big page</title></head><body>" + "x".repeat(10_000) + "<h1>late</h1></body>";
+        var page = extract(html, StandardCharsets.UTF_8, null, 1000);
+
+        assertThat(page.getTitle()).isEqualTo("Big page");
+        assertThat(page.getH1()).isEmpty();
+        assertThat(page.getBytesRead()).isEqualTo(1000);
+        assertThat(page.isTruncated()).isTrue();
+    }
+
+    @Test
+    void testBodyOfExactlyTheLimitIsNotTruncated() throws IOException {
+        var html = "<html><head><title>Small page</title></head><body>";
+        var page = extract(html, StandardCharsets.UTF_8, null, html.length());
+
+        assertThat(page.getBytesRead()).isEqualTo(html.length());
+        assertThat(page.isTruncated()).isFalse();
+        assertThat(extract(html + "x", StandardCharsets.UTF_8, null, html.length()).isTruncated()).isTrue();
+    }
+
+    @Test
+    void testCapsTitleFullOfTagFragments() throws IOException {
+        var page = extract("<title>" + "<</tit".repeat(50_000) + "</title>");
+
+        assertThat(page.getTitle()).hasSizeLessThanOrEqualTo(64 * 1024).startsWith("<</tit<</tit");
+    }
+
+    @Test
+    void testStopsWhenAllValuesFound() throws IOException {
+        var html = "<meta name=description content=d><title>t</title><h1>h</h1>" + "x".repeat(100_000);
+        var page = extract(html);
+
+        assertThat(page.getH1()).isEqualTo("h");
+        assertThat(page.getBytesRead()).isLessThan(100_000);
+    }
+
+    @Test
+    void testCharsetDetection() throws IOException {
+        var html = "<html><head><meta charset=\"windows-1251\"><title>Проверка</title></head></html>";
+        var cp1251 = Charset.forName("windows-1251");
+
+        assertThat(extract(html, cp1251, "text/html", 1024).getTitle()).isEqualTo("Проверка");
+        assertThat(extract(html, cp1251, "text/html; charset=windows-1251", 1024).getTitle())
+                .isEqualTo("Проверка");
+        assertThat(extract(html.replace("windows-1251", "utf-8"), StandardCharsets.UTF_8, null, 1024).getTitle())
+                .isEqualTo("Проверка");
+    }
+}
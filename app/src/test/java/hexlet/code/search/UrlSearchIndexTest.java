@@ -0,0 +1,74 @@
+package hexlet.code.search;
+
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.UrlCheck;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UrlSearchIndexTest {
+
+    private static UrlCheck check(long id, long urlId, String title) {
+        var check = new UrlCheck(200, title, null, null);
+        check.setId(id);
+        check.setUrlId(urlId);
+        return check;
+    }
+
+    @Test
+    void testTerms() {
+        assertThat(UrlSearchIndex.terms("https://Ru.Hexlet.io/courses?x=1 — Курсы, курсы"))
+                .containsExactly("https", "ru", "hexlet", "io", "courses", "x", "1", "курсы");
+        assertThat(UrlSearchIndex.terms(null)).isEmpty();
+    }
+
+    @Test
+    void testRanksNameAboveTextAndExactAbovePrefix() {
+        var index = new UrlSearchIndex();
+        index.put(1, "https://news.io", 10L, "Daily weather report");
+        index.put(2, "https://weather.io", 11L, "Forecasts");
+        index.put(3, "https://weathering.io", 12L, null);
+        index.put(4, "https://other.io", 13L, "Nothing here");
+
+        assertThat(index.search(UrlSearchIndex.terms("weather"), 10, 0)).containsExactly(2L, 3L, 1L);
+        assertThat(index.search(UrlSearchIndex.terms("weather report"), 10, 0)).containsExactly(1L);
+        assertThat(index.search(UrlSearchIndex.terms("weather"), 1, 1)).containsExactly(3L);
+        assertThat(index.search(UrlSearchIndex.terms("missing"), 10, 0)).isEmpty();
+        assertThat(index.search(List.of(), 10, 0)).isEmpty();
+    }
+
+    @Test
+    void testKeepsTheTextOfTheLatestCheck() {
+        var index = new UrlSearchIndex();
+        index.put(1, "https://shop.io", null, null);
+        index.update(check(5, 1, "Spring sale"));
+        index.update(check(3, 1, "Winter sale"));
+        var failed = check(7, 1, "Broken");
+        failed.setStatus(CheckStatus.FAILED);
+        index.update(failed);
+
+        assertThat(index.search(UrlSearchIndex.terms("spring"), 10, 0)).containsExactly(1L);
+        assertThat(index.search(UrlSearchIndex.terms("winter"), 10, 0)).isEmpty();
+        assertThat(index.search(UrlSearchIndex.terms("broken"), 10, 0)).isEmpty();
+        assertThat(index.search(UrlSearchIndex.terms("shop"), 10, 0)).containsExactly(1L);
+
+        index.update(check(9, 1, "Summer"));
+        assertThat(index.search(UrlSearchIndex.terms("spring"), 10, 0)).isEmpty();
+        assertThat(index.search(UrlSearchIndex.terms("summer shop"), 10, 0)).containsExactly(1L);
+    }
+
+    @Test
+    void testCheckBeforeUrlIsLoaded() {
+        var index = new UrlSearchIndex();
+        index.update(check(5, 1, "Fresh"));
+        index.put(1, "https://late.io", 4L, "Stale");
+        index.markLoaded(1);
+
+        assertThat(index.search(UrlSearchIndex.terms("late fresh"), 10, 0)).containsExactly(1L);
+        assertThat(index.search(UrlSearchIndex.terms("stale"), 10, 0)).isEmpty();
+        assertThat(index.getLoadedUpTo()).isEqualTo(1);
+        assertThat(index.size()).isEqualTo(1);
+    }
+}
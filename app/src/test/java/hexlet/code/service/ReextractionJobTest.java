@@ -0,0 +1,112 @@
+package hexlet.code.service;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.fetch.HtmlExtractor;
+import hexlet.code.model.CapturedPage;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repo.UrlCheckRepository;
+import hexlet.code.repo.UrlRepository;
+import hexlet.code.snapshot.PageSnapshotStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReextractionJobTest {
+
+    @TempDir
+    Path directory;
+
+    private HikariDataSource dataSource;
+    private UrlRepository urlRepository;
+    private UrlCheckRepository urlCheckRepository;
+    private PageSnapshotStore snapshotStore;
+
+    private static String readResource(String name) throws IOException {
+        try (var input = ReextractionJobTest.class.getClassLoader().getResourceAsStream(name)) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] html(String title, String h1) {
+        return ("<html><head><title>" + title + "</title></head><body><h1>" + h1 + "</h1></body></html>")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        var config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:reextraction");
+        dataSource = new HikariDataSource(config);
+        try (var connection = dataSource.getConnection(); var statement = connection.createStatement()) {
+            statement.execute(readResource("drop.sql"));
+            statement.execute(readResource("h2/schema.sql"));
+        }
+        urlRepository = new UrlRepository(dataSource);
+        urlCheckRepository = new UrlCheckRepository(dataSource);
+        snapshotStore = PageSnapshotStore.open(directory, 1024 * 1024, 0);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        snapshotStore.close();
+        dataSource.close();
+    }
+
+    private UrlCheck saveCheck(Url url, String title, String h1, byte[] page) throws SQLException, IOException {
+        var check = new UrlCheck(200, title, h1, "");
+        check.setUrlId(url.getId());
+        urlCheckRepository.save(check);
+        snapshotStore.append(check.getId(), url.getId(), CapturedPage.compress("text/html", page));
+        return check;
+    }
+
+    private String searchText(Url url) throws SQLException {
+        try (var connection = dataSource.getConnection();
+             var statement = connection.prepareStatement("SELECT search_text FROM urls WHERE id = ?")) {
+            statement.setLong(1, url.getId());
+            var resultSet = statement.executeQuery();
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    @Test
+    void testStoresOnlyChangedValues() throws Exception {
+        var first = new Url("https://first.io");
+        var second = new Url("https://second.io");
+        urlRepository.save(first);
+        urlRepository.save(second);
+        var older = saveCheck(first, "Broken", "Broken", html("Shop &amp; more", "Welcome"));
+        var latest = saveCheck(first, "Broken", "Broken", html("Shop &amp; more", "Welcome"));
+        var unchanged = saveCheck(second, "Blog", "Posts", html("Blog", "Posts"));
+        List<UrlCheck> notified = new ArrayList<>();
+        urlCheckRepository.addSaveListener(notified::add);
+
+        var job = new ReextractionJob(snapshotStore, new HtmlExtractor(1024 * 1024), urlCheckRepository, 2, 1);
+        assertThat(job.run()).isEqualTo(2);
+
+        for (var check : List.of(older, latest)) {
+            var stored = urlCheckRepository.findById(check.getId()).orElseThrow();
+            assertThat(stored.getTitle()).isEqualTo("Shop & more");
+            assertThat(stored.getH1()).isEqualTo("Welcome");
+            assertThat(stored.getStatusCode()).isEqualTo(200);
+        }
+        assertThat(urlCheckRepository.findById(unchanged.getId()).orElseThrow().getTitle()).isEqualTo("Blog");
+        assertThat(searchText(first)).isEqualTo("Shop & more Welcome ");
+        assertThat(notified).extracting(UrlCheck::getId).containsExactlyInAnyOrder(older.getId(), latest.getId());
+
+        assertThat(job.run()).isZero();
+    }
+}
@@ -0,0 +1,202 @@
+package hexlet.code.service;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.cache.LruCache;
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.model.UrlRows;
+import hexlet.code.repo.UrlRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UrlListSnapshotTest {
+
+    private HikariDataSource dataSource;
+    private UrlRepository urlRepository;
+    private final List<Long> ids = new ArrayList<>();
+
+    private static String readResource(String name) throws IOException {
+        try (var input = UrlListSnapshotTest.class.getClassLoader().getResourceAsStream(name)) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static List<Long> idsOf(UrlRows rows) {
+        var result = new ArrayList<Long>();
+        for (int i = 0; i < rows.size(); i++) {
+            result.add(rows.getId(i));
+        }
+        return result;
+    }
+
+    private static UrlCheck check(long id, long urlId, int statusCode, CheckStatus status) {
+        var check = new UrlCheck(statusCode, null, null, null);
+        check.setId(id);
+        check.setUrlId(urlId);
+        check.setStatus(status);
+        check.setCreatedAt(new Timestamp(id * 1000));
+        return check;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * The data source with {@code afterQuery} run each time a connection is closed, which is right after
+     * a repository has read its rows and before it returns them.
+     */
+    private DataSource withHook(Runnable afterQuery) {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {DataSource.class},
+                (proxy, method, args) -> {
+                    var result = invoke(dataSource, method, args);
+                    if (!method.getName().equals("getConnection")) {
+                        return result;
+                    }
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Connection.class},
+                            (connectionProxy, connectionMethod, connectionArgs) -> {
+                                var value = invoke(result, connectionMethod, connectionArgs);
+                                if (connectionMethod.getName().equals("close")) {
+                                    afterQuery.run();
+                                }
+                                return value;
+                            });
+                });
+    }
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        var config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:snapshot");
+        dataSource = new HikariDataSource(config);
+        try (var connection = dataSource.getConnection(); var statement = connection.createStatement()) {
+            statement.execute(readResource("drop.sql"));
+            statement.execute(readResource("h2/schema.sql"));
+        }
+        urlRepository = new UrlRepository(dataSource);
+        for (int i = 1; i <= 5; i++) {
+            var url = new Url("https://site" + i + ".io");
+            urlRepository.save(url);
+            ids.add(url.getId());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    void testPagesNewestFirstInBothDirections() throws SQLException {
+        var snapshot = new UrlListSnapshot(urlRepository);
+
+        var first = snapshot.page(null, null, 2);
+        assertThat(idsOf(first)).containsExactly(ids.get(4), ids.get(3));
+        assertThat(first.getName(0)).isEqualTo("https://site5.io");
+        assertThat(first.hasNewer()).isFalse();
+        assertThat(first.getOlderCursor()).isEqualTo(ids.get(3));
+
+        var second = snapshot.page(first.getOlderCursor(), null, 2);
+        assertThat(idsOf(second)).containsExactly(ids.get(2), ids.get(1));
+        assertThat(second.getNewerCursor()).isEqualTo(ids.get(2));
+        assertThat(second.getOlderCursor()).isEqualTo(ids.get(1));
+
+        var last = snapshot.page(second.getOlderCursor(), null, 2);
+        assertThat(idsOf(last)).containsExactly(ids.get(0));
+        assertThat(last.hasOlder()).isFalse();
+
+        var back = snapshot.page(null, second.getNewerCursor(), 2);
+        assertThat(idsOf(back)).containsExactly(ids.get(4), ids.get(3));
+        assertThat(back.hasNewer()).isFalse();
+        assertThat(back.getOlderCursor()).isEqualTo(ids.get(3));
+
+        var pastTheEnd = snapshot.page(ids.get(0), null, 2);
+        assertThat(pastTheEnd.isEmpty()).isTrue();
+        assertThat(idsOf(snapshot.page(null, pastTheEnd.getNewerCursor(), 2)))
+                .containsExactly(ids.get(1), ids.get(0));
+    }
+
+    @Test
+    void testFollowsSavesAndLatestChecks() throws SQLException {
+        var snapshot = new UrlListSnapshot(urlRepository);
+        urlRepository.addSaveListener(snapshot::add);
+        assertThat(snapshot.size()).isZero();
+        snapshot.loadNew();
+        assertThat(snapshot.size()).isEqualTo(5);
+
+        var url = new Url("https://новый.рф");
+        urlRepository.save(url);
+        snapshot.recordCheck(check(20, url.getId(), 200, CheckStatus.DONE));
+        snapshot.recordCheck(check(19, url.getId(), 500, CheckStatus.DONE));
+        snapshot.recordCheck(check(21, url.getId(), 0, CheckStatus.PENDING));
+
+        var rows = snapshot.page(null, null, 1);
+        assertThat(rows.getId(0)).isEqualTo(url.getId());
+        assertThat(rows.getName(0)).isEqualTo("https://новый.рф");
+        assertThat(rows.hasCheck(0)).isTrue();
+        assertThat(rows.getLastStatusCode(0)).isEqualTo(200);
+        assertThat(rows.getLastCheckAt(0)).isEqualTo(new Timestamp(20_000).toLocalDateTime());
+
+        var unchecked = snapshot.page(url.getId(), null, 1);
+        assertThat(unchecked.hasCheck(0)).isFalse();
+        assertThat(unchecked.getLastCheckAt(0)).isNull();
+    }
+
+    @Test
+    void testLoadsNewUrlsAndKeepsIdOrder() throws SQLException {
+        var snapshot = new UrlListSnapshot(urlRepository);
+        snapshot.loadNew();
+
+        var late = new Url("https://late.io");
+        late.setId(ids.get(4) + 100);
+        snapshot.add(late);
+        assertThat(urlRepository.insertMissing(List.of("https://imported.io"))).isEqualTo(1);
+        snapshot.loadNew();
+
+        var rows = snapshot.page(null, null, 10);
+        assertThat(rows.size()).isEqualTo(7);
+        assertThat(rows.getName(0)).isEqualTo("https://late.io");
+        assertThat(rows.getName(1)).isEqualTo("https://imported.io");
+        assertThat(rows.getName(2)).isEqualTo("https://site5.io");
+        assertThat(rows.getId(1)).isBetween(ids.get(4), late.getId());
+    }
+
+    @Test
+    void testKeepsChecksThatFinishWhileTheirUrlsAreLoading() throws SQLException {
+        var holder = new UrlListSnapshot[1];
+        var finished = check(30, ids.get(2), 404, CheckStatus.DONE);
+        var readRepository = new UrlRepository(dataSource, withHook(() -> holder[0].recordCheck(finished)),
+                LruCache.disabled(), LruCache.disabled());
+        var snapshot = new UrlListSnapshot(readRepository);
+        holder[0] = snapshot;
+
+        snapshot.loadNew();
+
+        var rows = snapshot.page(ids.get(3), null, 1);
+        assertThat(rows.getId(0)).isEqualTo(ids.get(2));
+        assertThat(rows.hasCheck(0)).isTrue();
+        assertThat(rows.getLastStatusCode(0)).isEqualTo(404);
+        assertThat(snapshot.page(ids.get(2), null, 1).hasCheck(0)).isFalse();
+    }
+}
@@ -0,0 +1,147 @@
+package hexlet.code.snapshot;
+
+import hexlet.code.model.CapturedPage;
+import hexlet.code.model.CheckStatus;
+import hexlet.code.model.UrlCheck;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PageSnapshotStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private static byte[] html(int i) {
+        return ("<html><title>Page " + i + "</title><body>" + "lorem ipsum ".repeat(100 + i) + "</body></html>")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] noise(Random random, int length) {
+        var bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private long segmentFiles() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void testStoresAndReadsBackPages() throws IOException {
+        try (var store = PageSnapshotStore.open(directory, 1024 * 1024, 0)) {
+            for (int i = 1; i <= 3; i++) {
+                store.append(i, 10 + i, CapturedPage.compress("text/html; charset=utf-8", html(i)));
+            }
+
+            var snapshot = store.find(2).orElseThrow();
+            assertThat(snapshot.getUrlId()).isEqualTo(12);
+            assertThat(snapshot.getContentType()).isEqualTo("text/html; charset=utf-8");
+            assertThat(snapshot.body()).isEqualTo(html(2));
+            assertThat(store.find(4)).isEmpty();
+            assertThat(store.size()).isEqualTo(3);
+            assertThat(store.getTotalBytes()).isLessThan(html(3).length);
+        }
+    }
+
+    @Test
+    void testRecordsOnlyFinishedChecksWithAPage() throws IOException {
+        try (var store = PageSnapshotStore.open(directory, 1024 * 1024, 0)) {
+            var done = new UrlCheck(200, "Page 1", null, null);
+            done.setId(1);
+            done.setCapturedPage(CapturedPage.compress(null, html(1)));
+            var failed = new UrlCheck(0, null, null, null);
+            failed.setId(2);
+            failed.setStatus(CheckStatus.FAILED);
+            failed.setCapturedPage(CapturedPage.compress(null, html(2)));
+
+            store.record(done);
+            store.record(failed);
+
+            assertThat(done.getCapturedPage()).isNull();
+            assertThat(store.find(1).orElseThrow().body()).isEqualTo(html(1));
+            assertThat(store.find(1).orElseThrow().getContentType()).isNull();
+            assertThat(store.find(2)).isEmpty();
+        }
+    }
+
+    @Test
+    void testRotatesSegmentsAndDropsTheOldestOverTheLimit() throws IOException {
+        var random = new Random(7);
+        try (var store = PageSnapshotStore.open(directory, 4096, 12_000)) {
+            for (int i = 1; i <= 40; i++) {
+                store.append(i, i, CapturedPage.compress("text/html", noise(random, 1000)));
+            }
+
+            assertThat(store.getTotalBytes()).isLessThanOrEqualTo(12_000);
+            assertThat(store.getSegmentCount()).isGreaterThan(1);
+            assertThat(segmentFiles()).isEqualTo(store.getSegmentCount());
+            assertThat(store.find(1)).isEmpty();
+            assertThat(store.find(40)).isPresent();
+
+            var stored = new ArrayList<Long>();
+            store.forEach(snapshot -> stored.add(snapshot.getCheckId()));
+            assertThat(stored).hasSize(store.size()).isSorted().endsWith(40L);
+        }
+    }
+
+    @Test
+    void testReadsPagesWhileSegmentsGrowAndRotate() throws IOException {
+        try (var store = PageSnapshotStore.open(directory, 512, 0)) {
+            for (int i = 1; i <= 20; i++) {
+                store.append(i, i, CapturedPage.compress("text/html", html(i)));
+                assertThat(store.find(i).orElseThrow().body()).isEqualTo(html(i));
+                assertThat(store.find(1).orElseThrow().body()).isEqualTo(html(1));
+            }
+            assertThat(store.getSegmentCount()).isGreaterThan(1);
+        }
+    }
+
+    @Test
+    void testReopensAndDropsATornRecord() throws IOException {
+        try (var store = PageSnapshotStore.open(directory, 1024 * 1024, 0)) {
+            store.append(1, 1, CapturedPage.compress("text/html", html(1)));
+            store.append(1, 1, CapturedPage.compress("text/html", html(2)));
+            store.append(2, 2, CapturedPage.compress("text/html", html(3)));
+        }
+        Path segment;
+        try (var files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        long length = Files.size(segment);
+        Files.write(segment, new byte[] {0x50, 0x53, 0x4e, 0x31, 0, 0, 4, 0, 1, 2}, StandardOpenOption.APPEND);
+
+        try (var store = PageSnapshotStore.open(directory, 1024 * 1024, 0)) {
+            assertThat(Files.size(segment)).isEqualTo(length);
+            assertThat(store.size()).isEqualTo(2);
+            assertThat(store.find(1).orElseThrow().body()).isEqualTo(html(2));
+
+            var stored = new ArrayList<Long>();
+            store.forEach(snapshot -> stored.add(snapshot.getCheckId()));
+            assertThat(stored).containsExactly(1L, 2L);
+
+            store.append(3, 3, CapturedPage.compress("text/html", html(4)));
+            assertThat(store.find(3).orElseThrow().body()).isEqualTo(html(4));
+        }
+    }
+
+    @Test
+    void testRefusesAppendsOnceClosed() throws IOException {
+        var store = PageSnapshotStore.open(directory, 1024 * 1024, 0);
+        store.close();
+        assertThatThrownBy(() -> store.append(1, 1, CapturedPage.compress("text/html", html(1))))
+                .isInstanceOf(IOException.class);
+    }
+}